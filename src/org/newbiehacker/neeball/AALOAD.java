@@ -28,6 +28,8 @@
 package org.newbiehacker.neeball;
 
 public final class AALOAD extends Instruction {
+    public static final AALOAD INSTANCE = new AALOAD();
+
     public AALOAD() {
         tag = Constants.AALOAD;
     }
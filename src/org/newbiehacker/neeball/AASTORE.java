@@ -28,6 +28,8 @@
 package org.newbiehacker.neeball;
 
 public final class AASTORE extends Instruction {
+    public static final AASTORE INSTANCE = new AASTORE();
+
     public AASTORE() {
         this.tag = Constants.AASTORE;
     }
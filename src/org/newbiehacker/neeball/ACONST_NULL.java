@@ -28,6 +28,8 @@
 package org.newbiehacker.neeball;
 
 public final class ACONST_NULL extends Instruction {
+    public static final ACONST_NULL INSTANCE = new ACONST_NULL();
+
     public ACONST_NULL() {
         this.tag = Constants.ACONST_NULL;
     }
@@ -36,6 +36,7 @@ public final class ANEWARRAY extends Instruction {
 
     public ANEWARRAY(String type) {
         this.type = type;
+        this.tag = Constants.ANEWARRAY;
     }
 
     public String toString() {
@@ -46,8 +47,8 @@ public final class ANEWARRAY extends Instruction {
         return 3;
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        type = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(type_index);
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ARETURN extends Instruction implements TerminatingInstruction {
+    public static final ARETURN INSTANCE = new ARETURN();
+
+    public ARETURN() {
+        this.tag = Constants.ARETURN;
+    }
+
     public String toString() {
         return "areturn";
     }
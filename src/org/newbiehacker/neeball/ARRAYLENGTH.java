@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ARRAYLENGTH extends Instruction {
+    public static final ARRAYLENGTH INSTANCE = new ARRAYLENGTH();
+
+    public ARRAYLENGTH() {
+        this.tag = Constants.ARRAYLENGTH;
+    }
+
     public String toString() {
         return "arraylength";
     }
@@ -35,10 +35,12 @@ public final class ASTORE extends StoreInstruction {
      */
     public ASTORE(int index) {
         super(index);
+        this.tag = Constants.ASTORE;
     }
 
     ASTORE(int index, boolean wide) {
         super(index, wide);
+        this.tag = Constants.ASTORE;
     }
 
     public String toString() {
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ATHROW extends Instruction implements TerminatingInstruction {
+    public static final ATHROW INSTANCE = new ATHROW();
+
+    public ATHROW() {
+        this.tag = Constants.ATHROW;
+    }
+
     public String toString() {
         return "athrow";
     }
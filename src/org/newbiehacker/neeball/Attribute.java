@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.Constant;
+import org.newbiehacker.neeball.pool.ConstantPool;
+import org.newbiehacker.neeball.pool.ConstantUtf8;
+
+import java.io.IOException;
+
+/**
+ * <p>An attribute that isn't flattened into the class, field or method it belongs to, kept as it was read so it can be written back</p>
+ * <p>The constant pool indices in the standard attributes are moved over to the new pool when the class is written. Attributes whose
+ * layout isn't known can't be moved over and are dropped at that point.</p>
+ */
+public final class Attribute {
+    /**
+     * <p>The name of this attribute</p>
+     */
+    public String name;
+    /**
+     * <p>The contents of this attribute, any constant pool indices in it refer to the pool it was read with</p>
+     */
+    public byte[] info;
+    // The pool info refers to, null if info doesn't refer to a pool
+    ConstantPool cp;
+    int name_index;
+    // info moved over to the pool being written, null if it couldn't be
+    byte[] remapped;
+
+    Attribute(String name, byte[] info, ConstantPool cp) {
+        this.name = name;
+        this.info = info;
+        this.cp = cp;
+    }
+
+    /**
+     * <p>Constructs a new <code>Attribute</code> that will be written exactly as given, so it mustn't refer to the constant pool</p>
+     *
+     * @param name the name of this attribute
+     * @param info the contents of this attribute
+     */
+    public Attribute(String name, byte[] info) {
+        this(name, info, null);
+    }
+
+    /**
+     * <p>Copies <code>info</code> with every constant pool index it holds replaced by the index of the same constant in another pool,
+     * inserting the constants into that pool as needed</p>
+     *
+     * @param cpo the pool being written
+     * @return the copy, or null if this attribute's layout isn't known or doesn't match its contents
+     */
+    byte[] remap(ConstantPool cpo) {
+        if (cp == null)
+            return info;
+        byte[] b = info.clone();
+        try {
+            Remapper r = new Remapper(b, cp, cpo);
+            if (!r.attribute(name) || r.r.hasMore())
+                return null;
+            return b;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public String toString() {
+        return "Attribute [name=" + name + ", length=" + info.length + "]";
+    }
+
+    /**
+     * <p>Walks the layout of an attribute, rewriting each pool index in place</p>
+     */
+    private static final class Remapper {
+        final ByteReader r;
+        final byte[] b;
+        final ConstantPool cp;
+        final ConstantPool cpo;
+
+        Remapper(byte[] b, ConstantPool cp, ConstantPool cpo) {
+            this.r = new ByteReader(b, 0, b.length);
+            this.b = b;
+            this.cp = cp;
+            this.cpo = cpo;
+        }
+
+        private Constant index() throws IOException {
+            int pos = r.pos;
+            int i = r.u2();
+            if (i == 0)
+                return null;
+            Constant c = cp.get(i);
+            if (c == null)
+                throw new IOException("Invalid constant pool index: " + i);
+            int n = cpo.insert(c);
+            b[pos] = (byte) (n >> 8);
+            b[pos + 1] = (byte) n;
+            return c;
+        }
+
+        private void skip(int n) throws IOException {
+            if (n < 0 || n > r.end - r.pos)
+                throw new IOException("Attribute ends early");
+            r.pos += n;
+        }
+
+        boolean attribute(String name) throws IOException {
+            int n;
+            switch (name) {
+                case "LineNumberTable":
+                case "SourceDebugExtension":
+                case "Deprecated":
+                case "Synthetic":
+                    r.pos = r.end;
+                    return true;
+                case "ConstantValue":
+                case "Signature":
+                case "SourceFile":
+                case "NestHost":
+                case "ModuleMainClass":
+                    index();
+                    return true;
+                case "NestMembers":
+                case "PermittedSubclasses":
+                case "ModulePackages":
+                case "Exceptions":
+                    n = r.u2();
+                    for (int i = 0; i < n; i++)
+                        index();
+                    return true;
+                case "LocalVariableTable":
+                case "LocalVariableTypeTable":
+                    n = r.u2();
+                    for (int i = 0; i < n; i++) {
+                        skip(4); // start_pc, length
+                        index(); // name
+                        index(); // descriptor or signature
+                        skip(2); // index
+                    }
+                    return true;
+                case "MethodParameters":
+                    n = r.u1();
+                    for (int i = 0; i < n; i++) {
+                        index();
+                        skip(2); // access_flags
+                    }
+                    return true;
+                case "StackMapTable":
+                    stackMapTable();
+                    return true;
+                case "RuntimeVisibleAnnotations":
+                case "RuntimeInvisibleAnnotations":
+                    annotations();
+                    return true;
+                case "RuntimeVisibleParameterAnnotations":
+                case "RuntimeInvisibleParameterAnnotations":
+                    n = r.u1();
+                    for (int i = 0; i < n; i++)
+                        annotations();
+                    return true;
+                case "RuntimeVisibleTypeAnnotations":
+                case "RuntimeInvisibleTypeAnnotations":
+                    n = r.u2();
+                    for (int i = 0; i < n; i++)
+                        typeAnnotation();
+                    return true;
+                case "AnnotationDefault":
+                    elementValue();
+                    return true;
+                case "Module":
+                    index(); // module_name
+                    skip(2); // module_flags
+                    index(); // module_version
+                    n = r.u2();
+                    for (int i = 0; i < n; i++) {
+                        index(); // requires
+                        skip(2); // requires_flags
+                        index(); // requires_version
+                    }
+                    for (int k = 0; k < 2; k++) { // exports, then opens
+                        n = r.u2();
+                        for (int i = 0; i < n; i++) {
+                            index(); // package
+                            skip(2); // flags
+                            int to = r.u2();
+                            for (int j = 0; j < to; j++)
+                                index();
+                        }
+                    }
+                    n = r.u2();
+                    for (int i = 0; i < n; i++)
+                        index(); // uses
+                    n = r.u2();
+                    for (int i = 0; i < n; i++) {
+                        index(); // provides
+                        int with = r.u2();
+                        for (int j = 0; j < with; j++)
+                            index();
+                    }
+                    return true;
+                case "Record":
+                    n = r.u2();
+                    for (int i = 0; i < n; i++) {
+                        index(); // name
+                        index(); // descriptor
+                        if (!attributes())
+                            return false;
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean attributes() throws IOException {
+            int n = r.u2();
+            for (int i = 0; i < n; i++) {
+                String name = ((ConstantUtf8) index()).getValue();
+                int length = r.s4();
+                if (length < 0 || length > r.end - r.pos)
+                    throw new IOException("Attribute ends early");
+                int end = r.pos + length;
+                if (!attribute(name) || r.pos != end)
+                    return false;
+            }
+            return true;
+        }
+
+        private void stackMapTable() throws IOException {
+            int n = r.u2();
+            for (int i = 0; i < n; i++) {
+                int type = r.u1();
+                if (type < 64) // same_frame
+                    continue;
+                if (type < 128) { // same_locals_1_stack_item_frame
+                    verificationType();
+                } else if (type < 247) {
+                    throw new IOException("Reserved frame type: " + type);
+                } else if (type == 247) { // same_locals_1_stack_item_frame_extended
+                    skip(2);
+                    verificationType();
+                } else if (type < 255) { // chop_frame, same_frame_extended and append_frame
+                    skip(2);
+                    for (int j = 251; j < type; j++)
+                        verificationType();
+                } else { // full_frame
+                    skip(2);
+                    int locals = r.u2();
+                    for (int j = 0; j < locals; j++)
+                        verificationType();
+                    int stack = r.u2();
+                    for (int j = 0; j < stack; j++)
+                        verificationType();
+                }
+            }
+        }
+
+        private void verificationType() throws IOException {
+            int tag = r.u1();
+            if (tag == 7) // Object_variable_info
+                index();
+            else if (tag == 8) // Uninitialized_variable_info
+                skip(2);
+            else if (tag > 8)
+                throw new IOException("Unknown verification type: " + tag);
+        }
+
+        private void annotations() throws IOException {
+            int n = r.u2();
+            for (int i = 0; i < n; i++)
+                annotation();
+        }
+
+        private void annotation() throws IOException {
+            index(); // type
+            int n = r.u2();
+            for (int i = 0; i < n; i++) {
+                index(); // element_name
+                elementValue();
+            }
+        }
+
+        private void elementValue() throws IOException {
+            int tag = r.u1();
+            switch (tag) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 's':
+                case 'c':
+                    index();
+                    break;
+                case 'e':
+                    index(); // type_name
+                    index(); // const_name
+                    break;
+                case '@':
+                    annotation();
+                    break;
+                case '[':
+                    int n = r.u2();
+                    for (int i = 0; i < n; i++)
+                        elementValue();
+                    break;
+                default:
+                    throw new IOException("Unknown element value tag: " + (char) tag);
+            }
+        }
+
+        private void typeAnnotation() throws IOException {
+            int target_type = r.u1();
+            switch (target_type) {
+                case 0x00: // type_parameter_target
+                case 0x01:
+                case 0x16: // formal_parameter_target
+                    skip(1);
+                    break;
+                case 0x10: // supertype_target
+                case 0x11: // type_parameter_bound_target
+                case 0x12:
+                case 0x17: // throws_target
+                case 0x42: // catch_target
+                case 0x43: // offset_target
+                case 0x44:
+                case 0x45:
+                case 0x46:
+                    skip(2);
+                    break;
+                case 0x13: // empty_target
+                case 0x14:
+                case 0x15:
+                    break;
+                case 0x40: // localvar_target
+                case 0x41:
+                    skip(r.u2() * 6);
+                    break;
+                case 0x47: // type_argument_target
+                case 0x48:
+                case 0x49:
+                case 0x4A:
+                case 0x4B:
+                    skip(3);
+                    break;
+                default:
+                    throw new IOException("Unknown type annotation target: " + target_type);
+            }
+            skip(r.u1() * 2); // type_path
+            annotation();
+        }
+    }
+}
\ No newline at end of file
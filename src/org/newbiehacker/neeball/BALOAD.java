@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class BALOAD extends Instruction {
+    public static final BALOAD INSTANCE = new BALOAD();
+
+    public BALOAD() {
+        this.tag = Constants.BALOAD;
+    }
+
     public String toString() {
         return "baload";
     }
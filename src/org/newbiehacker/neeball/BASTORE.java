@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class BASTORE extends Instruction {
+    public static final BASTORE INSTANCE = new BASTORE();
+
+    public BASTORE() {
+        this.tag = Constants.BASTORE;
+    }
+
     public String toString() {
         return "bastore";
     }
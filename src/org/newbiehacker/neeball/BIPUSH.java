@@ -40,6 +40,7 @@ public final class BIPUSH extends Instruction {
      */
     public BIPUSH(byte b) {
         this.b = b;
+        this.tag = Constants.BIPUSH;
     }
 
     public String toString() {
@@ -53,4 +54,9 @@ public final class BIPUSH extends Instruction {
     public int getStackChange() {
         return 1;
     }
+
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u1(b);
+    }
 }
\ No newline at end of file
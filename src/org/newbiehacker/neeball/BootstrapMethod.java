@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.Constant;
+import org.newbiehacker.neeball.pool.ConstantMethodHandle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>An entry of the BootstrapMethods attribute, the method that links the call sites and dynamic constants that
+ * refer to it by its index in <code>ClassFile.bootstrap_methods</code></p>
+ */
+public final class BootstrapMethod {
+    /**
+     * <p>The handle of the bootstrap method</p>
+     */
+    public ConstantMethodHandle method;
+    /**
+     * <p>The static arguments passed to the bootstrap method after the lookup, name and type</p>
+     */
+    public List<Constant> arguments;
+    int method_index;
+    int[] argument_indices;
+
+    BootstrapMethod() {
+    }
+
+    /**
+     * <p>Constructs a new <code>BootstrapMethod</code> with the specified handle and static arguments</p>
+     *
+     * @param method    the handle of the bootstrap method
+     * @param arguments the static arguments, each a loadable constant
+     */
+    public BootstrapMethod(ConstantMethodHandle method, Constant... arguments) {
+        this.method = method;
+        this.arguments = new ArrayList<>(Arrays.asList(arguments));
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BootstrapMethod that = (BootstrapMethod) o;
+
+        if (method != null ? !method.equals(that.method) : that.method != null) return false;
+        if (arguments != null ? !arguments.equals(that.arguments) : that.arguments != null) return false;
+
+        return true;
+    }
+
+    public int hashCode() {
+        int result = method != null ? method.hashCode() : 0;
+        result = 31 * result + (arguments != null ? arguments.hashCode() : 0);
+        return result;
+    }
+
+    public String toString() {
+        return "BootstrapMethod [method=" + method + ", arguments=" + arguments + "]";
+    }
+}
\ No newline at end of file
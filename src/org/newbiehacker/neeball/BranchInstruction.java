@@ -47,4 +47,20 @@ public abstract class BranchInstruction extends Instruction {
 
     BranchInstruction() {
     }
+
+    /**
+     * <p>Returns the relative offset this instruction jumps by, as it was last read or laid out</p>
+     *
+     * @return the offset in bytes from the start of this instruction to its target
+     */
+    public int getBranchOffset() {
+        return branchoffset;
+    }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (branchoffset < Short.MIN_VALUE || branchoffset > Short.MAX_VALUE)
+            throw new EncodingException("Branch offset out of range for " + this + ": " + branchoffset);
+        w.u1(tag);
+        w.u2(branchoffset);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * <p>Reads big-endian values straight out of a <code>byte[]</code> through a cursor, used to decode class files without any stream layering</p>
+ */
+final class ByteReader {
+    final byte[] b;
+    final int start;
+    final int end;
+    int pos;
+
+    ByteReader(byte[] b, int off, int len) {
+        this.b = b;
+        this.start = off;
+        this.end = off + len;
+        this.pos = off;
+    }
+
+    boolean hasMore() {
+        return pos < end;
+    }
+
+    /**
+     * <p>Returns the position of the cursor relative to the start of this reader</p>
+     *
+     * @return the number of bytes read so far
+     */
+    int offset() {
+        return pos - start;
+    }
+
+    int u1() throws EOFException {
+        require(1);
+        return b[pos++] & 0xff;
+    }
+
+    byte s1() throws EOFException {
+        require(1);
+        return b[pos++];
+    }
+
+    int u2() throws EOFException {
+        require(2);
+        int v = ((b[pos] & 0xff) << 8) | (b[pos + 1] & 0xff);
+        pos += 2;
+        return v;
+    }
+
+    short s2() throws EOFException {
+        return (short) u2();
+    }
+
+    int s4() throws EOFException {
+        require(4);
+        int v = (b[pos] << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+        pos += 4;
+        return v;
+    }
+
+    /**
+     * <p>Skips the padding that follows a <code>TABLESWITCH</code> or <code>LOOKUPSWITCH</code> opcode</p>
+     *
+     * @throws EOFException if the padding runs past the end of the code
+     */
+    void align() throws EOFException {
+        int padding = (4 - offset() % 4) % 4;
+        require(padding);
+        pos += padding;
+    }
+
+    /**
+     * <p>Checks that a length read from the data is valid and doesn't run past the end</p>
+     *
+     * @param length the length
+     * @param what   what the length is of, for the message
+     * @throws IOException if the length is negative or runs past the end
+     */
+    void require(int length, String what) throws IOException {
+        if (length < 0)
+            throw new IOException("Invalid " + what + " length: " + (length & 0xffffffffL));
+        if (length > end - pos)
+            throw new EOFException("The " + what + " at offset " + offset() + " runs past the end");
+    }
+
+    private void require(int n) throws EOFException {
+        if (pos + n > end)
+            throw new EOFException("Unexpected end at offset " + offset());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.util.Arrays;
+
+/**
+ * <p>Writes big-endian values into a growable <code>byte[]</code>, used to encode code attributes without any stream layering</p>
+ */
+final class ByteWriter {
+    byte[] b;
+    int pos;
+    // Where the code being written starts, switches are padded relative to it
+    int origin;
+
+    ByteWriter(int capacity) {
+        this.b = new byte[Math.max(capacity, 16)];
+    }
+
+    ByteWriter() {
+        this(64);
+    }
+
+    /**
+     * <p>Constructs a writer that writes into an array that's already the right size, from the given offset</p>
+     */
+    ByteWriter(byte[] b, int pos) {
+        this.b = b;
+        this.pos = pos;
+    }
+
+    void u1(int v) {
+        ensure(1);
+        b[pos++] = (byte) v;
+    }
+
+    void u2(int v) {
+        ensure(2);
+        b[pos] = (byte) (v >>> 8);
+        b[pos + 1] = (byte) v;
+        pos += 2;
+    }
+
+    void s4(int v) {
+        ensure(4);
+        b[pos] = (byte) (v >>> 24);
+        b[pos + 1] = (byte) (v >>> 16);
+        b[pos + 2] = (byte) (v >>> 8);
+        b[pos + 3] = (byte) v;
+        pos += 4;
+    }
+
+    void write(byte[] v, int off, int len) {
+        ensure(len);
+        System.arraycopy(v, off, b, pos, len);
+        pos += len;
+    }
+
+    void write(byte[] v) {
+        write(v, 0, v.length);
+    }
+
+    /**
+     * <p>Writes the zero padding that follows a <code>TABLESWITCH</code> or <code>LOOKUPSWITCH</code> opcode</p>
+     */
+    void align() {
+        int padding = (4 - (pos - origin) % 4) % 4;
+        ensure(padding);
+        for (int i = 0; i < padding; i++)
+            b[pos++] = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(b, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > b.length)
+            b = Arrays.copyOf(b, Math.max(b.length << 1, pos + n));
+    }
+}
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class CALOAD extends Instruction {
+    public static final CALOAD INSTANCE = new CALOAD();
+
+    public CALOAD() {
+        this.tag = Constants.CALOAD;
+    }
+
     public String toString() {
         return "caload";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class CASTORE extends Instruction {
+    public static final CASTORE INSTANCE = new CASTORE();
+
+    public CASTORE() {
+        this.tag = Constants.CASTORE;
+    }
+
     public String toString() {
         return "castore";
     }
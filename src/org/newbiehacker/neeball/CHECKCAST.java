@@ -41,6 +41,7 @@ public final class CHECKCAST extends Instruction {
      */
     public CHECKCAST(String type) {
         this.type = type;
+        this.tag = Constants.CHECKCAST;
     }
 
     public String toString() {
@@ -51,8 +52,8 @@ public final class CHECKCAST extends Instruction {
         return 3;
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        type = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
     }
 }
\ No newline at end of file
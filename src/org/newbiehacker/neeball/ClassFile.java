@@ -27,6 +27,7 @@
 
 package org.newbiehacker.neeball;
 
+import org.newbiehacker.neeball.pool.ConstantPool;
 import org.newbiehacker.neeball.pool.ConstantPoolModifier;
 
 import java.util.ArrayList;
@@ -146,10 +147,12 @@ public final class ClassFile {
     public List<String> interfaces;
     /**
      * <p>The fields this class contains</p>
+     * <p>Lookups through <code>getField</code> and the like are indexed while this is the list the class was read or
+     * constructed with, any other list is searched in full</p>
      */
     public List<Field> fields;
     /**
-     * <p>The methods this class has</p>
+     * <p>The methods this class has, indexed for lookups the same way as <code>fields</code></p>
      */
     public List<Method> methods;
     // Flattened from InnerClasses attribute
@@ -159,9 +162,20 @@ public final class ClassFile {
     public List<InnerClass> inner_classes;
     // Flattened from EnclosingMethod attribute
     public EnclosingMethod enclosing_method;
+    /**
+     * <p>The bootstrap methods of the call sites and dynamic constants in this class, flattened from the
+     * BootstrapMethods attribute (or null if none)</p>
+     */
+    public List<BootstrapMethod> bootstrap_methods;
+    /**
+     * <p>The attributes of this class that aren't flattened into it, as they were read (or null if none)</p>
+     */
+    public List<Attribute> attributes;
 
     // Allows modification of the ConstantPool at write-time
     public List<ConstantPoolModifier> constant_pool_modifiers;
+    // The pool a lazily read class was read with, undecoded methods still refer into it
+    ConstantPool constant_pool;
 
     /**
      * <p>Constructs a new <code>ClassFile</code> with practically every value set</p>
@@ -192,8 +206,8 @@ public final class ClassFile {
         this.this_class = name;
         this.super_class = superClass;
         this.interfaces = new ArrayList<String>();
-        this.fields = new ArrayList<Field>();
-        this.methods = new ArrayList<Method>();
+        this.fields = new MemberList.Fields();
+        this.methods = new MemberList.Methods();
     }
 
     /**
@@ -271,6 +285,8 @@ public final class ClassFile {
      * @return a field with the specified name and descriptor or null
      */
     public Field getField(String name, String descriptor) {
+        if (fields instanceof MemberList.Fields)
+            return ((MemberList.Fields) fields).get(name, descriptor);
         for (Field f : fields)
             if (f.name.equals(name) && f.descriptor.equals(descriptor))
                 return f;
@@ -284,6 +300,8 @@ public final class ClassFile {
      * @return all the fields in this class with the same name as the one specified, or null if there are none
      */
     public List<Field> getFieldsByName(String name) {
+        if (fields instanceof MemberList.Fields)
+            return ((MemberList.Fields) fields).getByName(name);
         List<Field> l = new ArrayList<Field>();
         for (Field f : fields)
             if (f.name.equals(name))
@@ -298,6 +316,8 @@ public final class ClassFile {
      * @return all the fields in this class with the same descriptor as the one specified, or null if there are none
      */
     public List<Field> getFieldsByDescriptor(String descriptor) {
+        if (fields instanceof MemberList.Fields)
+            return ((MemberList.Fields) fields).getByDescriptor(descriptor);
         List<Field> l = new ArrayList<Field>();
         for (Field f : fields)
             if (f.descriptor.equals(descriptor))
@@ -313,6 +333,8 @@ public final class ClassFile {
      * @return a method with the specified name and descriptor or null
      */
     public Method getMethod(String name, String descriptor) {
+        if (methods instanceof MemberList.Methods)
+            return ((MemberList.Methods) methods).get(name, descriptor);
         for (Method m : methods)
             if (m.name.equals(name) && m.descriptor.equals(descriptor))
                 return m;
@@ -326,6 +348,8 @@ public final class ClassFile {
      * @return all the methods in this class with the same name as the one specified, or null if there are none
      */
     public List<Method> getMethodsByName(String name) {
+        if (methods instanceof MemberList.Methods)
+            return ((MemberList.Methods) methods).getByName(name);
         List<Method> l = new ArrayList<Method>();
         for (Method m : methods)
             if (m.name.equals(name))
@@ -340,6 +364,8 @@ public final class ClassFile {
      * @return all the methods in this class with the same descriptor as the one specified, or null if there are none
      */
     public List<Method> getMethodsByDescriptor(String descriptor) {
+        if (methods instanceof MemberList.Methods)
+            return ((MemberList.Methods) methods).getByDescriptor(descriptor);
         List<Method> l = new ArrayList<Method>();
         for (Method m : methods)
             if (m.descriptor.equals(descriptor))
@@ -347,26 +373,37 @@ public final class ClassFile {
         return l.size() == 0 ? null : l;
     }
 
-    public String toString() {
-        return this_class;
+    /**
+     * <p>Has the index of fields and methods rebuilt on the next lookup</p>
+     * <p>Adding, removing and replacing members is noticed on its own, and a member whose name or descriptor is changed
+     * in place is still found by a lookup that misses the index, at the cost of searching every member. Calling this
+     * after such a change saves that search</p>
+     */
+    public void reindexMembers() {
+        if (fields instanceof MemberList)
+            ((MemberList<?>) fields).reindex();
+        if (methods instanceof MemberList)
+            ((MemberList<?>) methods).reindex();
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        sourcefile = null;
-        signature = null;
-        this_class = null;
-        super_class = null;
-        interfaces.clear();
-        interfaces = null;
-        fields.clear();
-        fields = null;
-        methods.clear();
-        methods = null;
-        inner_classes.clear();
-        inner_classes = null;
-        enclosing_method = null;
-        constant_pool_modifiers.clear();
-        constant_pool_modifiers = null;
+    /**
+     * <p>Adds a bootstrap method to this class, unless an equal one is already in it</p>
+     *
+     * @param bootstrap_method the bootstrap method
+     * @return its index in <code>bootstrap_methods</code>, as <code>ConstantInvokeDynamic</code> and
+     *         <code>ConstantDynamic</code> refer to it
+     */
+    public int addBootstrapMethod(BootstrapMethod bootstrap_method) {
+        if (bootstrap_methods == null)
+            bootstrap_methods = new ArrayList<>();
+        int index = bootstrap_methods.indexOf(bootstrap_method);
+        if (index != -1)
+            return index;
+        bootstrap_methods.add(bootstrap_method);
+        return bootstrap_methods.size() - 1;
+    }
+
+    public String toString() {
+        return this_class;
     }
 }
\ No newline at end of file
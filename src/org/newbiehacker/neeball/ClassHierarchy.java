@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+/**
+ * <p>ClassHierarchy is a simple interface that tells the writer how classes relate, so it can work out the type two
+ * paths through a method leave a value as when it computes stack map frames</p>
+ * <p>Names are fully qualified with '/' separators, as everywhere else in a <code>ClassFile</code></p>
+ *
+ * @see ClassIO#writeClassFile(ClassFile, java.io.OutputStream, ClassHierarchy)
+ */
+public interface ClassHierarchy {
+    /**
+     * <p>Looks up the super class of a class</p>
+     *
+     * @param name the name of the class
+     * @return the name of its super class, or null if the class is <code>java/lang/Object</code> or isn't known
+     */
+    String getSuperClass(String name);
+
+    /**
+     * <p>Looks up whether a class is an interface</p>
+     *
+     * @param name the name of the class
+     * @return true if the class is an interface, false if it isn't or isn't known
+     */
+    boolean isInterface(String name);
+}
\ No newline at end of file
@@ -30,6 +30,10 @@ package org.newbiehacker.neeball;
 import org.newbiehacker.neeball.pool.*;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 /**
@@ -51,18 +55,138 @@ public final class ClassIO {
      * @throws IOException if the magic number is wrong or if there it an I/O error
      */
     public static ClassFile readClassFile(InputStream is) throws IOException {
-        DataInputStream dis = new DataInputStream(is);
+        return readClassFile(is, false);
+    }
+
+    /**
+     * <p>Reads a <code>ClassFile</code> from the given <code>InputStream</code></p>
+     * <p>If <code>lazy</code> is set the code of each method is kept undecoded until it is asked for through
+     * <code>Method.getCode()</code> and methods whose code is never asked for are written back byte for byte. Their
+     * <code>code</code> and <code>exception_table</code> fields stay null until then.</p>
+     *
+     * @param is   the <code>InputStream</code> to read from
+     * @param lazy whether to put off decoding the code of each method until it is used
+     * @return a <code>ClassFile</code> corresponding the the one read from the stream
+     * @throws IOException if the magic number is wrong or if there it an I/O error
+     */
+    public static ClassFile readClassFile(InputStream is, boolean lazy) throws IOException {
+        byte[] b = readFully(is);
+        return readClassFile(b, 0, b.length, lazy);
+    }
+
+    /**
+     * <p>Reads a <code>ClassFile</code> from a byte array</p>
+     *
+     * @param b the class file
+     * @return a <code>ClassFile</code> corresponding to the one in the array
+     * @throws IOException if the magic number is wrong or if the class file is malformed
+     * @see #readClassFile(byte[], int, int, boolean)
+     */
+    public static ClassFile readClassFile(byte[] b) throws IOException {
+        return readClassFile(b, 0, b.length, false);
+    }
+
+    /**
+     * <p>Reads a <code>ClassFile</code> from a buffer, leaving its position just past the class file</p>
+     * <p>A buffer backed by an array is read in place, as <code>readClassFile(byte[], int, int, boolean)</code> does.
+     * What remains of any other buffer, such as a <code>MappedByteBuffer</code>, is copied out once first.</p>
+     *
+     * @param buf  the buffer, positioned at the start of the class file
+     * @param lazy whether to put off decoding the code of each method until it is used
+     * @return a <code>ClassFile</code> corresponding to the one in the buffer
+     * @throws IOException if the magic number is wrong or if the class file is malformed
+     */
+    public static ClassFile readClassFile(ByteBuffer buf, boolean lazy) throws IOException {
+        byte[] b;
+        int off;
+        if (buf.hasArray()) {
+            b = buf.array();
+            off = buf.arrayOffset() + buf.position();
+        } else {
+            b = new byte[buf.remaining()];
+            buf.duplicate().get(b);
+            off = 0;
+        }
+        ByteReader r = new ByteReader(b, off, buf.remaining());
+        ClassFile cf = readClassFile(r, lazy);
+        buf.position(buf.position() + r.offset());
+        return cf;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        byte[] b = new byte[Math.max(is.available(), 1024)];
+        int len = 0;
+        int n;
+        while ((n = is.read(b, len, b.length - len)) != -1) {
+            len += n;
+            if (len == b.length) {
+                // Only grow if the stream didn't end exactly where available() said it would
+                if ((n = is.read()) == -1)
+                    break;
+                b = Arrays.copyOf(b, b.length << 1);
+                b[len++] = (byte) n;
+            }
+        }
+        return len == b.length ? b : Arrays.copyOf(b, len);
+    }
+
+    /**
+     * <p>Reads a <code>ClassFile</code> from a channel, from its position to its end</p>
+     * <p>The file is read into a single array with positional reads, which leave the position of the channel alone,
+     * and read from there in place. Class files are small enough that this is cheaper than mapping them.</p>
+     *
+     * @param channel the channel to read from
+     * @param lazy    whether to put off decoding the code of each method until it is used
+     * @return a <code>ClassFile</code> corresponding to the one in the channel
+     * @throws IOException if the magic number is wrong, the class file is malformed or if there is an I/O error
+     */
+    public static ClassFile readClassFile(FileChannel channel, boolean lazy) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Class file too large: " + size + " bytes");
+        byte[] b = new byte[(int) size];
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        while (buf.hasRemaining())
+            if (channel.read(buf, start + buf.position()) < 0)
+                throw new EOFException("Channel ended before its size");
+        return readClassFile(b, 0, b.length, lazy);
+    }
+
+    /**
+     * <p>Reads a <code>ClassFile</code> from part of a byte array</p>
+     * <p>Everything is read at absolute offsets into the array and code is decoded straight from it. Utf8 constants
+     * and the code of lazily read methods are kept as slices of the array rather than copied, so it mustn't be
+     * changed while the <code>ClassFile</code> is in use.</p>
+     *
+     * @param b    the array holding the class file
+     * @param off  the offset of the class file in the array
+     * @param len  the number of bytes after off that may be read
+     * @param lazy whether to put off decoding the code of each method until it is used
+     * @return a <code>ClassFile</code> corresponding to the one in the array
+     * @throws IOException if the magic number is wrong or if the class file is malformed
+     * @see #readClassFile(InputStream, boolean)
+     */
+    public static ClassFile readClassFile(byte[] b, int off, int len, boolean lazy) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException("Range [" + off + ", " + off + " + " + len + ") out of bounds for length " + b.length);
+        return readClassFile(new ByteReader(b, off, len), lazy);
+    }
+
+    private static ClassFile readClassFile(ByteReader r, boolean lazy) throws IOException {
         ClassFile cf = new ClassFile();
-        if ((cf.magic = dis.readInt()) != 0xCAFEBABE)
+        if ((cf.magic = r.s4()) != 0xCAFEBABE)
             throw new IOException("Invalid magic number: " + Integer.toHexString(cf.magic));
-        cf.minor_version = dis.readUnsignedShort();
-        cf.major_version = dis.readUnsignedShort();
+        cf.minor_version = r.u2();
+        cf.major_version = r.u2();
 
         Logger.logger.info("Reading class file...");
-        ConstantPool cp = ConstantPool.read(dis);
-        Logger.logger.finest(cp.toString());
+        ConstantPool cp = readConstantPool(r);
+        // Printing the pool decodes every Utf8 in it, so only do it when it'll be logged
+        if (Logger.logger.isLoggable(java.util.logging.Level.FINEST))
+            Logger.logger.finest(cp.toString());
 
-        int access_flags = dis.readUnsignedShort();
+        int access_flags = r.u2();
 
         cf.is_public = (access_flags & ClassFile.ACC_PUBLIC) != 0;
         cf.is_final = (access_flags & ClassFile.ACC_FINAL) != 0;
@@ -72,19 +196,19 @@ public final class ClassIO {
         cf.is_annotation = (access_flags & ClassFile.ACC_ANNOTATION) != 0;
         cf.is_enum = (access_flags & ClassFile.ACC_ENUM) != 0;
 
-        cf.this_class = ((ConstantClass) cp.get(dis.readUnsignedShort())).value;
+        cf.this_class = ((ConstantClass) cp.get(r.u2())).value;
 
-        int index = dis.readUnsignedShort();
+        int index = r.u2();
         if (index != 0)
             cf.super_class = ((ConstantClass) cp.get(index)).value;
-        int interfaces_count = dis.readUnsignedShort();
+        int interfaces_count = r.u2();
         for (int i = 0; i < interfaces_count; i++)
-            cf.interfaces.add(((ConstantClass) cp.get(dis.readUnsignedShort())).value);
-        int field_count = dis.readUnsignedShort();
-        cf.fields = new LinkedList<>();
+            cf.interfaces.add(((ConstantClass) cp.get(r.u2())).value);
+        int field_count = r.u2();
+        cf.fields = new MemberList.Fields(field_count);
         for (int i = 0; i < field_count; i++) {
             Field f = new Field();
-            int faccess_flags = dis.readUnsignedShort();
+            int faccess_flags = r.u2();
             f.is_public = (faccess_flags & Field.ACC_PUBLIC) != 0;
             f.is_private = (faccess_flags & Field.ACC_PRIVATE) != 0;
             f.is_protected = (faccess_flags & Field.ACC_PROTECTED) != 0;
@@ -95,34 +219,31 @@ public final class ClassIO {
             f.is_synthetic = (faccess_flags & Field.ACC_SYNTHETIC) != 0;
             f.is_enum = (faccess_flags & Field.ACC_ENUM) != 0;
 
-            f.name = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-            f.descriptor = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-            int attributes_count = dis.readUnsignedShort();
+            f.name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            f.descriptor = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            int attributes_count = r.u2();
             for (int i1 = 0; i1 < attributes_count; i1++) {
-                String name = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-                int length = dis.readInt();
+                String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+                int length = r.s4();
                 if (name.equals("Deprecated"))
                     f.deprecated = true;
                 else if (name.equals("Synthetic"))
                     f.synthetic = true;
                 else if (name.equals("ConstantValue"))
-                    f.constantvalue = cp.get(dis.readUnsignedShort());
+                    f.constantvalue = cp.get(r.u2());
                 else if (name.equals("Signature"))
-                    f.signature = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-                else {
-                    System.out.println("Ignoring attribute " + name + "...");
-                    byte[] garbage = new byte[length];
-                    dis.readFully(garbage);
-                }
+                    f.signature = ((ConstantUtf8) cp.get(r.u2())).getValue();
+                else
+                    f.attributes = readAttribute(f.attributes, name, length, r, cp);
             }
             cf.fields.add(f);
         }
 
-        int method_count = dis.readUnsignedShort();
-        cf.methods = new LinkedList<>();
+        int method_count = r.u2();
+        cf.methods = new MemberList.Methods(method_count);
         for (int i = 0; i < method_count; i++) {
             Method m = new Method();
-            int maccess_flags = dis.readUnsignedShort();
+            int maccess_flags = r.u2();
             m.is_public = (maccess_flags & Method.ACC_PUBLIC) != 0;
             m.is_private = (maccess_flags & Method.ACC_PRIVATE) != 0;
             m.is_protected = (maccess_flags & Method.ACC_PROTECTED) != 0;
@@ -136,87 +257,63 @@ public final class ClassIO {
             m.is_strict = (maccess_flags & Method.ACC_STRICT) != 0;
             m.is_synthetic = (maccess_flags & Method.ACC_SYNTHETIC) != 0;
 
-            m.name = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-            m.descriptor = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-            int attributes_count = dis.readUnsignedShort();
+            m.name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            m.descriptor = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            int attributes_count = r.u2();
             for (int i1 = 0; i1 < attributes_count; i1++) {
-                String name = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-                int length = dis.readInt();
+                String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+                int length = r.s4();
                 if (name.equals("Deprecated"))
                     m.deprecated = true;
                 else if (name.equals("Synthetic"))
                     m.synthetic = true;
                 else if (name.equals("Code")) {
-                    m.max_stack = dis.readUnsignedShort();
-                    // Skip max_locals xD
-                    dis.readUnsignedShort();
-                    int code_length = dis.readInt();
-                    byte[] code = new byte[code_length];
-                    dis.readFully(code);
-                    m.code = new ArrayList<>();
-                    m.setBytes(code, cp);
-                    int exception_table_length = dis.readUnsignedShort();
-                    m.exception_table = new LinkedList<>();
-                    for (int i2 = 0; i2 < exception_table_length; i2++) {
-                        ExceptionTableEntry ete = new ExceptionTableEntry();
-                        ete.start_pc = dis.readUnsignedShort();
-                        ete.end_pc = dis.readUnsignedShort();
-                        ete.handler_pc = dis.readUnsignedShort();
-                        int catch_type = dis.readUnsignedShort();
-                        ete.catch_type = catch_type == 0 ? null : ((ConstantClass) cp.get(catch_type)).value;
-                        m.exception_table.add(ete);
-                    }
-                    m.setIndices();
-                    int attribute_count = dis.readUnsignedShort();
-                    for (int i2 = 0; i2 < attribute_count; i2++) {
-                        int name_index = dis.readUnsignedShort();
-                        name = ((ConstantUtf8) cp.get(name_index)).value;
-                        System.out.println("Ignoring attribute " + name + "...");
-                        int olength = dis.readInt();
-                        byte[] goAway = new byte[olength];
-                        dis.readFully(goAway);
-                    }
+                    r.require(length, "Code attribute");
+                    if (lazy)
+                        m.setRawCode(r.b, r.pos, length, cp);
+                    else
+                        m.setCode(r.b, r.pos, length, cp);
+                    r.pos += length;
                 } else if (name.equals("Exceptions")) {
-                    int number_of_exceptions = dis.readUnsignedShort();
-                    m.thrown_exceptions_table = new LinkedList<>();
+                    int number_of_exceptions = r.u2();
+                    m.thrown_exceptions_table = new ArrayList<>(number_of_exceptions);
                     for (int i2 = 0; i2 < number_of_exceptions; i2++)
-                        m.thrown_exceptions_table.add(((ConstantClass) cp.get(dis.readUnsignedShort())).value);
+                        m.thrown_exceptions_table.add(((ConstantClass) cp.get(r.u2())).value);
                 } else if (name.equals("Signature"))
-                    m.signature = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-                else {
-                    System.out.println("Ignoring attribute " + name + "...");
-                    byte[] data = new byte[length];
-                    dis.readFully(data);
-                }
+                    m.signature = ((ConstantUtf8) cp.get(r.u2())).getValue();
+                else
+                    m.attributes = readAttribute(m.attributes, name, length, r, cp);
             }
             cf.methods.add(m);
         }
+        if (lazy)
+            cf.constant_pool = cp;
 
-        int attribute_count = dis.readUnsignedShort();
+        int attribute_count = r.u2();
         for (int i = 0; i < attribute_count; i++) {
-            String name = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
-            int length = dis.readInt();
+            String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            int length = r.s4();
             if (name.equals("Deprecated"))
                 cf.deprecated = true;
             else if (name.equals("Synthetic"))
                 cf.synthetic = true;
             else if (name.equals("SourceFile"))
-                cf.sourcefile = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
+                cf.sourcefile = ((ConstantUtf8) cp.get(r.u2())).getValue();
             else if (name.equals("Signature"))
-                cf.signature = ((ConstantUtf8) cp.get(dis.readUnsignedShort())).value;
+                cf.signature = ((ConstantUtf8) cp.get(r.u2())).getValue();
             else if (name.equals("InnerClasses")) {
-                cf.inner_classes = new LinkedList<>();
                 InnerClass c;
-                int inner_class, outer_class, inner_name, flags, inner_classes = dis.readUnsignedShort();
+                int inner_class, outer_class, inner_name, flags, inner_classes = r.u2();
+                cf.inner_classes = new ArrayList<>(inner_classes);
                 for (int i1 = 0; i1 < inner_classes; i1++) {
                     c = new InnerClass();
-                    inner_class = dis.readUnsignedShort();
+                    inner_class = r.u2();
                     c.inner_class = inner_class == 0 ? null : ((ConstantClass) cp.get(inner_class)).value;
-                    outer_class = dis.readUnsignedShort();
+                    outer_class = r.u2();
                     c.outer_class = outer_class == 0 ? null : ((ConstantClass) cp.get(outer_class)).value;
-                    inner_name = dis.readUnsignedShort();
-                    c.inner_name = inner_name == 0 ? null : ((ConstantUtf8) cp.get(inner_name)).value;
-                    flags = dis.readUnsignedShort();
+                    inner_name = r.u2();
+                    c.inner_name = inner_name == 0 ? null : ((ConstantUtf8) cp.get(inner_name)).getValue();
+                    flags = r.u2();
                     c.is_public = (flags & InnerClass.ACC_PUBLIC) != 0;
                     c.is_private = (flags & InnerClass.ACC_PRIVATE) != 0;
                     c.is_protected = (flags & InnerClass.ACC_PROTECTED) != 0;
@@ -227,26 +324,257 @@ public final class ClassIO {
                     c.is_synthetic = (flags & InnerClass.ACC_SYNTHETIC) != 0;
                     c.is_annotation = (flags & InnerClass.ACC_ANNOTATION) != 0;
                     c.is_enum = (flags & InnerClass.ACC_ENUM) != 0;
+                    cf.inner_classes.add(c);
                 }
             } else if (name.equals("EnclosingMethod")) {
                 cf.enclosing_method = new EnclosingMethod();
-                cf.enclosing_method.class_name = ((ConstantClass) cp.get(dis.readUnsignedShort())).value;
-                int nat_index = dis.readUnsignedShort();
+                cf.enclosing_method.class_name = ((ConstantClass) cp.get(r.u2())).value;
+                int nat_index = r.u2();
                 if (nat_index != 0) {
                     ConstantNameAndType cnat = (ConstantNameAndType) cp.get(nat_index);
                     cf.enclosing_method.name = cnat.name;
                     cf.enclosing_method.descriptor = cnat.descriptor;
                 }
-            } else {
-                System.out.println("Ignoring attribute " + name + "...");
-                byte[] garbage = new byte[length];
-                dis.readFully(garbage);
-            }
+            } else if (name.equals("BootstrapMethods")) {
+                int bootstrap_methods = r.u2();
+                cf.bootstrap_methods = new ArrayList<>(bootstrap_methods);
+                for (int i1 = 0; i1 < bootstrap_methods; i1++) {
+                    BootstrapMethod bm = new BootstrapMethod();
+                    bm.method = (ConstantMethodHandle) cp.get(r.u2());
+                    int arguments = r.u2();
+                    bm.arguments = new ArrayList<>(arguments);
+                    for (int i2 = 0; i2 < arguments; i2++)
+                        bm.arguments.add(cp.get(r.u2()));
+                    cf.bootstrap_methods.add(bm);
+                }
+            } else
+                cf.attributes = readAttribute(cf.attributes, name, length, r, cp);
         }
 
         return cf;
     }
 
+    private static ConstantPool readConstantPool(ByteReader r) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(r.b, r.pos, r.end - r.pos);
+        ConstantPool cp = ConstantPool.read(buf);
+        r.pos = buf.position();
+        return cp;
+    }
+
+    private static List<Attribute> readAttribute(List<Attribute> attributes, String name, int length, ByteReader r, ConstantPool cp) throws IOException {
+        r.require(length, name + " attribute");
+        byte[] info = Arrays.copyOfRange(r.b, r.pos, r.pos + length);
+        r.pos += length;
+        if (attributes == null)
+            attributes = new ArrayList<>();
+        attributes.add(new Attribute(name, info, cp));
+        return attributes;
+    }
+
+    /**
+     * <p>Moves the offsets in the attributes of code that has been laid out differently than it was read</p>
+     * <p>Line number and local variable tables follow the instructions they were read against, a StackMapTable is only
+     * kept while the instructions are still the ones read and any other attribute is dropped</p>
+     *
+     * @param cf             the class the method belongs to
+     * @param m              the method, already laid out
+     * @param offsets        the offsets the code was laid out at
+     * @param compute_frames whether frames will be computed to replace the StackMapTable
+     * @return the attributes to write
+     * @throws EncodingException if the StackMapTable can't be kept, the class needs one and none will be computed
+     */
+    private static List<Attribute> moveAttributes(ClassFile cf, Method m, int[] offsets, boolean compute_frames) throws EncodingException {
+        OffsetMap map = m.getOffsetMap(offsets);
+        List<Attribute> moved = new ArrayList<>(m.code_attributes.size());
+        for (Attribute a : m.code_attributes) {
+            if (a.remapped == null)
+                continue;
+            boolean frames = a.name.equals("StackMapTable");
+            byte[] b = null;
+            if (map != null && !(frames && (compute_frames || !m.isUnchanged()))) {
+                try {
+                    b = map.move(a);
+                } catch (IOException e) {
+                    Logger.logger.fine("Couldn't move the " + a.name + " of " + m + ": " + e.getMessage());
+                }
+            }
+            if (b != null) {
+                a.remapped = b;
+                moved.add(a);
+                continue;
+            }
+            if (frames && compute_frames)
+                continue;
+            // Version 50 falls back to the old verifier when the frames are missing, later versions don't
+            if (frames && cf.major_version > 50)
+                throw new EncodingException("The StackMapTable of " + m + " can't be kept now its code has changed, write it with a ClassHierarchy");
+            Logger.logger.fine("Dropping the " + a.name + " of " + m + ", the code has moved since it was read");
+        }
+        return moved.isEmpty() ? null : moved;
+    }
+
+    private static void remapAttributes(List<Attribute> attributes, ConstantPool cpo) {
+        if (attributes == null)
+            return;
+        for (Attribute a : attributes) {
+            a.remapped = a.remap(cpo);
+            if (a.remapped == null)
+                Logger.logger.fine("Dropping attribute " + a.name + ", its layout isn't known so it can't refer to the new constant pool");
+            else
+                a.name_index = cpo.insert(new ConstantUtf8(a.name));
+        }
+    }
+
+    private static int getAttributeCount(List<Attribute> attributes) {
+        int count = 0;
+        if (attributes != null)
+            for (Attribute a : attributes)
+                if (a.remapped != null)
+                    count++;
+        return count;
+    }
+
+    private static int getAttributesLength(List<Attribute> attributes) {
+        int length = 0;
+        if (attributes != null)
+            for (Attribute a : attributes)
+                if (a.remapped != null)
+                    length += 6 + a.remapped.length;
+        return length;
+    }
+
+    private static void writeAttributes(List<Attribute> attributes, ByteWriter w) {
+        if (attributes == null)
+            return;
+        for (Attribute a : attributes) {
+            if (a.remapped == null)
+                continue;
+            w.u2(a.name_index);
+            w.s4(a.remapped.length);
+            w.write(a.remapped);
+        }
+    }
+
+    /**
+     * <p>Works out the length of the Code attribute of a method that has been prepared to be written</p>
+     */
+    private static int getCodeLength(Method m) {
+        // max_stack, max_locals, code_length, exception_table_length and attributes_count
+        return 12 + m.write_code_length + 8 * m.exception_table.size() + getAttributesLength(m.write_code_attributes);
+    }
+
+    /**
+     * <p>Reads a class file from the given <code>InputStream</code>, reporting what it contains to a
+     * <code>ClassVisitor</code> instead of building a <code>ClassFile</code>. Attributes are skipped, as is the code of
+     * any method the visitor doesn't ask for.</p>
+     *
+     * @param is the <code>InputStream</code> to read from
+     * @param cv the <code>ClassVisitor</code> to report to
+     * @throws IOException if the magic number is wrong, the code can't be decoded or if there is an I/O error
+     */
+    public static void readClassFile(InputStream is, ClassVisitor cv) throws IOException {
+        readClassFile(readFully(is), cv);
+    }
+
+    /**
+     * <p>Reads a class file from a byte array, reporting what it contains to a <code>ClassVisitor</code></p>
+     *
+     * @param b  the class file
+     * @param cv the <code>ClassVisitor</code> to report to
+     * @throws IOException if the magic number is wrong, the class file is malformed or the code can't be decoded
+     * @see #readClassFile(InputStream, ClassVisitor)
+     */
+    public static void readClassFile(byte[] b, ClassVisitor cv) throws IOException {
+        ByteReader r = new ByteReader(b, 0, b.length);
+        int magic = r.s4();
+        if (magic != 0xCAFEBABE)
+            throw new IOException("Invalid magic number: " + Integer.toHexString(magic));
+        int minor_version = r.u2();
+        int major_version = r.u2();
+        ConstantPool cp = readConstantPool(r);
+
+        int access_flags = r.u2();
+        String this_class = ((ConstantClass) cp.get(r.u2())).value;
+        int index = r.u2();
+        String super_class = index == 0 ? null : ((ConstantClass) cp.get(index)).value;
+        String[] interfaces = new String[r.u2()];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = ((ConstantClass) cp.get(r.u2())).value;
+        cv.visit(minor_version, major_version, access_flags, this_class, super_class, interfaces);
+
+        int field_count = r.u2();
+        for (int i = 0; i < field_count; i++) {
+            int faccess_flags = r.u2();
+            String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            String descriptor = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            cv.visitField(faccess_flags, name, descriptor);
+            skipAttributes(r);
+        }
+
+        int method_count = r.u2();
+        // One scanner serves every method, it's only handed out for the length of a call
+        CodeScanner scanner = new CodeScanner();
+        for (int i = 0; i < method_count; i++) {
+            int maccess_flags = r.u2();
+            String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            String descriptor = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            boolean visitCode = cv.visitMethod(maccess_flags, name, descriptor);
+            int attributes_count = r.u2();
+            for (int i1 = 0; i1 < attributes_count; i1++) {
+                String aname = ((ConstantUtf8) cp.get(r.u2())).getValue();
+                int length = r.s4();
+                r.require(length, aname + " attribute");
+                if (!aname.equals("Code")) {
+                    r.pos += length;
+                    continue;
+                }
+                int end = r.pos + length;
+                int max_stack = r.u2();
+                int max_locals = r.u2();
+                int code_length = r.s4();
+                r.require(code_length, "code");
+                scanner.reset(r.b, r.pos, code_length, cp);
+                cv.visitCode(scanner);
+                if (!visitCode) {
+                    r.pos = end;
+                    continue;
+                }
+                cv.visitCode(max_stack, max_locals, code_length);
+                ByteReader code = new ByteReader(r.b, r.pos, code_length);
+                r.pos += code_length;
+                while (code.hasMore()) {
+                    int offset = code.offset();
+                    Instruction instruction = Method.readInstruction(code, cp);
+                    if (instruction == null)
+                        throw new IOException("Unknown Instruction: " + Integer.toHexString(r.b[code.start + offset] & 0xff) + " at " + offset + " in " + this_class + "." + name + descriptor);
+                    cv.visitInstruction(offset, instruction);
+                }
+                int exception_table_length = r.u2();
+                for (int i2 = 0; i2 < exception_table_length; i2++) {
+                    int start_pc = r.u2();
+                    int end_pc = r.u2();
+                    int handler_pc = r.u2();
+                    int catch_type = r.u2();
+                    cv.visitExceptionTableEntry(start_pc, end_pc, handler_pc, catch_type == 0 ? null : ((ConstantClass) cp.get(catch_type)).value);
+                }
+                skipAttributes(r);
+            }
+        }
+
+        skipAttributes(r);
+        cv.visitEnd();
+    }
+
+    private static void skipAttributes(ByteReader r) throws IOException {
+        int attributes_count = r.u2();
+        for (int i = 0; i < attributes_count; i++) {
+            r.u2();
+            int length = r.s4();
+            r.require(length, "attribute");
+            r.pos += length;
+        }
+    }
+
     /**
      * <p>Writes a <code>ClassFile</code> to the given <code>OutputStream</code>
      *
@@ -255,12 +583,106 @@ public final class ClassIO {
      * @throws IOException if there is an I/O error
      */
     public static void writeClassFile(ClassFile cf, OutputStream os) throws IOException {
-        DataOutputStream dos = new DataOutputStream(os);
-        dos.writeInt(cf.magic);
-        dos.writeShort(cf.minor_version);
-        dos.writeShort(cf.major_version);
+        writeClassFile(cf, os, null);
+    }
+
+    /**
+     * <p>Writes a <code>ClassFile</code> to the given <code>OutputStream</code>, computing the stack map frames of every
+     * method with code if a hierarchy is given</p>
+     * <p>Computed frames replace any StackMapTable that was read, so code can be changed freely and still verify.
+     * Class files older than version 50 are never given frames. Without a hierarchy the frames that were read are only
+     * kept while the instructions are still the ones read, so changed code in a class file newer than version 50 has
+     * to be written with one.</p>
+     *
+     * @param cf        the <code>ClassFile</code> to write
+     * @param os        the <code>OutputStream</code> to write to
+     * @param hierarchy the hierarchy to merge class types with when computing frames, or null to not compute them
+     * @throws IOException if there is an I/O error, or if frames were asked for and the code can't be given them
+     */
+    public static void writeClassFile(ClassFile cf, OutputStream os, ClassHierarchy hierarchy) throws IOException {
+        os.write(encode(cf, hierarchy, null).b);
+    }
+
+    /**
+     * <p>Writes a <code>ClassFile</code> into a new array of exactly its length</p>
+     *
+     * @param cf the <code>ClassFile</code> to write
+     * @return the class file
+     * @throws IOException if the class file can't be encoded
+     */
+    public static byte[] writeClassFile(ClassFile cf) throws IOException {
+        return encode(cf, null, null).b;
+    }
+
+    /**
+     * <p>Writes a <code>ClassFile</code> into a new array of exactly its length, computing stack map frames if a
+     * hierarchy is given</p>
+     *
+     * @param cf        the <code>ClassFile</code> to write
+     * @param hierarchy the hierarchy to merge class types with when computing frames, or null to not compute them
+     * @return the class file
+     * @throws IOException if the class file can't be encoded
+     * @see #writeClassFile(ClassFile, OutputStream, ClassHierarchy)
+     */
+    public static byte[] writeClassFile(ClassFile cf, ClassHierarchy hierarchy) throws IOException {
+        return encode(cf, hierarchy, null).b;
+    }
+
+    /**
+     * <p>Writes a <code>ClassFile</code> into a buffer, leaving its position just past the class file</p>
+     * <p>A buffer backed by an array is written in place, any other buffer has the class file put into it once it has
+     * been written into an array</p>
+     *
+     * @param cf        the <code>ClassFile</code> to write
+     * @param buf       the buffer to write to
+     * @param hierarchy the hierarchy to merge class types with when computing frames, or null to not compute them
+     * @throws IOException             if the class file can't be encoded
+     * @throws BufferOverflowException if the class file doesn't fit in what remains of the buffer
+     * @see #writeClassFile(ClassFile, OutputStream, ClassHierarchy)
+     */
+    public static void writeClassFile(ClassFile cf, ByteBuffer buf, ClassHierarchy hierarchy) throws IOException {
+        ByteWriter w = encode(cf, hierarchy, buf);
+        if (buf.hasArray())
+            buf.position(w.pos - buf.arrayOffset());
+        else if (buf.remaining() < w.b.length)
+            throw new BufferOverflowException();
+        else
+            buf.put(w.b);
+    }
 
+    /**
+     * <p>Writes a <code>ClassFile</code> to a channel</p>
+     *
+     * @param cf        the <code>ClassFile</code> to write
+     * @param channel   the channel to write to
+     * @param hierarchy the hierarchy to merge class types with when computing frames, or null to not compute them
+     * @throws IOException if the class file can't be encoded or there is an I/O error
+     * @see #writeClassFile(ClassFile, OutputStream, ClassHierarchy)
+     */
+    public static void writeClassFile(ClassFile cf, WritableByteChannel channel, ClassHierarchy hierarchy) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(encode(cf, hierarchy, null).b);
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+    /**
+     * <p>Prepares everything a class file refers to, works out its exact length and then encodes it in one pass</p>
+     *
+     * @param into a buffer backed by an array to encode straight into, or null to encode into a new array
+     * @return the writer holding the class file, which fills its array unless it was given one
+     */
+    private static ByteWriter encode(ClassFile cf, ClassHierarchy hierarchy, ByteBuffer into) throws IOException {
         ConstantPool cpo = new ConstantPool();
+        if (cf.constant_pool != null)
+            for (Method m : cf.methods)
+                if (!m.isDecoded()) {
+                    // Undecoded code refers into the pool it was read with, so keep every constant where it was
+                    ConstantPool cp = cf.constant_pool;
+                    for (int i = 1; i < cp.constants.size(); i++)
+                        if (cp.get(i) != null)
+                            cpo.append(cp.get(i));
+                    break;
+                }
         int deprecated_idx = cpo.insert(new ConstantUtf8("Deprecated"));
         int synthetic_idx = cpo.insert(new ConstantUtf8("Synthetic"));
         int sourcefile_idx = 0;
@@ -276,6 +698,9 @@ public final class ClassIO {
             inner_classes_idx = cpo.insert(new ConstantUtf8("InnerClasses"));
         if (cf.enclosing_method != null)
             enclosing_method_idx = cpo.insert(new ConstantUtf8("EnclosingMethod"));
+        int bootstrap_methods_idx = 0;
+        if (cf.bootstrap_methods != null && cf.bootstrap_methods.size() > 0)
+            bootstrap_methods_idx = cpo.insert(new ConstantUtf8("BootstrapMethods"));
 
         int this_class = cpo.insert(new ConstantClass(cf.this_class));
         int super_class = cpo.insert(new ConstantClass(cf.super_class));
@@ -297,8 +722,10 @@ public final class ClassIO {
                 f.constantvalue_index = -1;
             if (f.signature != null)
                 f.signature_index = cpo.insert(new ConstantUtf8(f.signature));
+            remapAttributes(f.attributes, cpo);
         }
         for (Method m : cf.methods) {
+            m.finishEditing();
             m.name_index = cpo.insert(new ConstantUtf8(m.name));
             m.descriptor_index = cpo.insert(new ConstantUtf8(m.descriptor));
             if (m.code != null)
@@ -330,6 +757,9 @@ public final class ClassIO {
                     } else if (i instanceof INVOKEVIRTUAL) {
                         INVOKEVIRTUAL ci = (INVOKEVIRTUAL) i;
                         ci.index = cpo.insert(ci.method);
+                    } else if (i instanceof INVOKEDYNAMIC) {
+                        INVOKEDYNAMIC ci = (INVOKEDYNAMIC) i;
+                        ci.index = cpo.insert(ci.call_site);
                     } else if (i instanceof LDC) {
                         LDC ci = (LDC) i;
                         ci.index = cpo.insert(ci.c);
@@ -360,6 +790,36 @@ public final class ClassIO {
                 }
             if (m.signature != null)
                 m.signature_index = cpo.insert(new ConstantUtf8(m.signature));
+            remapAttributes(m.attributes, cpo);
+            m.write_code_attributes = null;
+            if (m.code != null) {
+                remapAttributes(m.code_attributes, cpo);
+                int[] offsets = m.layout();
+                m.write_max_stack = m.code.size() == 0 ? 0 : m.getMaxStack();
+                m.write_max_locals = m.getMaxLocals();
+                // Frames are only checked from version 50 on
+                boolean compute_frames = hierarchy != null && cf.major_version >= 50;
+                List<Attribute> code_attributes = m.code_attributes;
+                if (m.moved && code_attributes != null)
+                    code_attributes = moveAttributes(cf, m, offsets, compute_frames);
+                if (compute_frames) {
+                    // The computed frames replace any that were read
+                    List<Attribute> read = code_attributes;
+                    code_attributes = new ArrayList<>();
+                    if (read != null)
+                        for (Attribute a : read)
+                            if (!a.name.equals("StackMapTable"))
+                                code_attributes.add(a);
+                    byte[] frames = m.getStackMapTable(offsets, cf.this_class, hierarchy, cpo);
+                    if (frames != null) {
+                        Attribute a = new Attribute("StackMapTable", frames);
+                        a.remapped = frames;
+                        a.name_index = cpo.insert(new ConstantUtf8("StackMapTable"));
+                        code_attributes.add(a);
+                    }
+                }
+                m.write_code_attributes = code_attributes;
+            }
         }
         if (cf.inner_classes != null)
             for (InnerClass ic : cf.inner_classes) {
@@ -374,16 +834,31 @@ public final class ClassIO {
                     ic.inner_name_idx = cpo.insert(new ConstantUtf8(ic.inner_name));
             }
         if (cf.enclosing_method != null) {
-            cf.enclosing_method.class_name_index = cpo.insert(new ConstantUtf8(cf.enclosing_method.class_name));
-            cf.enclosing_method.nat_index = cpo.insert(new ConstantNameAndType(cf.enclosing_method.name, cf.enclosing_method.descriptor));
+            cf.enclosing_method.class_name_index = cpo.insert(new ConstantClass(cf.enclosing_method.class_name));
+            // Classes declared in initializers have no enclosing method
+            cf.enclosing_method.nat_index = 0;
+            if (cf.enclosing_method.name != null)
+                cf.enclosing_method.nat_index = cpo.insert(new ConstantNameAndType(cf.enclosing_method.name, cf.enclosing_method.descriptor));
         }
+        int bootstrap_methods_length = 2;
+        if (cf.bootstrap_methods != null)
+            for (BootstrapMethod bm : cf.bootstrap_methods) {
+                bm.method_index = cpo.insert(bm.method);
+                bm.argument_indices = new int[bm.arguments.size()];
+                for (int i = 0; i < bm.argument_indices.length; i++)
+                    bm.argument_indices[i] = cpo.insert(bm.arguments.get(i));
+                bootstrap_methods_length += 4 + 2 * bm.argument_indices.length;
+            }
+        remapAttributes(cf.attributes, cpo);
 
         if (cf.constant_pool_modifiers != null)
             for (ConstantPoolModifier cpm : cf.constant_pool_modifiers)
                 cpm.modifyConstantPool(cpo);
 
         int access_flags = 0;
-        access_flags |= ClassFile.ACC_SUPER;
+        // Interfaces mustn't have ACC_SUPER set
+        if (!cf.is_interface)
+            access_flags |= ClassFile.ACC_SUPER;
         if (cf.is_public)
             access_flags |= ClassFile.ACC_PUBLIC;
         if (cf.is_final)
@@ -399,15 +874,72 @@ public final class ClassIO {
         if (cf.is_enum)
             access_flags |= ClassFile.ACC_ENUM;
 
-        cpo.write(dos);
+        final int pool_length = cpo.getLength();
+        // magic, the versions, access_flags, this_class, super_class and the counts of the interfaces, fields, methods and attributes
+        int length = 22 + pool_length + 2 * interfaces.length;
+        for (Field f : cf.fields) {
+            length += 8 + getAttributesLength(f.attributes);
+            if (f.deprecated)
+                length += 6;
+            if (f.synthetic)
+                length += 6;
+            if (f.constantvalue != null)
+                length += 8;
+            if (f.signature != null)
+                length += 8;
+        }
+        for (Method m : cf.methods) {
+            length += 8 + getAttributesLength(m.attributes);
+            if (m.deprecated)
+                length += 6;
+            if (m.synthetic)
+                length += 6;
+            if (!m.isDecoded())
+                length += 6 + m.raw_length;
+            else if (m.code != null)
+                length += 6 + getCodeLength(m);
+            if (m.exception_index_table != null)
+                length += 8 + 2 * m.exception_index_table.length;
+            if (m.signature != null)
+                length += 8;
+        }
+        length += getAttributesLength(cf.attributes);
+        if (cf.deprecated)
+            length += 6;
+        if (cf.synthetic)
+            length += 6;
+        if (cf.sourcefile != null)
+            length += 8;
+        if (cf.signature != null)
+            length += 8;
+        if (cf.inner_classes != null && cf.inner_classes.size() > 0)
+            length += 8 + 8 * cf.inner_classes.size();
+        if (cf.enclosing_method != null)
+            length += 10;
+        if (bootstrap_methods_idx != 0)
+            length += 6 + bootstrap_methods_length;
+
+        ByteWriter w;
+        if (into != null && into.hasArray()) {
+            if (into.remaining() < length)
+                throw new BufferOverflowException();
+            w = new ByteWriter(into.array(), into.arrayOffset() + into.position());
+        } else
+            w = new ByteWriter(new byte[length], 0);
+        final int start = w.pos;
+        w.s4(cf.magic);
+        w.u2(cf.minor_version);
+        w.u2(cf.major_version);
+        cpo.write(ByteBuffer.wrap(w.b, w.pos, pool_length));
+        w.pos += pool_length;
 
-        dos.writeShort(access_flags);
-        dos.writeShort(this_class);
-        dos.writeShort(super_class);
-        dos.writeShort(interfaces.length);
+        w.u2(access_flags);
+        w.u2(this_class);
+        w.u2(super_class);
+        w.u2(interfaces.length);
         for (int anInterface : interfaces)
-            dos.writeShort(anInterface);
-        dos.writeShort(cf.fields.size());
+            w.u2(anInterface);
+        w.u2(cf.fields.size());
         for (Field f : cf.fields) {
             int faccess_flags = 0;
             if (f.is_public)
@@ -429,9 +961,9 @@ public final class ClassIO {
             if (f.is_enum)
                 faccess_flags |= Field.ACC_ENUM;
 
-            dos.writeShort(faccess_flags);
-            dos.writeShort(f.name_index);
-            dos.writeShort(f.descriptor_index);
+            w.u2(faccess_flags);
+            w.u2(f.name_index);
+            w.u2(f.descriptor_index);
             int attributes_count = 0;
             if (f.deprecated)
                 attributes_count++;
@@ -441,28 +973,30 @@ public final class ClassIO {
                 attributes_count++;
             if (f.signature != null)
                 attributes_count++;
-            dos.writeShort(attributes_count);
+            attributes_count += getAttributeCount(f.attributes);
+            w.u2(attributes_count);
             if (f.deprecated) {
-                dos.writeShort(deprecated_idx);
-                dos.writeInt(0);
+                w.u2(deprecated_idx);
+                w.s4(0);
             }
             if (f.synthetic) {
-                dos.writeShort(synthetic_idx);
-                dos.writeInt(0);
+                w.u2(synthetic_idx);
+                w.s4(0);
             }
             if (f.constantvalue != null) {
-                dos.writeShort(constantvalue_idx);
-                dos.writeInt(2);
-                dos.writeShort(f.constantvalue_index);
+                w.u2(constantvalue_idx);
+                w.s4(2);
+                w.u2(f.constantvalue_index);
             }
             if (f.signature != null) {
-                dos.writeShort(signature_idx);
-                dos.writeInt(2);
-                dos.writeShort(f.signature_index);
+                w.u2(signature_idx);
+                w.s4(2);
+                w.u2(f.signature_index);
             }
+            writeAttributes(f.attributes, w);
         }
 
-        dos.writeShort(cf.methods.size());
+        w.u2(cf.methods.size());
         for (Method m : cf.methods) {
             int maccess_flags = 0;
 
@@ -491,139 +1025,66 @@ public final class ClassIO {
             if (m.is_synthetic)
                 maccess_flags |= Method.ACC_SYNTHETIC;
 
-            dos.writeShort(maccess_flags);
-            dos.writeShort(m.name_index);
-            dos.writeShort(m.descriptor_index);
+            w.u2(maccess_flags);
+            w.u2(m.name_index);
+            w.u2(m.descriptor_index);
 
             int attributes_count = 0;
             if (m.deprecated)
                 attributes_count++;
             if (m.synthetic)
                 attributes_count++;
-            if (m.code != null)
+            if (m.code != null || !m.isDecoded())
                 attributes_count++;
             if (m.thrown_exceptions_table != null)
                 attributes_count++;
             if (m.signature != null)
                 attributes_count++;
-            dos.writeShort(attributes_count);
+            attributes_count += getAttributeCount(m.attributes);
+            w.u2(attributes_count);
 
             if (m.deprecated) {
-                dos.writeShort(deprecated_idx);
-                dos.writeInt(0);
+                w.u2(deprecated_idx);
+                w.s4(0);
             }
             if (m.synthetic) {
-                dos.writeShort(synthetic_idx);
-                dos.writeInt(0);
+                w.u2(synthetic_idx);
+                w.s4(0);
             }
-            if (m.code != null) {
-                dos.writeShort(code_idx);
-                // Calculate attribute length
-                int length = 12; // Known values
-                length += (m.exception_table.size()) * 8;
-                byte[] code = m.getBytes();
-                length += code.length;
-                dos.writeInt(length);
-                int max_locals = 0;
-                int max_stack = 0;
-                int idx;
-                if (m.code.size() != 0) {
-                    max_locals = Util.getParamCount(m.descriptor);
-                    for (Instruction i : m.code) {
-                        if (i instanceof LoadInstruction) {
-                            idx = ((LoadInstruction) i).index;
-                            if (i instanceof LLOAD || i instanceof DLOAD)
-                                ++idx;
-                            if (idx > max_locals)
-                                max_locals = idx;
-                        } else if (i instanceof StoreInstruction) {
-                            idx = ((StoreInstruction) i).index;
-                            if (i instanceof LSTORE || i instanceof DSTORE)
-                                ++idx;
-                            if (idx > max_locals)
-                                max_locals = idx;
-                        }
-                    }
-                    BranchStack branchTargets = new BranchStack();
-                    ExceptionTableEntry ete;
-                    for (int i = 0; i < m.exception_table.size(); i++) {
-                        ete = m.exception_table.get(i);
-                        branchTargets.push(ete.handler_index, 1);
-                    }
-
-                    int stackDepth = 0, maxStackDepth = 0;
-                    int delta;
-                    Instruction instruction;
-                    BranchInstruction branch;
-                    Switch select;
-                    Integer[] indices;
-                    //echo(colSize, "Instruction", "Stack delta", "Stack afterwards");
-                    for (int pc = 0; pc < m.code.size();) {
-                        instruction = m.code.get(pc);
-                        delta = instruction.getStackChange();
-                        stackDepth += delta;
-                        //echo(colSize, instruction.toString(), String.valueOf(delta), String.valueOf(stackDepth));
-                        if (stackDepth > maxStackDepth)
-                            maxStackDepth = stackDepth;
-                        if (instruction instanceof BranchInstruction) {
-                            branch = (BranchInstruction) instruction;
-                            if (instruction instanceof Switch) {
-                                select = (Switch) branch;
-                                Collection<Integer> values = select.match_pairs.values();
-                                indices = values.toArray(new Integer[values.size()]);
-                                for (Integer index : indices)
-                                    branchTargets.push(index, stackDepth);
-                                pc = m.code.size();
-                            } else if (instruction instanceof JSR) {
-                                branchTargets.push(pc + 1, stackDepth - 1);
-                                pc = m.code.size();
-                            }
-                            branchTargets.push(branch.branch_index, stackDepth - 1);
-                        } else {
-                            if (instruction instanceof TerminatingInstruction)
-                                pc = m.code.size();
-                        }
-                        if (pc < m.code.size())
-                            ++pc;
-                        if (pc == m.code.size()) {
-                            BranchTarget bt = branchTargets.pop();
-                            if (bt != null) {
-                                pc = bt.target;
-                                stackDepth = bt.stackDepth;
-                                
-                                // Added as a test
-                                if(stackDepth > maxStackDepth)
-                                    maxStackDepth = stackDepth;
-                            }
-                        }
-                    }
-                    max_stack = maxStackDepth;
-                }
-                dos.writeShort(max_stack);
-                dos.writeShort(max_locals);
-                dos.writeInt(code.length);
-                dos.write(code);
-                dos.writeShort(m.exception_table.size());
+            if (!m.isDecoded()) {
+                w.u2(code_idx);
+                w.s4(m.raw_length);
+                w.write(m.raw_code, m.raw_offset, m.raw_length);
+            } else if (m.code != null) {
+                w.u2(code_idx);
+                w.s4(getCodeLength(m));
+                w.u2(m.write_max_stack);
+                w.u2(m.write_max_locals);
+                w.s4(m.write_code_length);
+                m.encode(w);
+                w.u2(m.exception_table.size());
                 for (ExceptionTableEntry ete : m.exception_table) {
-                    dos.writeShort(ete.start_pc);
-                    dos.writeShort(ete.end_pc);
-                    dos.writeShort(ete.handler_pc);
-                    dos.writeShort(ete.catch_type_index);
+                    w.u2(ete.start_pc);
+                    w.u2(ete.end_pc);
+                    w.u2(ete.handler_pc);
+                    w.u2(ete.catch_type_index);
                 }
-                dos.writeShort(0);
+                w.u2(getAttributeCount(m.write_code_attributes));
+                writeAttributes(m.write_code_attributes, w);
             }
             if (m.exception_index_table != null) {
-                dos.writeShort(exceptions_idx);
-                dos.writeInt(2 + (m.exception_index_table.length * 2));
-                dos.writeShort(m.exception_index_table.length);
+                w.u2(exceptions_idx);
+                w.s4(2 + (m.exception_index_table.length * 2));
+                w.u2(m.exception_index_table.length);
                 for (int exception : m.exception_index_table)
-                    dos.writeShort(exception);
+                    w.u2(exception);
             }
             if (m.signature != null) {
-                dos.writeShort(signature_idx);
-                dos.writeShort(2);
-                dos.writeShort(m.signature_index);
+                w.u2(signature_idx);
+                w.s4(2);
+                w.u2(m.signature_index);
             }
+            writeAttributes(m.attributes, w);
         }
         int attribute_count = 0;
         if (cf.deprecated)
@@ -638,32 +1099,36 @@ public final class ClassIO {
             attribute_count++;
         if (cf.enclosing_method != null)
             attribute_count++;
-        dos.writeShort(attribute_count);
+        if (bootstrap_methods_idx != 0)
+            attribute_count++;
+        attribute_count += getAttributeCount(cf.attributes);
+        w.u2(attribute_count);
         if (cf.deprecated) {
-            dos.writeShort(deprecated_idx);
-            dos.writeInt(0);
+            w.u2(deprecated_idx);
+            w.s4(0);
         }
         if (cf.synthetic) {
-            dos.writeShort(synthetic_idx);
-            dos.writeInt(0);
+            w.u2(synthetic_idx);
+            w.s4(0);
         }
         if (cf.sourcefile != null) {
-            dos.writeShort(sourcefile_idx);
-            dos.writeInt(2);
-            dos.writeShort(sourcefile_index);
+            w.u2(sourcefile_idx);
+            w.s4(2);
+            w.u2(sourcefile_index);
         }
         if (cf.signature != null) {
-            dos.writeShort(signature_idx);
-            dos.writeInt(2);
-            dos.writeShort(signature_index);
+            w.u2(signature_idx);
+            w.s4(2);
+            w.u2(signature_index);
         }
         if (cf.inner_classes != null && cf.inner_classes.size() > 0) {
-            dos.writeShort(inner_classes_idx);
-            dos.writeInt(2 + (cf.inner_classes.size() * 8));
+            w.u2(inner_classes_idx);
+            w.s4(2 + (cf.inner_classes.size() * 8));
+            w.u2(cf.inner_classes.size());
             for (InnerClass ic : cf.inner_classes) {
-                dos.writeShort(ic.inner_class_idx);
-                dos.writeShort(ic.outer_class_idx);
-                dos.writeShort(ic.inner_name_idx);
+                w.u2(ic.inner_class_idx);
+                w.u2(ic.outer_class_idx);
+                w.u2(ic.inner_name_idx);
                 access_flags = 0;
                 if (ic.is_public)
                     access_flags |= InnerClass.ACC_PUBLIC;
@@ -685,51 +1150,29 @@ public final class ClassIO {
                     access_flags |= InnerClass.ACC_ANNOTATION;
                 if (ic.is_enum)
                     access_flags |= InnerClass.ACC_ENUM;
-                dos.writeShort(access_flags);
+                w.u2(access_flags);
             }
         }
         if (cf.enclosing_method != null) {
-            dos.writeShort(enclosing_method_idx);
-            dos.writeInt(4);
-            dos.writeShort(cf.enclosing_method.class_name_index);
-            dos.writeShort(cf.enclosing_method.nat_index);
-        }
-    }
-
-    private static final class BranchStack {
-        Stack<BranchTarget> branchTargets = new Stack<>();
-        Hashtable<Integer, BranchTarget> visitedTargets = new Hashtable<>();
-
-        public void push(final int target, final int stackDepth) {
-            if (visited(target))
-                return;
-            branchTargets.push(visit(target, stackDepth));
+            w.u2(enclosing_method_idx);
+            w.s4(4);
+            w.u2(cf.enclosing_method.class_name_index);
+            w.u2(cf.enclosing_method.nat_index);
         }
-
-        public BranchTarget pop() {
-            if (!branchTargets.empty())
-                return branchTargets.pop();
-            return null;
-        }
-
-        private BranchTarget visit(final int target, final int stackDepth) {
-            BranchTarget bt = new BranchTarget(target, stackDepth);
-            visitedTargets.put(target, bt);
-            return bt;
-        }
-
-        private boolean visited(final int target) {
-            return (visitedTargets.get(target) != null);
-        }
-    }
-
-    private static final class BranchTarget {
-        public int target;
-        public int stackDepth;
-
-        private BranchTarget(int target, int stackDepth) {
-            this.target = target;
-            this.stackDepth = stackDepth;
+        if (bootstrap_methods_idx != 0) {
+            w.u2(bootstrap_methods_idx);
+            w.s4(bootstrap_methods_length);
+            w.u2(cf.bootstrap_methods.size());
+            for (BootstrapMethod bm : cf.bootstrap_methods) {
+                w.u2(bm.method_index);
+                w.u2(bm.argument_indices.length);
+                for (int index : bm.argument_indices)
+                    w.u2(index);
+            }
         }
+        writeAttributes(cf.attributes, w);
+        if (w.pos - start != length)
+            throw new EncodingException("Wrote " + (w.pos - start) + " bytes of class file but worked out " + length);
+        return w;
     }
 }
\ No newline at end of file
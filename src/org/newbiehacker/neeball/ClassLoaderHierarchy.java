@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A <code>ClassHierarchy</code> that looks classes up through a <code>ClassLoader</code>, without initializing them</p>
+ * <p>Classes that aren't loadable, such as the ones being transformed, can be added with <code>addClass</code> and take
+ * precedence over the loader. Safe to share between threads.</p>
+ */
+public final class ClassLoaderHierarchy implements ClassHierarchy {
+    private final ClassLoader loader;
+    private final ConcurrentHashMap<String, ClassFile> classes = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Constructs a new <code>ClassLoaderHierarchy</code> that looks classes up through the given loader</p>
+     *
+     * @param loader the loader to look classes up through
+     */
+    public ClassLoaderHierarchy(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * <p>Constructs a new <code>ClassLoaderHierarchy</code> that looks classes up through the loader of this class</p>
+     */
+    public ClassLoaderHierarchy() {
+        this(ClassLoaderHierarchy.class.getClassLoader());
+    }
+
+    /**
+     * <p>Makes a class known to this hierarchy without it being loadable</p>
+     *
+     * @param cf the class to add
+     */
+    public void addClass(ClassFile cf) {
+        classes.put(cf.this_class, cf);
+    }
+
+    public String getSuperClass(String name) {
+        ClassFile cf = classes.get(name);
+        if (cf != null)
+            return cf.super_class;
+        Class<?> c = load(name);
+        if (c == null || c.getSuperclass() == null)
+            return null;
+        return c.getSuperclass().getName().replace('.', '/');
+    }
+
+    public boolean isInterface(String name) {
+        ClassFile cf = classes.get(name);
+        if (cf != null)
+            return cf.is_interface;
+        Class<?> c = load(name);
+        return c != null && c.isInterface();
+    }
+
+    private Class<?> load(String name) {
+        try {
+            return Class.forName(name.replace('/', '.'), false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            Logger.logger.fine("Couldn't load " + name + " to look up its hierarchy: " + e);
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.io.IOException;
+
+/**
+ * <p>Receives the contents of a class file as it is read by <code>ClassIO.readClassFile(InputStream, ClassVisitor)</code>,
+ * without a <code>ClassFile</code> being built. Every method does nothing by default, so only the events of interest
+ * need overriding.</p>
+ * <p>Events arrive in class file order: <code>visit</code>, then <code>visitField</code> for each field, then
+ * <code>visitMethod</code> for each method (followed by <code>visitCode(CodeScanner)</code> if it has code, then its
+ * code events if it asked for them), then <code>visitEnd</code>.</p>
+ */
+public abstract class ClassVisitor {
+    /**
+     * <p>Called once with the class header</p>
+     *
+     * @param minor_version the minor version of the class file
+     * @param major_version the major version of the class file
+     * @param access_flags  the access flags of the class
+     * @param this_class    the internal name of the class
+     * @param super_class   the internal name of the super class, or null for <code>java/lang/Object</code>
+     * @param interfaces    the internal names of the directly implemented interfaces
+     */
+    public void visit(int minor_version, int major_version, int access_flags, String this_class, String super_class, String[] interfaces) {
+    }
+
+    /**
+     * <p>Called for each field of the class</p>
+     *
+     * @param access_flags the access flags of the field
+     * @param name         the name of the field
+     * @param descriptor   the descriptor of the field
+     */
+    public void visitField(int access_flags, String name, String descriptor) {
+    }
+
+    /**
+     * <p>Called for each method of the class</p>
+     *
+     * @param access_flags the access flags of the method
+     * @param name         the name of the method
+     * @param descriptor   the descriptor of the method
+     * @return true to receive the code events of this method, false to skip its code without decoding it
+     */
+    public boolean visitMethod(int access_flags, String name, String descriptor) {
+        return false;
+    }
+
+    /**
+     * <p>Called for each method with code, whether or not it asked for its code events, with a scanner over the raw
+     * code array. Nothing is decoded unless the scanner is asked for it, so this is the cheap way to search many
+     * classes.</p>
+     * <p>The scanner is reused for every method and is only valid during the call</p>
+     *
+     * @param code a scanner before the first instruction of the method
+     * @throws IOException if the code can't be scanned
+     */
+    public void visitCode(CodeScanner code) throws IOException {
+    }
+
+    /**
+     * <p>Called before the instructions of a method that asked for its code</p>
+     *
+     * @param max_stack   the max_stack value stored in the class file
+     * @param max_locals  the max_locals value stored in the class file
+     * @param code_length the length of the code array in bytes
+     */
+    public void visitCode(int max_stack, int max_locals, int code_length) {
+    }
+
+    /**
+     * <p>Called for each instruction of a method that asked for its code. Branch targets aren't resolved to indices,
+     * <code>BranchInstruction.getBranchOffset()</code> gives the target relative to <code>offset</code>.</p>
+     *
+     * @param offset      the offset of the instruction in the code array
+     * @param instruction the decoded instruction
+     */
+    public void visitInstruction(int offset, Instruction instruction) {
+    }
+
+    /**
+     * <p>Called for each exception handler of a method that asked for its code, after its instructions</p>
+     *
+     * @param start_pc   the offset the handler's range starts at
+     * @param end_pc     the offset the handler's range ends before
+     * @param handler_pc the offset of the handler
+     * @param catch_type the internal name of the caught class, or null for any
+     */
+    public void visitExceptionTableEntry(int start_pc, int end_pc, int handler_pc, String catch_type) {
+    }
+
+    /**
+     * <p>Called once after everything else has been visited</p>
+     */
+    public void visitEnd() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>CodeEditor edits the code of a method as a linked list of instructions and labels, so inserting and removing
+ * costs the same wherever it happens and nothing has to be renumbered as it goes</p>
+ * <p>Branches, switch arms and the ranges and handlers of the exception table point at <code>Label</code>s rather than
+ * indices. A label sits between two instructions and a jump to it runs whatever follows it, every instruction the
+ * code started with has one in front of it, given by <code>getLabel</code>. Inserting before an instruction puts the
+ * new one after its label, so jumps to the instruction run it too, inserting before the label puts it where jumps
+ * skip it</p>
+ * <p>Indices are only worked out when the code is next used in any other way, through <code>Method.getCode()</code>,
+ * the index based editing methods of <code>Method</code> or by writing the class. The editor is finished then, and
+ * any further edit through it throws an <code>IllegalStateException</code></p>
+ *
+ * @see Method#edit()
+ */
+public final class CodeEditor {
+    /**
+     * <p>An instruction or label in the code being edited</p>
+     */
+    public static abstract class Node {
+        Node previous;
+        Node next;
+
+        Node() {
+        }
+
+        public Node getPrevious() {
+            return previous;
+        }
+
+        public Node getNext() {
+            return next;
+        }
+    }
+
+    /**
+     * <p>A position between two instructions that branches and exception table entries can point at</p>
+     */
+    public static final class Label extends Node {
+        // The index of the instruction after this label, worked out when the edits are applied
+        int index;
+
+        Label() {
+        }
+
+        public String toString() {
+            return "label";
+        }
+    }
+
+    /**
+     * <p>An instruction in the code being edited, along with where it branches to</p>
+     */
+    public static final class InstructionNode extends Node {
+        Instruction instruction;
+        Label target;
+        TreeMap<Integer, Label> targets;
+        // The index of the instruction when editing started, -1 if it was inserted since
+        final int start_index;
+
+        InstructionNode(Instruction instruction, int start_index) {
+            this.instruction = instruction;
+            this.start_index = start_index;
+            if (instruction instanceof Switch)
+                targets = new TreeMap<>();
+        }
+
+        public Instruction getInstruction() {
+            return instruction;
+        }
+
+        public String toString() {
+            return instruction.toString();
+        }
+    }
+
+    private static final class Handler {
+        final ExceptionTableEntry entry;
+        final Label start;
+        final Label end;
+        final Label handler;
+
+        Handler(ExceptionTableEntry entry, Label start, Label end, Label handler) {
+            this.entry = entry;
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+        }
+    }
+
+    private final Method method;
+    private Node first;
+    private Node last;
+    // The instructions the code started with and the labels in front of them, created as they're needed
+    private final InstructionNode[] nodes;
+    private final Label[] labels;
+    private final List<Handler> handlers;
+    private int size;
+    // The index each instruction was read at when editing started, null if that isn't known
+    private final int[] origins;
+
+    CodeEditor(Method method) {
+        this.method = method;
+        origins = method.getOrigins();
+        List<Instruction> code = method.code;
+        size = code.size();
+        nodes = new InstructionNode[size];
+        labels = new Label[size + 1];
+        for (int i = 0; i < size; i++)
+            link(last, nodes[i] = new InstructionNode(code.get(i), i));
+        // The end goes in first too, so anything appended comes after it
+        label(size);
+        for (InstructionNode n : nodes)
+            if (n.instruction instanceof BranchInstruction) {
+                BranchInstruction bi = (BranchInstruction) n.instruction;
+                n.target = getLabel(bi.branch_index, bi);
+                if (bi instanceof Switch)
+                    for (Map.Entry<Integer, Integer> e : ((Switch) bi).match_pairs.entrySet())
+                        n.targets.put(e.getKey(), getLabel(e.getValue(), bi));
+            }
+        handlers = new ArrayList<>(method.exception_table.size());
+        for (ExceptionTableEntry ete : method.exception_table)
+            handlers.add(new Handler(ete, getLabel(ete.start_index, ete), getLabel(ete.end_index, ete), getLabel(ete.handler_index, ete)));
+    }
+
+    private Label getLabel(int index, Object user) {
+        if (index < 0 || index > size)
+            throw new IllegalStateException("Index out of range in " + method + " for " + user + ": " + index);
+        return label(index);
+    }
+
+    private Label label(int index) {
+        Label l = labels[index];
+        if (l == null) {
+            l = labels[index] = new Label();
+            link(index == nodes.length ? last : nodes[index].previous, l);
+        }
+        return l;
+    }
+
+    // Puts a node after another, or first if there is none
+    private void link(Node after, Node node) {
+        node.previous = after;
+        node.next = after == null ? first : after.next;
+        if (node.next == null)
+            last = node;
+        else
+            node.next.previous = node;
+        if (after == null)
+            first = node;
+        else
+            after.next = node;
+    }
+
+    // An instruction the code started with gets its label before anything goes in front of it or it's removed, so the label stays where the instruction was
+    private void place(Node at) {
+        if (at instanceof InstructionNode && ((InstructionNode) at).start_index != -1)
+            label(((InstructionNode) at).start_index);
+    }
+
+    private void check() {
+        if (method.editor != this)
+            throw new IllegalStateException("The editing of " + method + " is finished, its code has been used since");
+    }
+
+    private void check(Node node) {
+        check();
+        if (node == null)
+            throw new NullPointerException();
+        // Removed nodes are unlinked and can't be found from either end
+        if (node != first && node.previous == null)
+            throw new IllegalArgumentException(node + " isn't in the code being edited");
+    }
+
+    /**
+     * <p>Returns the number of instructions, as they stand</p>
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return size;
+    }
+
+    public Node getFirst() {
+        return first;
+    }
+
+    public Node getLast() {
+        return last;
+    }
+
+    /**
+     * <p>Returns one of the instructions the code started with</p>
+     *
+     * @param index the index of the instruction when editing started
+     * @return the instruction, which may since have been removed
+     */
+    public InstructionNode get(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * <p>Returns the label in front of one of the instructions the code started with, which stays where it is if the
+     * instruction is removed</p>
+     *
+     * @param index the index of the instruction when editing started, or the length of the code for its end
+     * @return the label
+     */
+    public Label getLabel(int index) {
+        check();
+        if (index < 0 || index > nodes.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nodes.length);
+        // Removed instructions already have theirs
+        return label(index);
+    }
+
+    /**
+     * <p>Inserts an instruction in front of a node</p>
+     * <p>A branch that is inserted goes nowhere until it is given a target with <code>setTarget</code></p>
+     *
+     * @param at          the instruction or label to insert in front of
+     * @param instruction the instruction to insert
+     * @return the node holding the inserted instruction
+     */
+    public InstructionNode insertBefore(Node at, Instruction instruction) {
+        check(at);
+        place(at);
+        InstructionNode n = new InstructionNode(instruction, -1);
+        link(at.previous, n);
+        size++;
+        return n;
+    }
+
+    /**
+     * <p>Inserts an instruction after a node</p>
+     *
+     * @param at          the instruction or label to insert after
+     * @param instruction the instruction to insert
+     * @return the node holding the inserted instruction
+     * @see #insertBefore(Node, Instruction)
+     */
+    public InstructionNode insertAfter(Node at, Instruction instruction) {
+        check(at);
+        InstructionNode n = new InstructionNode(instruction, -1);
+        link(at, n);
+        size++;
+        return n;
+    }
+
+    /**
+     * <p>Adds an instruction to the end of the code</p>
+     *
+     * @param instruction the instruction to add
+     * @return the node holding the added instruction
+     * @see #insertBefore(Node, Instruction)
+     */
+    public InstructionNode append(Instruction instruction) {
+        check();
+        InstructionNode n = new InstructionNode(instruction, -1);
+        link(last, n);
+        size++;
+        return n;
+    }
+
+    /**
+     * <p>Inserts a new label in front of a node, to branch to</p>
+     *
+     * @param at the instruction or label to insert in front of
+     * @return the new label
+     */
+    public Label insertLabelBefore(Node at) {
+        check(at);
+        place(at);
+        Label l = new Label();
+        link(at.previous, l);
+        return l;
+    }
+
+    /**
+     * <p>Inserts a new label after a node, to branch to</p>
+     *
+     * @param at the instruction or label to insert after
+     * @return the new label
+     */
+    public Label insertLabelAfter(Node at) {
+        check(at);
+        Label l = new Label();
+        link(at, l);
+        return l;
+    }
+
+    /**
+     * <p>Removes an instruction, labels around it stay where they are so anything that branched to it goes to
+     * whatever follows</p>
+     *
+     * @param node the instruction to remove
+     */
+    public void remove(InstructionNode node) {
+        check(node);
+        place(node);
+        if (node.previous == null)
+            first = node.next;
+        else
+            node.previous.next = node.next;
+        if (node.next == null)
+            last = node.previous;
+        else
+            node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        size--;
+    }
+
+    /**
+     * <p>Replaces an instruction, keeping where it branches to if the new instruction is a branch too</p>
+     * <p>Switch arms are kept for the keys the two have in common, any other key of the new switch has to be given a
+     * target</p>
+     *
+     * @param node        the instruction to replace
+     * @param instruction the instruction to replace it with
+     */
+    public void replace(InstructionNode node, Instruction instruction) {
+        check(node);
+        TreeMap<Integer, Label> old = node.targets;
+        node.instruction = instruction;
+        node.targets = null;
+        if (!(instruction instanceof BranchInstruction))
+            node.target = null;
+        else if (instruction instanceof Switch) {
+            node.targets = new TreeMap<>();
+            // Keys the old switch didn't have go in without a target, so apply() fails until they're given one
+            for (Integer key : ((Switch) instruction).match_pairs.keySet())
+                node.targets.put(key, old == null ? null : old.get(key));
+        }
+    }
+
+    /**
+     * <p>Sets where a branch goes, or the default of a switch</p>
+     *
+     * @param node   the branch
+     * @param target the label to branch to
+     */
+    public void setTarget(InstructionNode node, Label target) {
+        check(node);
+        if (!(node.instruction instanceof BranchInstruction))
+            throw new IllegalArgumentException(node + " doesn't branch");
+        node.target = target;
+    }
+
+    /**
+     * <p>Sets where an arm of a switch goes, adding the key if the switch doesn't have it</p>
+     *
+     * @param node   the switch
+     * @param key    the key of the arm
+     * @param target the label to branch to
+     */
+    public void setTarget(InstructionNode node, int key, Label target) {
+        check(node);
+        if (node.targets == null)
+            throw new IllegalArgumentException(node + " isn't a switch");
+        node.targets.put(key, target);
+    }
+
+    /**
+     * <p>Returns where a branch goes, or the default of a switch</p>
+     *
+     * @param node the branch
+     * @return the label it branches to, or null if it doesn't branch or hasn't been given a target
+     */
+    public Label getTarget(InstructionNode node) {
+        return node.target;
+    }
+
+    /**
+     * <p>Returns where an arm of a switch goes</p>
+     *
+     * @param node the switch
+     * @param key  the key of the arm
+     * @return the label it branches to, or null if there is no such arm
+     */
+    public Label getTarget(InstructionNode node, int key) {
+        return node.targets == null ? null : node.targets.get(key);
+    }
+
+    /**
+     * <p>Adds an entry to the end of the exception table</p>
+     *
+     * @param start      the label the range starts at
+     * @param end        the label the range ends at, the instructions before it are covered
+     * @param handler    the label of the handler
+     * @param catch_type the fully qualified name of the exception to catch, or null to catch everything
+     */
+    public void addHandler(Label start, Label end, Label handler, String catch_type) {
+        check(start);
+        check(end);
+        check(handler);
+        ExceptionTableEntry ete = new ExceptionTableEntry();
+        ete.catch_type = catch_type;
+        handlers.add(new Handler(ete, start, end, handler));
+    }
+
+    /**
+     * <p>Numbers the instructions and writes the code back to the method, along with the index of everything pointing
+     * at a label</p>
+     * <p>Exception table entries whose range no longer covers anything are dropped</p>
+     *
+     * @throws IllegalStateException if a branch or switch arm was never given a target
+     */
+    void apply() {
+        List<Instruction> code = method.code;
+        code.clear();
+        int[] moved = origins == null ? null : new int[size];
+        int index = 0;
+        for (Node n = first; n != null; n = n.next) {
+            if (n instanceof Label)
+                ((Label) n).index = index;
+            else {
+                InstructionNode in = (InstructionNode) n;
+                code.add(in.instruction);
+                if (moved != null)
+                    moved[index] = in.start_index == -1 ? -1 : origins[in.start_index];
+                index++;
+            }
+        }
+        method.track(moved);
+        for (Node n = first; n != null; n = n.next) {
+            if (!(n instanceof InstructionNode) || !(((InstructionNode) n).instruction instanceof BranchInstruction))
+                continue;
+            InstructionNode in = (InstructionNode) n;
+            BranchInstruction bi = (BranchInstruction) in.instruction;
+            if (in.target == null)
+                throw new IllegalStateException("No target was given for " + bi + " in " + method);
+            bi.branch_index = in.target.index;
+            if (bi instanceof Switch) {
+                Switch s = (Switch) bi;
+                s.match_pairs.clear();
+                for (Map.Entry<Integer, Label> e : in.targets.entrySet()) {
+                    if (e.getValue() == null)
+                        throw new IllegalStateException("No target was given for key " + e.getKey() + " of " + bi + " in " + method);
+                    s.match_pairs.put(e.getKey(), e.getValue().index);
+                }
+            }
+        }
+        method.exception_table.clear();
+        for (Handler h : handlers) {
+            if (h.start.index >= h.end.index)
+                continue;
+            h.entry.start_index = h.start.index;
+            h.entry.end_index = h.end.index;
+            h.entry.handler_index = h.handler.index;
+            method.exception_table.add(h.entry);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>CodePattern is a compiled sequence of instructions to search code for, like <code>java.util.regex.Pattern</code>
+ * for bytecode</p>
+ * <p>A pattern is a list of instructions separated by spaces, matched one instruction each, such as
+ * <code>"ALOAD IFNULL GETFIELD RETURN"</code>. Case doesn't matter. A name ending in '*' matches every instruction
+ * starting with it, so <code>"INVOKE*"</code> matches any invoke. A group of names separated by '|' in brackets
+ * matches any of them, as in <code>"ALOAD (IFNULL | IFNONNULL) (GETFIELD | GETSTATIC)"</code>, groups can be nested.
+ * Short and wide forms stand for the plain instruction, as that is what they are decoded to, so <code>ILOAD_0</code>
+ * and <code>ILOAD</code> are the same</p>
+ * <p>Parts of a pattern can be put in square brackets to mark them, <code>"ALOAD [GETFIELD] ARETURN"</code>, which is
+ * what <code>Method.findInstructions</code> returns of a match</p>
+ * <p>Compiling works out which opcodes each position accepts, matching then follows every partial match at once as
+ * bits of a word, so a scan is a single pass over the opcodes that finds overlapping matches and allocates nothing
+ * per instruction</p>
+ */
+public final class CodePattern {
+    // The names of the opcodes, lower case
+    private static final String[] NAMES = new String[256];
+
+    static {
+        for (Field f : Constants.class.getFields()) {
+            // Pool tags and array types share the class with the opcodes
+            if (f.getType() != int.class || !Modifier.isStatic(f.getModifiers()) || f.getName().startsWith("CONSTANT_") || f.getName().startsWith("T_"))
+                continue;
+            try {
+                NAMES[f.getInt(null)] = f.getName().toLowerCase();
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private final String pattern;
+    private final int length;
+    private final int words;
+    // For each opcode, the positions of the pattern that accept it as a bit set of words longs
+    private final long[] masks;
+    private final boolean[] marked;
+    private final boolean has_marks;
+
+    private CodePattern(String pattern, List<long[]> elements, List<Boolean> marks) {
+        this.pattern = pattern;
+        length = elements.size();
+        words = (length + 63) >>> 6;
+        masks = new long[256 * words];
+        marked = new boolean[length];
+        boolean has_marks = false;
+        for (int k = 0; k < length; k++) {
+            long[] set = elements.get(k);
+            for (int o = 0; o < 256; o++)
+                if ((set[o >>> 6] & (1L << o)) != 0)
+                    masks[o * words + (k >>> 6)] |= 1L << k;
+            marked[k] = marks.get(k);
+            has_marks |= marked[k];
+        }
+        this.has_marks = has_marks;
+    }
+
+    /**
+     * <p>Compiles a pattern</p>
+     *
+     * @param pattern the pattern
+     * @return the compiled pattern
+     * @throws PatternFormatException if the pattern is malformed or names an instruction that doesn't exist
+     */
+    public static CodePattern compile(String pattern) throws PatternFormatException {
+        return new Parser(pattern).parse();
+    }
+
+    /**
+     * <p>Returns the number of instructions a match spans</p>
+     *
+     * @return the length of the pattern in instructions
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * <p>Returns whether a position of the pattern was marked with square brackets</p>
+     *
+     * @param element the position in the pattern
+     * @return true if it was marked
+     */
+    public boolean isMarked(int element) {
+        return marked[element];
+    }
+
+    /**
+     * <p>Returns whether any position of the pattern was marked with square brackets</p>
+     *
+     * @return true if any were
+     */
+    public boolean hasMarks() {
+        return has_marks;
+    }
+
+    /**
+     * <p>Finds the first match that starts at or after the given index</p>
+     *
+     * @param code the code to search
+     * @param from the index to start searching at
+     * @return the index the match starts at, or -1 if there is none
+     */
+    public int find(List<Instruction> code, int from) {
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        for (int i = Math.max(from, 0), size = code.size(); i < size; i++) {
+            int o = code.get(i).getTag();
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o))
+                return i - length + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Finds every match, including those that overlap</p>
+     *
+     * @param code the code to search
+     * @return the index every match starts at, in order
+     */
+    public int[] findAll(List<Instruction> code) {
+        int[] found = new int[4];
+        int count = 0;
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        for (int i = 0, size = code.size(); i < size; i++) {
+            int o = code.get(i).getTag();
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o)) {
+                if (count == found.length)
+                    found = Arrays.copyOf(found, count * 2);
+                found[count++] = i - length + 1;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * <p>Finds the first match that starts at or after the given index, without decoding the code</p>
+     *
+     * @param code the code to search
+     * @param from the index to start searching at
+     * @return the index the match starts at, or -1 if there is none
+     */
+    public int find(CompactCode code, int from) {
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        for (int i = Math.max(from, 0), size = code.size(); i < size; i++) {
+            int o = code.getOpcode(i);
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o))
+                return i - length + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Finds every match, including those that overlap, without decoding the code</p>
+     *
+     * @param code the code to search
+     * @return the index every match starts at, in order
+     */
+    public int[] findAll(CompactCode code) {
+        int[] found = new int[4];
+        int count = 0;
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        for (int i = 0, size = code.size(); i < size; i++) {
+            int o = code.getOpcode(i);
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o)) {
+                if (count == found.length)
+                    found = Arrays.copyOf(found, count * 2);
+                found[count++] = i - length + 1;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * <p>Finds the next match straight from the bytes of the code, starting at the instruction after the one the
+     * scanner is on</p>
+     * <p>The scanner is left on the last instruction of the match, so its operands can be checked before searching
+     * on</p>
+     *
+     * @param code the scanner to search with
+     * @return the offset the match starts at, or -1 if there is none
+     * @throws IOException if the code can't be scanned
+     */
+    public int find(CodeScanner code) throws IOException {
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        // The offsets of the last length instructions, for where a match started
+        int[] offsets = new int[length];
+        for (int n = 0; code.next(); n++) {
+            int o = code.getOpcode();
+            offsets[n % length] = code.getOffset();
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o))
+                return offsets[(n + 1) % length];
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Finds every match straight from the bytes of the code, including those that overlap</p>
+     *
+     * @param code the scanner to search with, which is rewound first
+     * @return the offset every match starts at, in order
+     * @throws IOException if the code can't be scanned
+     */
+    public int[] findAll(CodeScanner code) throws IOException {
+        int[] found = new int[4];
+        int count = 0;
+        long[] state = words == 1 ? null : new long[words];
+        long d = 0;
+        final long last = 1L << (length - 1);
+        int[] offsets = new int[length];
+        code.rewind();
+        for (int n = 0; code.next(); n++) {
+            int o = code.getOpcode();
+            offsets[n % length] = code.getOffset();
+            if (state == null ? ((d = step(d, o)) & last) != 0 : step(state, o)) {
+                if (count == found.length)
+                    found = Arrays.copyOf(found, count * 2);
+                found[count++] = offsets[(n + 1) % length];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * <p>Returns whether the pattern matches the code at the given index</p>
+     *
+     * @param code  the code
+     * @param index the index the match would start at
+     * @return true if it matches there
+     */
+    public boolean matches(List<Instruction> code, int index) {
+        if (index < 0 || index + length > code.size())
+            return false;
+        for (int k = 0; k < length; k++)
+            if ((masks[code.get(index + k).getTag() * words + (k >>> 6)] & (1L << k)) == 0)
+                return false;
+        return true;
+    }
+
+    // Every partial match moves on a position and a new one starts, those the opcode doesn't fit are dropped
+    private long step(long d, int opcode) {
+        return ((d << 1) | 1) & masks[opcode * words];
+    }
+
+    // The same over several words, returning whether a match ended
+    private boolean step(long[] state, int opcode) {
+        final int base = opcode * words;
+        for (int w = words - 1; w > 0; w--)
+            state[w] = ((state[w] << 1) | (state[w - 1] >>> 63)) & masks[base + w];
+        state[0] = ((state[0] << 1) | 1) & masks[base];
+        return (state[(length - 1) >>> 6] & (1L << (length - 1))) != 0;
+    }
+
+    public String toString() {
+        return pattern;
+    }
+
+    private static final class Parser {
+        private final String pattern;
+        private int pos;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        CodePattern parse() throws PatternFormatException {
+            List<long[]> elements = new ArrayList<>();
+            List<Boolean> marks = new ArrayList<>();
+            boolean marking = false;
+            int mark_start = 0;
+            while (skipSpaces()) {
+                char c = pattern.charAt(pos);
+                if (c == '[') {
+                    if (marking)
+                        throw error("Unexpected '['");
+                    marking = true;
+                    mark_start = elements.size();
+                    pos++;
+                } else if (c == ']') {
+                    if (!marking || mark_start == elements.size())
+                        throw error("Unexpected ']'");
+                    marking = false;
+                    pos++;
+                } else if (c == '(') {
+                    pos++;
+                    elements.add(group());
+                    marks.add(marking);
+                } else {
+                    elements.add(name());
+                    marks.add(marking);
+                }
+            }
+            if (marking)
+                throw error("Expecting ']'");
+            if (elements.isEmpty())
+                throw new PatternFormatException("Empty pattern");
+            return new CodePattern(pattern, elements, marks);
+        }
+
+        // The opening bracket has been read
+        private long[] group() throws PatternFormatException {
+            long[] set = new long[4];
+            boolean empty = true;
+            boolean after_name = false;
+            while (true) {
+                if (!skipSpaces())
+                    throw error("Expecting ')'");
+                char c = pattern.charAt(pos);
+                if (c == ')') {
+                    if (empty)
+                        throw error("Unexpected ')'");
+                    pos++;
+                    return set;
+                } else if (c == '|') {
+                    if (empty)
+                        throw error("Unexpected '|'");
+                    empty = true;
+                    after_name = false;
+                    pos++;
+                } else if (c == '(') {
+                    pos++;
+                    or(set, group());
+                    empty = false;
+                    after_name = false;
+                } else {
+                    if (after_name)
+                        throw error("Expecting '|'");
+                    or(set, name());
+                    empty = false;
+                    after_name = true;
+                }
+            }
+        }
+
+        private long[] name() throws PatternFormatException {
+            int start = pos;
+            while (pos < pattern.length() && (Character.isLetterOrDigit(pattern.charAt(pos)) || pattern.charAt(pos) == '_'))
+                pos++;
+            boolean prefix = pos < pattern.length() && pattern.charAt(pos) == '*';
+            if (start == pos)
+                throw error("Unexpected '" + pattern.charAt(pos) + "'");
+            String name = pattern.substring(start, pos).toLowerCase();
+            if (prefix)
+                pos++;
+            long[] set = new long[4];
+            boolean found = false;
+            for (int o = 0; o < 256; o++) {
+                if (NAMES[o] == null || !(prefix ? NAMES[o].startsWith(name) : NAMES[o].equals(name)))
+                    continue;
+                int tag = CodeScanner.getTag(o);
+                if (tag != -1) {
+                    set[tag >>> 6] |= 1L << tag;
+                    found = true;
+                }
+            }
+            if (!found)
+                throw new PatternFormatException("Unknown instruction: '" + pattern.substring(start, pos) + "'");
+            return set;
+        }
+
+        private static void or(long[] set, long[] other) {
+            for (int i = 0; i < set.length; i++)
+                set[i] |= other[i];
+        }
+
+        private boolean skipSpaces() {
+            while (pos < pattern.length() && Character.isWhitespace(pattern.charAt(pos)))
+                pos++;
+            return pos < pattern.length();
+        }
+
+        private PatternFormatException error(String message) {
+            return new PatternFormatException(message + " at " + pos + " in \"" + pattern + "\"");
+        }
+    }
+}
\ No newline at end of file
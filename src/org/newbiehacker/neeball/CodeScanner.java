@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.Constant;
+import org.newbiehacker.neeball.pool.ConstantPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * <p>CodeScanner walks the raw code array of a method one instruction at a time, straight from the bytes of the class
+ * file, without decoding anything it isn't asked for</p>
+ * <p>Moving on is a lookup in a table of opcode lengths, only switches and <code>WIDE</code> need their operands read
+ * to be stepped over. Operands and the constants they refer to are read from the bytes when asked for, nothing is
+ * allocated per instruction</p>
+ * <p>Opcodes are given as the tag of the decoded instruction would be, as in <code>CompactCode</code></p>
+ *
+ * @see ClassVisitor#visitCode(CodeScanner)
+ */
+public final class CodeScanner {
+    // The length of each opcode with its operands, -1 for those whose length depends on the operands and 0 for unknown ones
+    static final byte[] LENGTHS = new byte[256];
+
+    static {
+        for (int o = Constants.NOP; o <= Constants.DCONST_1; o++)
+            LENGTHS[o] = 1;
+        LENGTHS[Constants.BIPUSH] = 2;
+        LENGTHS[Constants.SIPUSH] = 3;
+        LENGTHS[Constants.LDC] = 2;
+        LENGTHS[Constants.LDC_W] = 3;
+        LENGTHS[Constants.LDC2_W] = 3;
+        for (int o = Constants.ILOAD; o <= Constants.ALOAD; o++)
+            LENGTHS[o] = 2;
+        for (int o = Constants.ILOAD_0; o <= Constants.SALOAD; o++)
+            LENGTHS[o] = 1;
+        for (int o = Constants.ISTORE; o <= Constants.ASTORE; o++)
+            LENGTHS[o] = 2;
+        for (int o = Constants.ISTORE_0; o <= Constants.LXOR; o++)
+            LENGTHS[o] = 1;
+        LENGTHS[Constants.IINC] = 3;
+        for (int o = Constants.I2L; o <= Constants.DCMPG; o++)
+            LENGTHS[o] = 1;
+        for (int o = Constants.IFEQ; o <= Constants.JSR; o++)
+            LENGTHS[o] = 3;
+        LENGTHS[Constants.RET] = 2;
+        LENGTHS[Constants.TABLESWITCH] = -1;
+        LENGTHS[Constants.LOOKUPSWITCH] = -1;
+        for (int o = Constants.IRETURN; o <= Constants.RETURN; o++)
+            LENGTHS[o] = 1;
+        for (int o = Constants.GETSTATIC; o <= Constants.INVOKESTATIC; o++)
+            LENGTHS[o] = 3;
+        LENGTHS[Constants.INVOKEINTERFACE] = 5;
+        LENGTHS[Constants.INVOKEDYNAMIC] = 5;
+        LENGTHS[Constants.NEW] = 3;
+        LENGTHS[Constants.NEWARRAY] = 2;
+        LENGTHS[Constants.ANEWARRAY] = 3;
+        LENGTHS[Constants.ARRAYLENGTH] = 1;
+        LENGTHS[Constants.ATHROW] = 1;
+        LENGTHS[Constants.CHECKCAST] = 3;
+        LENGTHS[Constants.INSTANCEOF] = 3;
+        LENGTHS[Constants.MONITORENTER] = 1;
+        LENGTHS[Constants.MONITOREXIT] = 1;
+        LENGTHS[Constants.WIDE] = -1;
+        LENGTHS[Constants.MULTIANEWARRAY] = 4;
+        LENGTHS[Constants.IFNULL] = 3;
+        LENGTHS[Constants.IFNONNULL] = 3;
+        LENGTHS[Constants.GOTO_W] = 5;
+        LENGTHS[Constants.JSR_W] = 5;
+    }
+
+    private byte[] b;
+    private int start;
+    private int end;
+    private ConstantPool cp;
+    // Where the current instruction starts and the next one does, pos is -1 before the first call to next()
+    private int pos;
+    private int next;
+
+    CodeScanner() {
+    }
+
+    CodeScanner(byte[] b, int off, int len, ConstantPool cp) {
+        reset(b, off, len, cp);
+    }
+
+    /**
+     * <p>Points this scanner at a code array, before its first instruction</p>
+     */
+    void reset(byte[] b, int off, int len, ConstantPool cp) {
+        this.b = b;
+        this.start = off;
+        this.end = off + len;
+        this.cp = cp;
+        rewind();
+    }
+
+    /**
+     * <p>Goes back to before the first instruction, to scan the code again</p>
+     */
+    public void rewind() {
+        pos = -1;
+        next = start;
+    }
+
+    /**
+     * <p>Moves on to the next instruction</p>
+     *
+     * @return false if there are no more instructions
+     * @throws IOException if the opcode is unknown or the instruction runs past the end of the code
+     */
+    public boolean next() throws IOException {
+        if (next >= end) {
+            pos = end;
+            return false;
+        }
+        pos = next;
+        int o = b[pos] & 0xff;
+        int length = LENGTHS[o];
+        if (length == -1) {
+            if (o == Constants.WIDE) {
+                require(pos + 2);
+                length = (b[pos + 1] & 0xff) == Constants.IINC ? 6 : 4;
+            } else {
+                int p = align();
+                require(p + 12);
+                if (o == Constants.TABLESWITCH) {
+                    long n = (long) s4(p + 8) - s4(p + 4) + 1;
+                    if (n <= 0)
+                        throw new IOException("Invalid tableswitch range: " + s4(p + 4) + " to " + s4(p + 8));
+                    length = (int) Math.min(p + 12 + 4 * n - pos, Integer.MAX_VALUE);
+                } else {
+                    int n = s4(p + 4);
+                    if (n < 0)
+                        throw new IOException("Invalid lookupswitch size: " + n);
+                    length = (int) Math.min(p + 8 + 8L * n - pos, Integer.MAX_VALUE);
+                }
+            }
+        } else if (length == 0)
+            throw new IOException("Unknown Instruction: " + Integer.toHexString(o) + " at " + (pos - start));
+        require(pos + length);
+        next = pos + length;
+        return true;
+    }
+
+    private void require(int to) throws EOFException {
+        if (to > end || to < 0)
+            throw new EOFException("The instruction at " + (pos - start) + " runs past the end of the code");
+    }
+
+    // The position of the operands of a switch, past its padding
+    private int align() {
+        return pos + 1 + (3 - (pos - start) % 4);
+    }
+
+    private int u2(int p) {
+        return ((b[p] & 0xff) << 8) | (b[p + 1] & 0xff);
+    }
+
+    private int s4(int p) {
+        return (b[p] << 24) | ((b[p + 1] & 0xff) << 16) | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+    }
+
+    /**
+     * <p>Returns the offset of the current instruction into the code array</p>
+     *
+     * @return the offset of the instruction
+     */
+    public int getOffset() {
+        return pos - start;
+    }
+
+    public int getLength() {
+        return next - pos;
+    }
+
+    public int getCodeLength() {
+        return end - start;
+    }
+
+    public ConstantPool getConstantPool() {
+        return cp;
+    }
+
+    /**
+     * <p>Returns the opcode of the current instruction as it is in the code, <code>WIDE</code> for a widened one</p>
+     *
+     * @return the opcode
+     */
+    public int getRawOpcode() {
+        return b[pos] & 0xff;
+    }
+
+    /**
+     * <p>Returns the opcode of the current instruction, as <code>getTag()</code> of the decoded instruction would</p>
+     *
+     * @return the opcode, with short and wide forms folded into the plain one
+     */
+    public int getOpcode() {
+        int o = b[pos] & 0xff;
+        return o == Constants.WIDE ? b[pos + 1] & 0xff : getTag(o);
+    }
+
+    /**
+     * <p>Returns the local variable index of a load, store, <code>IINC</code> or <code>RET</code></p>
+     *
+     * @return the index of the local variable, -1 for any other instruction
+     */
+    public int getLocal() {
+        int o = b[pos] & 0xff;
+        if (o == Constants.WIDE)
+            return u2(pos + 2);
+        if (o >= Constants.ILOAD_0 && o <= Constants.ALOAD_3)
+            return (o - Constants.ILOAD_0) % 4;
+        if (o >= Constants.ISTORE_0 && o <= Constants.ASTORE_3)
+            return (o - Constants.ISTORE_0) % 4;
+        if ((o >= Constants.ILOAD && o <= Constants.ALOAD) || (o >= Constants.ISTORE && o <= Constants.ASTORE) || o == Constants.IINC || o == Constants.RET)
+            return b[pos + 1] & 0xff;
+        return -1;
+    }
+
+    /**
+     * <p>Returns the value of a <code>BIPUSH</code> or <code>SIPUSH</code>, the increment of an <code>IINC</code>, the
+     * type of a <code>NEWARRAY</code> or the dimensions of a <code>MULTIANEWARRAY</code></p>
+     *
+     * @return the operand, 0 for any other instruction
+     */
+    public int getValue() {
+        switch (b[pos] & 0xff) {
+            case Constants.BIPUSH:
+                return b[pos + 1];
+            case Constants.SIPUSH:
+                return (short) u2(pos + 1);
+            case Constants.IINC:
+                return b[pos + 2];
+            case Constants.NEWARRAY:
+                return b[pos + 1] & 0xff;
+            case Constants.MULTIANEWARRAY:
+                return b[pos + 3] & 0xff;
+            case Constants.WIDE:
+                return (b[pos + 1] & 0xff) == Constants.IINC ? (short) u2(pos + 4) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * <p>Returns the offset a branch goes to, or the default of a switch</p>
+     *
+     * @return the offset of the target in the code array, -1 for an instruction that doesn't branch
+     */
+    public int getBranchTarget() {
+        int o = b[pos] & 0xff;
+        if ((o >= Constants.IFEQ && o <= Constants.JSR) || o == Constants.IFNULL || o == Constants.IFNONNULL)
+            return pos - start + (short) u2(pos + 1);
+        if (o == Constants.GOTO_W || o == Constants.JSR_W)
+            return pos - start + s4(pos + 1);
+        if (o == Constants.TABLESWITCH || o == Constants.LOOKUPSWITCH)
+            return pos - start + s4(align());
+        return -1;
+    }
+
+    /**
+     * <p>Returns the number of keys of a switch, not counting the default</p>
+     *
+     * @return the number of keys, 0 for anything but a switch
+     */
+    public int getSwitchCount() {
+        int o = b[pos] & 0xff;
+        int p = align();
+        if (o == Constants.TABLESWITCH)
+            return s4(p + 8) - s4(p + 4) + 1;
+        if (o == Constants.LOOKUPSWITCH)
+            return s4(p + 4);
+        return 0;
+    }
+
+    /**
+     * <p>Returns a key of a switch, in ascending order</p>
+     *
+     * @param n which key, less than <code>getSwitchCount()</code>
+     * @return the key
+     */
+    public int getSwitchKey(int n) {
+        int p = align();
+        return (b[pos] & 0xff) == Constants.TABLESWITCH ? s4(p + 4) + n : s4(p + 8 + 8 * n);
+    }
+
+    /**
+     * <p>Returns the offset a key of a switch goes to</p>
+     *
+     * @param n which key, less than <code>getSwitchCount()</code>
+     * @return the offset of the target in the code array
+     */
+    public int getSwitchTarget(int n) {
+        int p = align();
+        return pos - start + ((b[pos] & 0xff) == Constants.TABLESWITCH ? s4(p + 12 + 4 * n) : s4(p + 12 + 8 * n));
+    }
+
+    /**
+     * <p>Returns the constant pool index the current instruction refers to</p>
+     *
+     * @return the index into the pool, 0 for an instruction that doesn't refer to the pool
+     */
+    public int getPoolIndex() {
+        int o = b[pos] & 0xff;
+        if (o == Constants.LDC)
+            return b[pos + 1] & 0xff;
+        if (o == Constants.LDC_W || o == Constants.LDC2_W || (o >= Constants.GETSTATIC && o <= Constants.INVOKEDYNAMIC)
+                || o == Constants.NEW || o == Constants.ANEWARRAY || o == Constants.CHECKCAST || o == Constants.INSTANCEOF
+                || o == Constants.MULTIANEWARRAY)
+            return u2(pos + 1);
+        return 0;
+    }
+
+    /**
+     * <p>Returns the constant the current instruction refers to, resolved from the pool of the class</p>
+     *
+     * @return the constant, null for an instruction that doesn't refer to the pool
+     */
+    public Constant getConstant() {
+        int i = getPoolIndex();
+        return i == 0 ? null : cp.get(i);
+    }
+
+    /**
+     * <p>Decodes the current instruction</p>
+     * <p>Branch targets aren't resolved to indices, <code>BranchInstruction.getBranchOffset()</code> gives the target
+     * relative to <code>getOffset()</code></p>
+     *
+     * @return the instruction
+     * @throws IOException if the instruction can't be decoded
+     */
+    public Instruction getInstruction() throws IOException {
+        ByteReader r = new ByteReader(b, start, end - start);
+        r.pos = pos;
+        Instruction i = Method.readInstruction(r, cp);
+        if (i == null)
+            throw new IOException("Unknown Instruction: " + Integer.toHexString(b[pos] & 0xff) + " at " + (pos - start));
+        return i;
+    }
+
+    /**
+     * <p>Returns the tag an opcode is decoded to, folding short and wide forms into the plain one</p>
+     *
+     * @param opcode the opcode
+     * @return the tag, or -1 for <code>WIDE</code>, which isn't an instruction of its own
+     */
+    static int getTag(int opcode) {
+        if (opcode >= Constants.ILOAD_0 && opcode <= Constants.ALOAD_3)
+            return Constants.ILOAD + (opcode - Constants.ILOAD_0) / 4;
+        if (opcode >= Constants.ISTORE_0 && opcode <= Constants.ASTORE_3)
+            return Constants.ISTORE + (opcode - Constants.ISTORE_0) / 4;
+        switch (opcode) {
+            case Constants.LDC_W:
+            case Constants.LDC2_W:
+                return Constants.LDC;
+            case Constants.GOTO_W:
+                return Constants.GOTO;
+            case Constants.JSR_W:
+                return Constants.JSR;
+            case Constants.WIDE:
+                return -1;
+            default:
+                return opcode;
+        }
+    }
+}
\ No newline at end of file
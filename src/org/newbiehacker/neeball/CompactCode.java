@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.Constant;
+import org.newbiehacker.neeball.pool.ConstantClass;
+import org.newbiehacker.neeball.pool.ConstantPool;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>CompactCode holds the code of a method as parallel arrays of ints, one slot per instruction, rather than as a
+ * list of <code>Instruction</code>s</p>
+ * <p>Nothing is allocated per instruction, reading it back is a matter of indexing arrays, an <code>Instruction</code>
+ * is only decoded when <code>getInstruction</code> asks for one. It is a read only view of the code as it was read,
+ * editing still goes through <code>Method.code</code></p>
+ * <p>Opcodes are given as the tag of the decoded instruction would be, so short and wide forms are folded into the
+ * plain one (<code>ILOAD_0</code> is <code>ILOAD</code> with an operand of 0, <code>GOTO_W</code> is
+ * <code>GOTO</code>, <code>LDC_W</code> and <code>LDC2_W</code> are <code>LDC</code>)</p>
+ *
+ * @see Method#getCompactCode()
+ */
+public final class CompactCode {
+    private final byte[] b;
+    private final int code_start;
+    private final int code_length;
+    private final ConstantPool cp;
+    private final int max_stack;
+    private final int max_locals;
+    private final int size;
+    // The offset of every instruction, followed by the length of the code
+    private final int[] offsets;
+    private final int[] opcodes;
+    // Local variable indices and immediate values, the first of the pairs of a switch
+    private final int[] operands;
+    // Instruction indices of branch targets and switch defaults, -1 for anything that doesn't branch
+    private final int[] targets;
+    // Constant pool indices, the increment of an IINC and the number of pairs of a switch
+    private final int[] constants;
+    // The keys of every switch and the instruction indices they go to, one after the other
+    private final int[] switch_keys;
+    private final int[] switch_targets;
+    // start, end, handler and catch type of each exception table entry, the first three as instruction indices
+    private final int[] exception_table;
+
+    /**
+     * <p>Reads the body of a Code attribute</p>
+     * <p>The attribute isn't copied, so the array mustn't change while this is in use</p>
+     *
+     * @param b   the array holding the attribute
+     * @param off the offset of the attribute, after its name and length
+     * @param len the length of the attribute
+     * @param cp  the constant pool the attribute refers to
+     * @throws IOException if the attribute is malformed
+     */
+    CompactCode(byte[] b, int off, int len, ConstantPool cp) throws IOException {
+        ByteReader r = new ByteReader(b, off, len);
+        max_stack = r.u2();
+        max_locals = r.u2();
+        code_length = r.s4();
+        r.require(code_length, "code");
+        this.b = b;
+        this.cp = cp;
+        code_start = r.pos;
+
+        // Count first, so every array is allocated once at its final size
+        CodeScanner scanner = new CodeScanner(b, code_start, code_length, cp);
+        int count = 0;
+        int pairs = 0;
+        while (scanner.next()) {
+            pairs += scanner.getSwitchCount();
+            count++;
+        }
+        size = count;
+        offsets = new int[count + 1];
+        opcodes = new int[count];
+        operands = new int[count];
+        targets = new int[count];
+        constants = new int[count];
+        switch_keys = new int[pairs];
+        switch_targets = new int[pairs];
+
+        // Branch targets are held as offsets until every instruction has one
+        ByteReader cr = new ByteReader(b, code_start, code_length);
+        pairs = 0;
+        for (int i = 0; i < count; i++) {
+            int at = cr.offset();
+            offsets[i] = at;
+            int o = cr.u1();
+            int opcode = o;
+            int target = -1;
+            switch (o) {
+                case Constants.BIPUSH:
+                case Constants.NEWARRAY:
+                    operands[i] = o == Constants.BIPUSH ? cr.s1() : cr.u1();
+                    break;
+                case Constants.SIPUSH:
+                    operands[i] = cr.s2();
+                    break;
+                case Constants.LDC:
+                    constants[i] = cr.u1();
+                    break;
+                case Constants.LDC_W:
+                case Constants.LDC2_W:
+                    opcode = Constants.LDC;
+                    constants[i] = cr.u2();
+                    break;
+                case Constants.ILOAD:
+                case Constants.LLOAD:
+                case Constants.FLOAD:
+                case Constants.DLOAD:
+                case Constants.ALOAD:
+                case Constants.ISTORE:
+                case Constants.LSTORE:
+                case Constants.FSTORE:
+                case Constants.DSTORE:
+                case Constants.ASTORE:
+                case Constants.RET:
+                    operands[i] = cr.u1();
+                    break;
+                case Constants.IINC:
+                    operands[i] = cr.u1();
+                    constants[i] = cr.s1();
+                    break;
+                case Constants.WIDE:
+                    opcode = cr.u1();
+                    operands[i] = cr.u2();
+                    if (opcode == Constants.IINC)
+                        constants[i] = cr.s2();
+                    else if (!(opcode >= Constants.ILOAD && opcode <= Constants.ALOAD) && !(opcode >= Constants.ISTORE && opcode <= Constants.ASTORE) && opcode != Constants.RET)
+                        throw new IOException("Unknown instruction after wide: " + Integer.toHexString(opcode));
+                    break;
+                case Constants.GOTO_W:
+                case Constants.JSR_W:
+                    opcode = o == Constants.GOTO_W ? Constants.GOTO : Constants.JSR;
+                    target = at + cr.s4();
+                    break;
+                case Constants.TABLESWITCH:
+                case Constants.LOOKUPSWITCH: {
+                    cr.align();
+                    target = at + cr.s4();
+                    int low = 0;
+                    int n;
+                    if (o == Constants.TABLESWITCH) {
+                        low = cr.s4();
+                        n = getPairCount(low, cr.s4());
+                    } else
+                        n = getPairCount(cr.s4());
+                    operands[i] = pairs;
+                    constants[i] = n;
+                    for (int p = 0; p < n; p++, pairs++) {
+                        switch_keys[pairs] = o == Constants.TABLESWITCH ? low + p : cr.s4();
+                        switch_targets[pairs] = at + cr.s4();
+                    }
+                    break;
+                }
+                case Constants.GETSTATIC:
+                case Constants.PUTSTATIC:
+                case Constants.GETFIELD:
+                case Constants.PUTFIELD:
+                case Constants.INVOKEVIRTUAL:
+                case Constants.INVOKESPECIAL:
+                case Constants.INVOKESTATIC:
+                case Constants.NEW:
+                case Constants.ANEWARRAY:
+                case Constants.CHECKCAST:
+                case Constants.INSTANCEOF:
+                    constants[i] = cr.u2();
+                    break;
+                case Constants.INVOKEINTERFACE:
+                    constants[i] = cr.u2();
+                    cr.u1(); // Parameter count
+                    cr.u1(); // Always 0
+                    break;
+                case Constants.INVOKEDYNAMIC:
+                    constants[i] = cr.u2();
+                    cr.u2(); // Always 0
+                    break;
+                case Constants.MULTIANEWARRAY:
+                    constants[i] = cr.u2();
+                    operands[i] = cr.u1();
+                    break;
+                default:
+                    if (o >= Constants.ILOAD_0 && o <= Constants.ALOAD_3) {
+                        opcode = Constants.ILOAD + (o - Constants.ILOAD_0) / 4;
+                        operands[i] = (o - Constants.ILOAD_0) % 4;
+                    } else if (o >= Constants.ISTORE_0 && o <= Constants.ASTORE_3) {
+                        opcode = Constants.ISTORE + (o - Constants.ISTORE_0) / 4;
+                        operands[i] = (o - Constants.ISTORE_0) % 4;
+                    } else if ((o >= Constants.IFEQ && o <= Constants.JSR) || o == Constants.IFNULL || o == Constants.IFNONNULL)
+                        target = at + cr.s2();
+                    else
+                        cr.pos += CodeScanner.LENGTHS[o] - 1;
+            }
+            opcodes[i] = opcode;
+            targets[i] = target;
+        }
+        offsets[count] = code_length;
+        for (int i = 0; i < count; i++)
+            if (targets[i] != -1)
+                targets[i] = getIndex(targets[i]);
+        for (int p = 0; p < pairs; p++)
+            switch_targets[p] = getIndex(switch_targets[p]);
+
+        r.pos += code_length;
+        int exception_table_length = r.u2();
+        r.require(8 * exception_table_length, "exception table");
+        exception_table = new int[4 * exception_table_length];
+        for (int i = 0; i < exception_table.length; i += 4) {
+            exception_table[i] = getIndex(r.u2());
+            exception_table[i + 1] = getIndex(r.u2());
+            exception_table[i + 2] = getIndex(r.u2());
+            exception_table[i + 3] = r.u2();
+        }
+    }
+
+    private static int getPairCount(int low, int high) throws IOException {
+        // A range this wide couldn't fit in any code array
+        if (high < low || (long) high - low >= 0xffff)
+            throw new IOException("Invalid tableswitch range: " + low + " to " + high);
+        return high - low + 1;
+    }
+
+    private static int getPairCount(int n) throws IOException {
+        if (n < 0 || n >= 0xffff)
+            throw new IOException("Invalid lookupswitch size: " + n);
+        return n;
+    }
+
+    private int getIndex(int offset) throws IOException {
+        int index = Arrays.binarySearch(offsets, offset);
+        if (index < 0)
+            throw new IOException("Offset " + offset + " isn't the start of an instruction");
+        return index;
+    }
+
+    /**
+     * <p>Returns the number of instructions</p>
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getMaxStack() {
+        return max_stack;
+    }
+
+    public int getMaxLocals() {
+        return max_locals;
+    }
+
+    /**
+     * <p>Returns the length of the code in bytes</p>
+     *
+     * @return the length of the code array
+     */
+    public int getCodeLength() {
+        return code_length;
+    }
+
+    /**
+     * <p>Returns the offset of an instruction into the code array</p>
+     *
+     * @param index the index of the instruction, or <code>size()</code> for the length of the code
+     * @return the offset of the instruction
+     */
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * <p>Returns the opcode of an instruction, as <code>getTag()</code> of the decoded instruction would</p>
+     *
+     * @param index the index of the instruction
+     * @return the opcode of the instruction
+     */
+    public int getOpcode(int index) {
+        return opcodes[index];
+    }
+
+    /**
+     * <p>Returns the local variable index of a load, store, <code>IINC</code> or <code>RET</code>, the value of a
+     * <code>BIPUSH</code> or <code>SIPUSH</code>, the type of a <code>NEWARRAY</code> or the dimensions of a
+     * <code>MULTIANEWARRAY</code></p>
+     *
+     * @param index the index of the instruction
+     * @return the operand, 0 for any other instruction
+     */
+    public int getOperand(int index) {
+        int o = opcodes[index];
+        return o == Constants.TABLESWITCH || o == Constants.LOOKUPSWITCH ? 0 : operands[index];
+    }
+
+    /**
+     * <p>Returns the amount an <code>IINC</code> adds to its local variable</p>
+     *
+     * @param index the index of the instruction
+     * @return the increment, 0 for any other instruction
+     */
+    public int getIncrement(int index) {
+        return opcodes[index] == Constants.IINC ? constants[index] : 0;
+    }
+
+    /**
+     * <p>Returns the index of the instruction a branch goes to, or the default of a switch</p>
+     *
+     * @param index the index of the instruction
+     * @return the index of the target, -1 for an instruction that doesn't branch
+     */
+    public int getTarget(int index) {
+        return targets[index];
+    }
+
+    /**
+     * <p>Returns the constant pool index an instruction refers to</p>
+     *
+     * @param index the index of the instruction
+     * @return the index into the pool, 0 for an instruction that doesn't refer to the pool
+     */
+    public int getPoolIndex(int index) {
+        int o = opcodes[index];
+        return o == Constants.IINC || o == Constants.TABLESWITCH || o == Constants.LOOKUPSWITCH ? 0 : constants[index];
+    }
+
+    /**
+     * <p>Returns the constant an instruction refers to</p>
+     *
+     * @param index the index of the instruction
+     * @return the constant, null for an instruction that doesn't refer to the pool
+     */
+    public Constant getConstant(int index) {
+        int i = getPoolIndex(index);
+        return i == 0 ? null : cp.get(i);
+    }
+
+    public ConstantPool getConstantPool() {
+        return cp;
+    }
+
+    /**
+     * <p>Returns the number of keys of a switch, not counting the default</p>
+     *
+     * @param index the index of the instruction
+     * @return the number of keys, 0 for anything but a switch
+     */
+    public int getSwitchCount(int index) {
+        int o = opcodes[index];
+        return o == Constants.TABLESWITCH || o == Constants.LOOKUPSWITCH ? constants[index] : 0;
+    }
+
+    /**
+     * <p>Returns a key of a switch, in ascending order</p>
+     *
+     * @param index the index of the instruction
+     * @param n     which key, less than <code>getSwitchCount(index)</code>
+     * @return the key
+     */
+    public int getSwitchKey(int index, int n) {
+        return switch_keys[operands[index] + n];
+    }
+
+    /**
+     * <p>Returns the index of the instruction a key of a switch goes to</p>
+     *
+     * @param index the index of the instruction
+     * @param n     which key, less than <code>getSwitchCount(index)</code>
+     * @return the index of the target
+     */
+    public int getSwitchTarget(int index, int n) {
+        return switch_targets[operands[index] + n];
+    }
+
+    public int getExceptionTableLength() {
+        return exception_table.length / 4;
+    }
+
+    /**
+     * <p>Returns the index of the first instruction an exception table entry covers</p>
+     */
+    public int getHandlerStart(int entry) {
+        return exception_table[4 * entry];
+    }
+
+    /**
+     * <p>Returns the index of the instruction after the last one an exception table entry covers</p>
+     */
+    public int getHandlerEnd(int entry) {
+        return exception_table[4 * entry + 1];
+    }
+
+    /**
+     * <p>Returns the index of the instruction an exception table entry jumps to</p>
+     */
+    public int getHandler(int entry) {
+        return exception_table[4 * entry + 2];
+    }
+
+    /**
+     * <p>Returns the fully qualified name of the exception an exception table entry catches</p>
+     *
+     * @return the name of the exception, or null if the entry catches everything
+     */
+    public String getCatchType(int entry) {
+        int i = exception_table[4 * entry + 3];
+        return i == 0 ? null : ((ConstantClass) cp.get(i)).value;
+    }
+
+    /**
+     * <p>Decodes an instruction, as it would appear in <code>Method.code</code></p>
+     * <p>A new instruction is made on every call, except for those that share an <code>INSTANCE</code></p>
+     *
+     * @param index the index of the instruction
+     * @return the instruction
+     * @throws IllegalStateException if the instruction can't be decoded
+     */
+    public Instruction getInstruction(int index) {
+        ByteReader r = new ByteReader(b, code_start, code_length);
+        r.pos = code_start + offsets[index];
+        Instruction i;
+        try {
+            i = Method.readInstruction(r, cp);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't decode instruction " + index, e);
+        }
+        if (i == null)
+            throw new IllegalStateException("Couldn't decode instruction " + index + ", unknown opcode " + Integer.toHexString(b[code_start + offsets[index]] & 0xff));
+        if (i instanceof BranchInstruction)
+            ((BranchInstruction) i).branch_index = targets[index];
+        if (i instanceof Switch) {
+            Switch s = (Switch) i;
+            for (int n = 0, p = operands[index]; n < constants[index]; n++, p++)
+                s.match_pairs.put(switch_keys[p], switch_targets[p]);
+        }
+        return i;
+    }
+
+    public String toString() {
+        return "CompactCode[" + size + " instructions, " + code_length + " bytes]";
+    }
+}
\ No newline at end of file
@@ -160,6 +160,7 @@ public final class Constants {
     public static final int IMUL = 0x68;
     public static final int INEG = 0x74;
     public static final int INSTANCEOF = 0xc1;
+    public static final int INVOKEDYNAMIC = 0xba;
     public static final int INVOKEINTERFACE = 0xb9;
     public static final int INVOKESPECIAL = 0xb7;
     public static final int INVOKESTATIC = 0xb8;
@@ -277,6 +278,30 @@ public final class Constants {
      * <p>The tag of a ConstantValue if it is of type <code>ConstantUtf8</code></p>
      */
     public static final int CONSTANT_Utf8 = 1;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantMethodHandle</code></p>
+     */
+    public static final int CONSTANT_MethodHandle = 15;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantMethodType</code></p>
+     */
+    public static final int CONSTANT_MethodType = 16;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantDynamic</code></p>
+     */
+    public static final int CONSTANT_Dynamic = 17;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantInvokeDynamic</code></p>
+     */
+    public static final int CONSTANT_InvokeDynamic = 18;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantModule</code></p>
+     */
+    public static final int CONSTANT_Module = 19;
+    /**
+     * <p>The tag of a ConstantValue if it is of type <code>ConstantPackage</code></p>
+     */
+    public static final int CONSTANT_Package = 20;
 
     /**
      * <p>Used in <code>NEWARRAY</code> to specify that the array is of type <code>boolean</code></p>
@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class D2F extends Instruction {
+    public static final D2F INSTANCE = new D2F();
+
+    public D2F() {
+        this.tag = Constants.D2F;
+    }
+
     public String toString() {
         return "d2f";
     }
+
+    public int getStackChange() {
+        return -1;
+    }
 }
\ No newline at end of file
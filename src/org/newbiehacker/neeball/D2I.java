@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class D2I extends Instruction {
+    public static final D2I INSTANCE = new D2I();
+
+    public D2I() {
+        this.tag = Constants.D2I;
+    }
+
     public String toString() {
         return "d2i";
     }
+
+    public int getStackChange() {
+        return -1;
+    }
 }
\ No newline at end of file
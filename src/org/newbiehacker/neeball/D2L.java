@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class D2L extends Instruction {
+    public static final D2L INSTANCE = new D2L();
+
+    public D2L() {
+        this.tag = Constants.D2L;
+    }
+
     public String toString() {
         return "d2l";
     }
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DADD extends Instruction {
+    public static final DADD INSTANCE = new DADD();
+
+    public DADD() {
+        this.tag = Constants.DADD;
+    }
+
     public String toString() {
         return "dadd";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DALOAD extends Instruction {
+    public static final DALOAD INSTANCE = new DALOAD();
+
+    public DALOAD() {
+        this.tag = Constants.DALOAD;
+    }
+
     public String toString() {
         return "daload";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DASTORE extends Instruction {
+    public static final DASTORE INSTANCE = new DASTORE();
+
+    public DASTORE() {
+        this.tag = Constants.DASTORE;
+    }
+
     public String toString() {
         return "dastore";
     }
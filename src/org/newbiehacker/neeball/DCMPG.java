@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DCMPG extends Instruction {
+    public static final DCMPG INSTANCE = new DCMPG();
+
+    public DCMPG() {
+        this.tag = Constants.DCMPG;
+    }
+
     public String toString() {
         return "dcmpg";
     }
 
     public int getStackChange() {
-        return -1;
+        return -3;
     }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DCMPL extends Instruction {
+    public static final DCMPL INSTANCE = new DCMPL();
+
+    public DCMPL() {
+        this.tag = Constants.DCMPL;
+    }
+
     public String toString() {
         return "dcmpl";
     }
 
     public int getStackChange() {
-        return -1;
+        return -3;
     }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DCONST_0 extends Instruction {
+    public static final DCONST_0 INSTANCE = new DCONST_0();
+
+    public DCONST_0() {
+        this.tag = Constants.DCONST_0;
+    }
+
     public String toString() {
         return "dconst_0";
     }
 
     public int getStackChange() {
-        return 1;
+        return 2;
     }
 }
\ No newline at end of file
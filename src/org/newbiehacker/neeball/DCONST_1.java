@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DCONST_1 extends Instruction {
+    public static final DCONST_1 INSTANCE = new DCONST_1();
+
+    public DCONST_1() {
+        this.tag = Constants.DCONST_1;
+    }
+
     public String toString() {
         return "dconst_1";
     }
 
     public int getStackChange() {
-        return 1;
+        return 2;
     }
 }
\ No newline at end of file
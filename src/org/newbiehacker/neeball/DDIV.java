@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DDIV extends Instruction {
+    public static final DDIV INSTANCE = new DDIV();
+
+    public DDIV() {
+        this.tag = Constants.DDIV;
+    }
+
     public String toString() {
         return "ddiv";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -35,13 +35,19 @@ public final class DLOAD extends LoadInstruction {
      */
     public DLOAD(int index) {
         super(index);
+        this.tag = Constants.DLOAD;
     }
 
     DLOAD(int index, boolean wide) {
         super(index, wide);
+        this.tag = Constants.DLOAD;
     }
 
     public String toString() {
         return "dload " + this.index;
     }
+
+    public int getStackChange() {
+        return 2;
+    }
 }
\ No newline at end of file
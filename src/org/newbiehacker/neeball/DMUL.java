@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DMUL extends Instruction {
+    public static final DMUL INSTANCE = new DMUL();
+
+    public DMUL() {
+        this.tag = Constants.DMUL;
+    }
+
     public String toString() {
         return "dmul";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
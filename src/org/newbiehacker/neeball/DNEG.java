@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DNEG extends Instruction {
+    public static final DNEG INSTANCE = new DNEG();
+
+    public DNEG() {
+        this.tag = Constants.DNEG;
+    }
+
     public String toString() {
         return "dneg";
     }
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DREM extends Instruction {
+    public static final DREM INSTANCE = new DREM();
+
+    public DREM() {
+        this.tag = Constants.DREM;
+    }
+
     public String toString() {
         return "drem";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DRETURN extends Instruction implements TerminatingInstruction {
+    public static final DRETURN INSTANCE = new DRETURN();
+
+    public DRETURN() {
+        this.tag = Constants.DRETURN;
+    }
+
     public String toString() {
         return "dreturn";
     }
@@ -35,13 +35,19 @@ public final class DSTORE extends StoreInstruction {
      */
     public DSTORE(int index) {
         super(index);
+        this.tag = Constants.DSTORE;
     }
 
     DSTORE(int index, boolean wide) {
         super(index, wide);
+        this.tag = Constants.DSTORE;
     }
 
     public String toString() {
         return "dstore " + this.index;
     }
+
+    public int getStackChange() {
+        return -2;
+    }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class DSUB extends Instruction {
+    public static final DSUB INSTANCE = new DSUB();
+
+    public DSUB() {
+        this.tag = Constants.DSUB;
+    }
+
     public String toString() {
         return "dsub";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DUP extends Instruction {
+    public static final DUP INSTANCE = new DUP();
+
+    public DUP() {
+        this.tag = Constants.DUP;
+    }
+
     public String toString() {
         return "dup";
     }
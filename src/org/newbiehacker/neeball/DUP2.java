@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DUP2 extends Instruction {
+    public static final DUP2 INSTANCE = new DUP2();
+
+    public DUP2() {
+        this.tag = Constants.DUP2;
+    }
+
     public String toString() {
         return "dup2";
     }
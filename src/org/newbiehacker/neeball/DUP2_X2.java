@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DUP2_X2 extends Instruction {
+    public static final DUP2_X2 INSTANCE = new DUP2_X2();
+
+    public DUP2_X2() {
+        this.tag = Constants.DUP2_X2;
+    }
+
     public String toString() {
         return "dup2_x2";
     }
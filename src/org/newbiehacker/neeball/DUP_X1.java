@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DUP_X1 extends Instruction {
+    public static final DUP_X1 INSTANCE = new DUP_X1();
+
+    public DUP_X1() {
+        this.tag = Constants.DUP_X1;
+    }
+
     public String toString() {
         return "dup_x1";
     }
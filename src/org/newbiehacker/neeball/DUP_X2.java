@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class DUP_X2 extends Instruction {
+    public static final DUP_X2 INSTANCE = new DUP_X2();
+
+    public DUP_X2() {
+        this.tag = Constants.DUP_X2;
+    }
+
     public String toString() {
         return "dup_x2";
     }
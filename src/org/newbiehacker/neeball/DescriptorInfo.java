@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.util.ArrayList;
+
+/**
+ * <p>A parsed method descriptor, immutable so it can be shared between threads through <code>Util.getDescriptorInfo</code></p>
+ */
+final class DescriptorInfo {
+    final String descriptor;
+    /**
+     * <p>The local variable slots the arguments take, not counting <code>this</code></p>
+     */
+    final int param_slots;
+    /**
+     * <p>The stack slots the return value takes, 0 for void</p>
+     */
+    final int return_slots;
+    /**
+     * <p>The descriptor of each argument</p>
+     */
+    final String[] argument_types;
+    final String return_type;
+
+    DescriptorInfo(String descriptor) {
+        this.descriptor = descriptor;
+        int close = descriptor.indexOf(')');
+        if (!descriptor.startsWith("(") || close < 0 || close == descriptor.length() - 1)
+            throw new IllegalArgumentException("Invalid method descriptor: " + descriptor);
+        ArrayList<String> types = new ArrayList<>();
+        int slots = 0;
+        int i = 1;
+        while (i < close) {
+            int start = i;
+            while (descriptor.charAt(i) == '[')
+                i++;
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+                if (i < 0 || i > close)
+                    throw new IllegalArgumentException("Invalid method descriptor: " + descriptor);
+            }
+            String type = descriptor.substring(start, ++i);
+            slots += getSlots(type, descriptor);
+            types.add(type);
+        }
+        param_slots = slots;
+        argument_types = types.toArray(new String[types.size()]);
+        return_type = descriptor.substring(close + 1);
+        return_slots = return_type.equals("V") ? 0 : getSlots(return_type, descriptor);
+    }
+
+    private static int getSlots(String type, String descriptor) {
+        switch (type.charAt(0)) {
+            case 'J':
+            case 'D':
+                return 2;
+            case 'B':
+            case 'C':
+            case 'F':
+            case 'I':
+            case 'S':
+            case 'Z':
+            case 'L':
+            case '[':
+                return 1;
+            default:
+                throw new IllegalArgumentException("Invalid method descriptor: " + descriptor);
+        }
+    }
+}
\ No newline at end of file
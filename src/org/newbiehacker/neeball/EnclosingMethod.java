@@ -52,11 +52,4 @@ public final class EnclosingMethod {
     public String toString() {
         return "EnclosingMethod [class_name=" + class_name + ", name=" + name + ", descriptor=" + descriptor + "]";
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        class_name = null;
-        name = null;
-        descriptor = null;
-    }
 }
\ No newline at end of file
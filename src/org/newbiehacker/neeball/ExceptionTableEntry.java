@@ -77,9 +77,4 @@ public final class ExceptionTableEntry {
     public String toString() {
         return "ExceptionTableEntry [start_index=" + start_index + ", end_index=" + end_index + ", handler_index=" + handler_index + ", catch=" + catch_type + "]";
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        catch_type = null;
-    }
 }
\ No newline at end of file
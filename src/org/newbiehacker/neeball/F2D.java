@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class F2D extends Instruction {
+    public static final F2D INSTANCE = new F2D();
+
+    public F2D() {
+        this.tag = Constants.F2D;
+    }
+
     public String toString() {
         return "f2d";
     }
+
+    public int getStackChange() {
+        return 1;
+    }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class F2I extends Instruction {
+    public static final F2I INSTANCE = new F2I();
+
+    public F2I() {
+        this.tag = Constants.F2I;
+    }
+
     public String toString() {
         return "f2i";
     }
@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class F2L extends Instruction {
+    public static final F2L INSTANCE = new F2L();
+
+    public F2L() {
+        this.tag = Constants.F2L;
+    }
+
     public String toString() {
         return "f2l";
     }
+
+    public int getStackChange() {
+        return 1;
+    }
 }
\ No newline at end of file
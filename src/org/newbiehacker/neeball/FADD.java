@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FADD extends Instruction {
+    public static final FADD INSTANCE = new FADD();
+
+    public FADD() {
+        this.tag = Constants.FADD;
+    }
+
     public String toString() {
         return "fadd";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FALOAD extends Instruction {
+    public static final FALOAD INSTANCE = new FALOAD();
+
+    public FALOAD() {
+        this.tag = Constants.FALOAD;
+    }
+
     public String toString() {
         return "faload";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FASTORE extends Instruction {
+    public static final FASTORE INSTANCE = new FASTORE();
+
+    public FASTORE() {
+        this.tag = Constants.FASTORE;
+    }
+
     public String toString() {
         return "fastore";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FCMPG extends Instruction {
+    public static final FCMPG INSTANCE = new FCMPG();
+
+    public FCMPG() {
+        this.tag = Constants.FCMPG;
+    }
+
     public String toString() {
         return "fcmpg";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FCMPL extends Instruction {
+    public static final FCMPL INSTANCE = new FCMPL();
+
+    public FCMPL() {
+        this.tag = Constants.FCMPL;
+    }
+
     public String toString() {
         return "fcmpl";
     }
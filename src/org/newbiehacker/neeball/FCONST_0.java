@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FCONST_0 extends Instruction {
+    public static final FCONST_0 INSTANCE = new FCONST_0();
+
+    public FCONST_0() {
+        this.tag = Constants.FCONST_0;
+    }
+
     public String toString() {
         return "fconst_0";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FCONST_1 extends Instruction {
+    public static final FCONST_1 INSTANCE = new FCONST_1();
+
+    public FCONST_1() {
+        this.tag = Constants.FCONST_1;
+    }
+
     public String toString() {
         return "fconst_1";
     }
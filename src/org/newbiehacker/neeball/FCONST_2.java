@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FCONST_2 extends Instruction {
+    public static final FCONST_2 INSTANCE = new FCONST_2();
+
+    public FCONST_2() {
+        this.tag = Constants.FCONST_2;
+    }
+
     public String toString() {
         return "fconst_2";
     }
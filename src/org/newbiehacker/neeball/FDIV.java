@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FDIV extends Instruction {
+    public static final FDIV INSTANCE = new FDIV();
+
+    public FDIV() {
+        this.tag = Constants.FDIV;
+    }
+
     public String toString() {
         return "fdiv";
     }
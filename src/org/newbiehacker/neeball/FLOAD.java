@@ -35,10 +35,12 @@ public final class FLOAD extends LoadInstruction {
      */
     public FLOAD(int index) {
         super(index);
+        this.tag = Constants.FLOAD;
     }
 
     FLOAD(int index, boolean wide) {
         super(index, wide);
+        this.tag = Constants.FLOAD;
     }
 
     public String toString() {
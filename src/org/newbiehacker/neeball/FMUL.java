@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FMUL extends Instruction {
+    public static final FMUL INSTANCE = new FMUL();
+
+    public FMUL() {
+        this.tag = Constants.FMUL;
+    }
+
     public String toString() {
         return "fmul";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FNEG extends Instruction {
+    public static final FNEG INSTANCE = new FNEG();
+
+    public FNEG() {
+        this.tag = Constants.FNEG;
+    }
+
     public String toString() {
         return "fneg";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FREM extends Instruction {
+    public static final FREM INSTANCE = new FREM();
+
+    public FREM() {
+        this.tag = Constants.FREM;
+    }
+
     public String toString() {
         return "frem";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FRETURN extends Instruction implements TerminatingInstruction {
+    public static final FRETURN INSTANCE = new FRETURN();
+
+    public FRETURN() {
+        this.tag = Constants.FRETURN;
+    }
+
     public String toString() {
         return "freturn";
     }
@@ -35,10 +35,12 @@ public final class FSTORE extends StoreInstruction {
      */
     public FSTORE(int index) {
         super(index);
+        this.tag = Constants.FSTORE;
     }
 
     FSTORE(int index, boolean wide) {
         super(index, wide);
+        this.tag = Constants.FSTORE;
     }
 
     public String toString() {
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class FSUB extends Instruction {
+    public static final FSUB INSTANCE = new FSUB();
+
+    public FSUB() {
+        this.tag = Constants.FSUB;
+    }
+
     public String toString() {
         return "fsub";
     }
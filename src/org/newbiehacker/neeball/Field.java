@@ -29,6 +29,8 @@ package org.newbiehacker.neeball;
 
 import org.newbiehacker.neeball.pool.Constant;
 
+import java.util.List;
+
 /**
  * Copyright 2006 James Lawrence
  * Date: 10-Feb-2007
@@ -144,6 +146,11 @@ public final class Field implements Comparable {
     public Constant constantvalue;
     int constantvalue_index;
 
+    /**
+     * <p>The attributes of this field that aren't flattened into it, as they were read (or null if none)</p>
+     */
+    public List<Attribute> attributes;
+
     /**
      * <p>Constructs a new <code>Field</code> with every possible field set</p>
      *
@@ -221,12 +228,4 @@ public final class Field implements Comparable {
     public String toString() {
         return Util.getFriendlyDescriptorString(descriptor) + " " + name;
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        name = null;
-        descriptor = null;
-        signature = null;
-        constantvalue = null;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,848 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * <p>Works out the types in the locals and on the stack wherever the code needs a stack map frame, and encodes them
+ * as the body of a StackMapTable attribute</p>
+ * <p>Types are held as descriptors, "I", "F", "J" and "D" for primitives (longs and doubles followed by a top), "t"
+ * for top, "n" for null, "u" for the uninitialized <code>this</code> of a constructor and "u" followed by the index
+ * of the <code>NEW</code> for other uninitialized objects.</p>
+ */
+final class FrameComputer {
+    private static final String TOP = "t";
+    private static final String NULL = "n";
+    private static final String UNINITIALIZED_THIS = "u";
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private final Method m;
+    private final String this_class;
+    private final ClassHierarchy hierarchy;
+    private final List<Instruction> code;
+    private final int size;
+    // The state before each frame point and the first instruction, null until it's reached
+    private final String[][] locals_at;
+    private final String[][] stack_at;
+    private final BitSet frame_points;
+    private final BitSet work;
+    private final String[] locals;
+    private final String[] stack;
+    private int sp;
+
+    FrameComputer(Method m, String this_class, ClassHierarchy hierarchy) throws EncodingException {
+        this.m = m;
+        this.this_class = this_class;
+        this.hierarchy = hierarchy;
+        code = m.code;
+        size = code.size();
+        locals_at = new String[size][];
+        stack_at = new String[size][];
+        frame_points = new BitSet(size);
+        work = new BitSet(size);
+        locals = new String[m.getMaxLocals()];
+        stack = new String[m.getMaxStack()];
+    }
+
+    /**
+     * <p>Computes the frames of the code as it's laid out</p>
+     *
+     * @param offsets the offset of every instruction, as returned by <code>Method.resetOffsets()</code>
+     * @param cpo     the constant pool being written, classes the frames name are added to it
+     * @return the body of the StackMapTable attribute, or null if the code needs no frames
+     * @throws EncodingException if the code uses subroutines, has unreachable code or can't be typed
+     */
+    byte[] compute(int[] offsets, ConstantPool cpo) throws EncodingException {
+        if (size == 0)
+            return null;
+        findFramePoints();
+        if (frame_points.isEmpty())
+            return null;
+        String[] initial = getInitialLocals();
+        locals_at[0] = initial;
+        stack_at[0] = new String[0];
+        work.set(0);
+        for (int start = work.nextSetBit(0); start >= 0; start = work.nextSetBit(0)) {
+            work.clear(start);
+            run(start);
+        }
+
+        ByteWriter w = new ByteWriter(16 + frame_points.cardinality() * 8);
+        w.u2(frame_points.cardinality());
+        String[] previous = compact(initial, initial.length);
+        int previous_offset = -1;
+        for (int pc = frame_points.nextSetBit(0); pc >= 0; pc = frame_points.nextSetBit(pc + 1)) {
+            if (locals_at[pc] == null)
+                throw new EncodingException("Unreachable code at " + pc + " in " + m);
+            String[] frame_locals = compact(locals_at[pc], locals_at[pc].length);
+            String[] frame_stack = compact(stack_at[pc], stack_at[pc].length);
+            writeFrame(w, offsets[pc] - previous_offset - 1, previous, frame_locals, frame_stack, offsets, cpo);
+            previous = frame_locals;
+            previous_offset = offsets[pc];
+        }
+        return w.toByteArray();
+    }
+
+    private void findFramePoints() throws EncodingException {
+        Instruction i;
+        for (int pc = 0; pc < size; pc++) {
+            i = code.get(pc);
+            if (i instanceof JSR || i instanceof RET)
+                throw new EncodingException("Subroutines can't be given stack map frames, in " + m);
+            if (i instanceof BranchInstruction) {
+                setFramePoint(((BranchInstruction) i).branch_index);
+                if (i instanceof Switch)
+                    for (int target : ((Switch) i).match_pairs.values())
+                        setFramePoint(target);
+            }
+            // Whatever follows an unconditional jump can only be reached by jumping to it
+            if ((i instanceof GOTO || i instanceof Switch || i instanceof TerminatingInstruction) && pc + 1 < size)
+                frame_points.set(pc + 1);
+        }
+        for (ExceptionTableEntry ete : m.exception_table)
+            setFramePoint(ete.handler_index);
+    }
+
+    private void setFramePoint(int target) throws EncodingException {
+        if (target < 0 || target >= size)
+            throw new EncodingException("Branch target out of range: " + target);
+        frame_points.set(target);
+    }
+
+    private String[] getInitialLocals() {
+        String[] initial = new String[locals.length];
+        Arrays.fill(initial, TOP);
+        int index = 0;
+        if (!m.is_static) {
+            if (m.name.equals("<init>") && !this_class.equals("java/lang/Object"))
+                initial[index++] = UNINITIALIZED_THIS;
+            else
+                initial[index++] = "L" + this_class + ";";
+        }
+        for (String type : Util.getDescriptorInfo(m.descriptor).argument_types) {
+            initial[index++] = getType(type);
+            if (type.equals("J") || type.equals("D"))
+                index++;
+        }
+        return initial;
+    }
+
+    /**
+     * <p>Runs a block from a frame point until it leaves the code or falls into the next frame point</p>
+     */
+    private void run(int pc) throws EncodingException {
+        System.arraycopy(locals_at[pc], 0, locals, 0, locals.length);
+        sp = stack_at[pc].length;
+        System.arraycopy(stack_at[pc], 0, stack, 0, sp);
+        Instruction i;
+        while (true) {
+            i = code.get(pc);
+            mergeHandlers(pc);
+            execute(pc, i);
+            if (i instanceof StoreInstruction)
+                mergeHandlers(pc);
+            if (i instanceof TerminatingInstruction)
+                return;
+            if (i instanceof BranchInstruction) {
+                merge(((BranchInstruction) i).branch_index);
+                if (i instanceof Switch) {
+                    for (int target : ((Switch) i).match_pairs.values())
+                        merge(target);
+                    return;
+                }
+                if (i instanceof GOTO)
+                    return;
+            }
+            if (++pc == size)
+                throw new EncodingException("Code falls off the end after " + i + " in " + m);
+            if (frame_points.get(pc)) {
+                merge(pc);
+                return;
+            }
+        }
+    }
+
+    private void mergeHandlers(int pc) throws EncodingException {
+        for (ExceptionTableEntry ete : m.exception_table) {
+            if (pc < ete.start_index || pc >= ete.end_index)
+                continue;
+            // Handlers start with only the exception on the stack, max_stack always leaves room for it
+            int saved = sp;
+            String top = stack[0];
+            stack[0] = ete.catch_type == null ? "Ljava/lang/Throwable;" : "L" + ete.catch_type + ";";
+            sp = 1;
+            merge(ete.handler_index);
+            stack[0] = top;
+            sp = saved;
+        }
+    }
+
+    private void merge(int target) throws EncodingException {
+        if (locals_at[target] == null) {
+            locals_at[target] = locals.clone();
+            stack_at[target] = Arrays.copyOf(stack, sp);
+            work.set(target);
+            return;
+        }
+        String[] target_locals = locals_at[target];
+        String[] target_stack = stack_at[target];
+        if (target_stack.length != sp)
+            throw new EncodingException("Inconsistent stack height at " + target + " in " + m + ": " + target_stack.length + " and " + sp);
+        boolean changed = false;
+        String type;
+        for (int i = 0; i < target_locals.length; i++) {
+            type = merge(target_locals[i], locals[i]);
+            if (!type.equals(target_locals[i])) {
+                target_locals[i] = type;
+                changed = true;
+            }
+        }
+        for (int i = 0; i < sp; i++) {
+            type = merge(target_stack[i], stack[i]);
+            if (!type.equals(target_stack[i])) {
+                if (type.equals(TOP))
+                    throw new EncodingException("Inconsistent types on the stack at " + target + " in " + m + ": " + target_stack[i] + " and " + stack[i]);
+                target_stack[i] = type;
+                changed = true;
+            }
+        }
+        if (changed)
+            work.set(target);
+    }
+
+    private String merge(String a, String b) {
+        if (a.equals(b))
+            return a;
+        if (!isReference(a) || !isReference(b))
+            return TOP;
+        if (a.equals(NULL))
+            return b;
+        if (b.equals(NULL))
+            return a;
+        if (a.charAt(0) == '[' || b.charAt(0) == '[') {
+            if (a.charAt(0) != b.charAt(0))
+                return OBJECT;
+            String component = merge(a.substring(1), b.substring(1));
+            return isReference(component) ? "[" + component : OBJECT;
+        }
+        return "L" + getCommonSuperClass(a.substring(1, a.length() - 1), b.substring(1, b.length() - 1)) + ";";
+    }
+
+    private static boolean isReference(String type) {
+        return type.equals(NULL) || type.charAt(0) == 'L' || type.charAt(0) == '[';
+    }
+
+    private String getCommonSuperClass(String a, String b) {
+        // The verifier treats interfaces as Object
+        if (hierarchy.isInterface(a) || hierarchy.isInterface(b))
+            return "java/lang/Object";
+        HashSet<String> supers = new HashSet<>();
+        for (String c = a; c != null; c = hierarchy.getSuperClass(c))
+            supers.add(c);
+        for (String c = b; c != null; c = hierarchy.getSuperClass(c))
+            if (supers.contains(c))
+                return c;
+        return "java/lang/Object";
+    }
+
+    private void push(String type) {
+        stack[sp++] = type;
+        if (type.equals("J") || type.equals("D"))
+            stack[sp++] = TOP;
+    }
+
+    private String pop() throws EncodingException {
+        if (sp == 0)
+            throw new EncodingException("Stack underflow in " + m);
+        return stack[--sp];
+    }
+
+    private void pop(int slots) throws EncodingException {
+        if (sp < slots)
+            throw new EncodingException("Stack underflow in " + m);
+        sp -= slots;
+    }
+
+    private void store(int index, String type) throws EncodingException {
+        if (index >= locals.length || ((type.equals("J") || type.equals("D")) && index + 1 >= locals.length))
+            throw new EncodingException("Local variable " + index + " out of range in " + m);
+        // Overwriting the second half of a long or double leaves the first half unusable
+        if (index > 0 && (locals[index - 1].equals("J") || locals[index - 1].equals("D")))
+            locals[index - 1] = TOP;
+        locals[index] = type;
+        if (type.equals("J") || type.equals("D"))
+            locals[index + 1] = TOP;
+    }
+
+    /**
+     * <p>Replaces an uninitialized type with the type it becomes once its constructor has been called</p>
+     */
+    private void initialize(String uninitialized) {
+        String type;
+        if (uninitialized.equals(UNINITIALIZED_THIS))
+            type = "L" + this_class + ";";
+        else
+            type = getClassType(((NEW) code.get(Integer.parseInt(uninitialized.substring(1)))).type);
+        for (int i = 0; i < locals.length; i++)
+            if (locals[i].equals(uninitialized))
+                locals[i] = type;
+        for (int i = 0; i < sp; i++)
+            if (stack[i].equals(uninitialized))
+                stack[i] = type;
+    }
+
+    private void execute(int pc, Instruction i) throws EncodingException {
+        if (i instanceof LoadInstruction) {
+            int index = ((LoadInstruction) i).index;
+            if (index >= locals.length)
+                throw new EncodingException("Local variable " + index + " out of range in " + m);
+            switch (i.getTag()) {
+                case Constants.ILOAD:
+                    push("I");
+                    break;
+                case Constants.LLOAD:
+                    push("J");
+                    break;
+                case Constants.FLOAD:
+                    push("F");
+                    break;
+                case Constants.DLOAD:
+                    push("D");
+                    break;
+                default:
+                    push(locals[index]);
+            }
+            return;
+        }
+        if (i instanceof StoreInstruction) {
+            int index = ((StoreInstruction) i).index;
+            switch (i.getTag()) {
+                case Constants.LSTORE:
+                case Constants.DSTORE:
+                    pop(2);
+                    store(index, i.getTag() == Constants.LSTORE ? "J" : "D");
+                    break;
+                default:
+                    store(index, pop());
+            }
+            return;
+        }
+        String type;
+        switch (i.getTag()) {
+            case Constants.NOP:
+            case Constants.IINC:
+            case Constants.GOTO:
+            case Constants.RETURN:
+                break;
+            case Constants.ACONST_NULL:
+                push(NULL);
+                break;
+            case Constants.ICONST_M1:
+            case Constants.ICONST_0:
+            case Constants.ICONST_1:
+            case Constants.ICONST_2:
+            case Constants.ICONST_3:
+            case Constants.ICONST_4:
+            case Constants.ICONST_5:
+            case Constants.BIPUSH:
+            case Constants.SIPUSH:
+                push("I");
+                break;
+            case Constants.LCONST_0:
+            case Constants.LCONST_1:
+                push("J");
+                break;
+            case Constants.FCONST_0:
+            case Constants.FCONST_1:
+            case Constants.FCONST_2:
+                push("F");
+                break;
+            case Constants.DCONST_0:
+            case Constants.DCONST_1:
+                push("D");
+                break;
+            case Constants.LDC:
+                push(getConstantType(((LDC) i).c));
+                break;
+            case Constants.IALOAD:
+            case Constants.BALOAD:
+            case Constants.CALOAD:
+            case Constants.SALOAD:
+                pop(2);
+                push("I");
+                break;
+            case Constants.LALOAD:
+                pop(2);
+                push("J");
+                break;
+            case Constants.FALOAD:
+                pop(2);
+                push("F");
+                break;
+            case Constants.DALOAD:
+                pop(2);
+                push("D");
+                break;
+            case Constants.AALOAD:
+                pop();
+                type = pop();
+                push(type.charAt(0) == '[' ? type.substring(1) : type.equals(NULL) ? NULL : OBJECT);
+                break;
+            case Constants.IASTORE:
+            case Constants.BASTORE:
+            case Constants.CASTORE:
+            case Constants.SASTORE:
+            case Constants.FASTORE:
+            case Constants.AASTORE:
+                pop(3);
+                break;
+            case Constants.LASTORE:
+            case Constants.DASTORE:
+                pop(4);
+                break;
+            case Constants.POP:
+            case Constants.IFEQ:
+            case Constants.IFNE:
+            case Constants.IFLT:
+            case Constants.IFGE:
+            case Constants.IFGT:
+            case Constants.IFLE:
+            case Constants.IFNULL:
+            case Constants.IFNONNULL:
+            case Constants.TABLESWITCH:
+            case Constants.LOOKUPSWITCH:
+            case Constants.IRETURN:
+            case Constants.FRETURN:
+            case Constants.ARETURN:
+            case Constants.ATHROW:
+            case Constants.MONITORENTER:
+            case Constants.MONITOREXIT:
+                pop(1);
+                break;
+            case Constants.POP2:
+            case Constants.IF_ICMPEQ:
+            case Constants.IF_ICMPNE:
+            case Constants.IF_ICMPLT:
+            case Constants.IF_ICMPGE:
+            case Constants.IF_ICMPGT:
+            case Constants.IF_ICMPLE:
+            case Constants.IF_ACMPEQ:
+            case Constants.IF_ACMPNE:
+            case Constants.LRETURN:
+            case Constants.DRETURN:
+                pop(2);
+                break;
+            case Constants.DUP: {
+                String v1 = pop();
+                stack[sp++] = v1;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.DUP_X1: {
+                String v1 = pop(), v2 = pop();
+                stack[sp++] = v1;
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.DUP_X2: {
+                String v1 = pop(), v2 = pop(), v3 = pop();
+                stack[sp++] = v1;
+                stack[sp++] = v3;
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.DUP2: {
+                String v1 = pop(), v2 = pop();
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.DUP2_X1: {
+                String v1 = pop(), v2 = pop(), v3 = pop();
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                stack[sp++] = v3;
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.DUP2_X2: {
+                String v1 = pop(), v2 = pop(), v3 = pop(), v4 = pop();
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                stack[sp++] = v4;
+                stack[sp++] = v3;
+                stack[sp++] = v2;
+                stack[sp++] = v1;
+                break;
+            }
+            case Constants.SWAP: {
+                String v1 = pop(), v2 = pop();
+                stack[sp++] = v1;
+                stack[sp++] = v2;
+                break;
+            }
+            case Constants.IADD:
+            case Constants.ISUB:
+            case Constants.IMUL:
+            case Constants.IDIV:
+            case Constants.IREM:
+            case Constants.ISHL:
+            case Constants.ISHR:
+            case Constants.IUSHR:
+            case Constants.IAND:
+            case Constants.IOR:
+            case Constants.IXOR:
+            case Constants.FCMPL:
+            case Constants.FCMPG:
+                pop(2);
+                push("I");
+                break;
+            case Constants.INEG:
+            case Constants.I2B:
+            case Constants.I2C:
+            case Constants.I2S:
+            case Constants.F2I:
+            case Constants.ARRAYLENGTH:
+            case Constants.INSTANCEOF:
+                pop(1);
+                push("I");
+                break;
+            case Constants.LADD:
+            case Constants.LSUB:
+            case Constants.LMUL:
+            case Constants.LDIV:
+            case Constants.LREM:
+            case Constants.LAND:
+            case Constants.LOR:
+            case Constants.LXOR:
+                pop(4);
+                push("J");
+                break;
+            case Constants.LSHL:
+            case Constants.LSHR:
+            case Constants.LUSHR:
+                pop(3);
+                push("J");
+                break;
+            case Constants.LNEG:
+            case Constants.D2L:
+                pop(2);
+                push("J");
+                break;
+            case Constants.I2L:
+            case Constants.F2L:
+                pop(1);
+                push("J");
+                break;
+            case Constants.FADD:
+            case Constants.FSUB:
+            case Constants.FMUL:
+            case Constants.FDIV:
+            case Constants.FREM:
+                pop(2);
+                push("F");
+                break;
+            case Constants.FNEG:
+            case Constants.I2F:
+                pop(1);
+                push("F");
+                break;
+            case Constants.L2F:
+            case Constants.D2F:
+                pop(2);
+                push("F");
+                break;
+            case Constants.DADD:
+            case Constants.DSUB:
+            case Constants.DMUL:
+            case Constants.DDIV:
+            case Constants.DREM:
+                pop(4);
+                push("D");
+                break;
+            case Constants.DNEG:
+            case Constants.L2D:
+                pop(2);
+                push("D");
+                break;
+            case Constants.I2D:
+            case Constants.F2D:
+                pop(1);
+                push("D");
+                break;
+            case Constants.L2I:
+            case Constants.D2I:
+                pop(2);
+                push("I");
+                break;
+            case Constants.LCMP:
+            case Constants.DCMPL:
+            case Constants.DCMPG:
+                pop(4);
+                push("I");
+                break;
+            case Constants.GETSTATIC:
+                push(getType(((GETSTATIC) i).field.descriptor));
+                break;
+            case Constants.PUTSTATIC:
+                pop(getSlots(((PUTSTATIC) i).field.descriptor));
+                break;
+            case Constants.GETFIELD:
+                pop(1);
+                push(getType(((GETFIELD) i).field.descriptor));
+                break;
+            case Constants.PUTFIELD:
+                pop(getSlots(((PUTFIELD) i).field.descriptor) + 1);
+                break;
+            case Constants.INVOKEVIRTUAL:
+                invoke(((INVOKEVIRTUAL) i).method.name, ((INVOKEVIRTUAL) i).method.descriptor, true);
+                break;
+            case Constants.INVOKESPECIAL:
+                invoke(((INVOKESPECIAL) i).method.name, ((INVOKESPECIAL) i).method.descriptor, true);
+                break;
+            case Constants.INVOKESTATIC:
+                invoke(((INVOKESTATIC) i).method.name, ((INVOKESTATIC) i).method.descriptor, false);
+                break;
+            case Constants.INVOKEINTERFACE:
+                invoke(((INVOKEINTERFACE) i).method.name, ((INVOKEINTERFACE) i).method.descriptor, true);
+                break;
+            case Constants.INVOKEDYNAMIC:
+                invoke(((INVOKEDYNAMIC) i).call_site.name, ((INVOKEDYNAMIC) i).call_site.descriptor, false);
+                break;
+            case Constants.NEW:
+                push("u" + pc);
+                break;
+            case Constants.NEWARRAY:
+                pop(1);
+                push("[" + getArrayType(((NEWARRAY) i).type));
+                break;
+            case Constants.ANEWARRAY:
+                pop(1);
+                push("[" + getClassType(((ANEWARRAY) i).type));
+                break;
+            case Constants.CHECKCAST:
+                pop(1);
+                push(getClassType(((CHECKCAST) i).type));
+                break;
+            case Constants.MULTIANEWARRAY:
+                pop(((MULTIANEWARRAY) i).dimensions);
+                push(getClassType(((MULTIANEWARRAY) i).type));
+                break;
+            default:
+                throw new EncodingException("Can't compute frames through " + i + " in " + m);
+        }
+    }
+
+    private void invoke(String name, String descriptor, boolean has_receiver) throws EncodingException {
+        DescriptorInfo info = Util.getDescriptorInfo(descriptor);
+        pop(info.param_slots);
+        if (has_receiver) {
+            String receiver = pop();
+            if (name.equals("<init>") && receiver.charAt(0) == 'u')
+                initialize(receiver);
+        }
+        if (info.return_slots != 0)
+            push(getType(info.return_type));
+    }
+
+    private static String getType(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+                return "I";
+            default:
+                return descriptor;
+        }
+    }
+
+    private static int getSlots(String descriptor) {
+        return descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+    }
+
+    private static String getClassType(String name) {
+        return name.charAt(0) == '[' ? name : "L" + name + ";";
+    }
+
+    private static String getArrayType(int type) throws EncodingException {
+        switch (type) {
+            case Constants.T_BOOLEAN:
+                return "Z";
+            case Constants.T_CHAR:
+                return "C";
+            case Constants.T_FLOAT:
+                return "F";
+            case Constants.T_DOUBLE:
+                return "D";
+            case Constants.T_BYTE:
+                return "B";
+            case Constants.T_SHORT:
+                return "S";
+            case Constants.T_INT:
+                return "I";
+            case Constants.T_LONG:
+                return "J";
+            default:
+                throw new EncodingException("Invalid array type: " + type);
+        }
+    }
+
+    private static String getConstantType(Constant c) throws EncodingException {
+        if (c instanceof ConstantInteger)
+            return "I";
+        if (c instanceof ConstantFloat)
+            return "F";
+        if (c instanceof ConstantLong)
+            return "J";
+        if (c instanceof ConstantDouble)
+            return "D";
+        if (c instanceof ConstantString)
+            return "Ljava/lang/String;";
+        if (c instanceof ConstantClass)
+            return "Ljava/lang/Class;";
+        if (c instanceof ConstantMethodHandle)
+            return "Ljava/lang/invoke/MethodHandle;";
+        if (c instanceof ConstantMethodType)
+            return "Ljava/lang/invoke/MethodType;";
+        if (c instanceof ConstantDynamic)
+            return getType(((ConstantDynamic) c).descriptor);
+        throw new EncodingException("Can't load " + c + " with ldc");
+    }
+
+    /**
+     * <p>Collapses longs and doubles to a single entry and drops any trailing tops, as frames hold them</p>
+     */
+    private static String[] compact(String[] types, int length) {
+        ArrayList<String> compacted = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            compacted.add(types[i]);
+            if (types[i].equals("J") || types[i].equals("D"))
+                i++;
+        }
+        int end = compacted.size();
+        while (end > 0 && compacted.get(end - 1).equals(TOP))
+            end--;
+        return compacted.subList(0, end).toArray(new String[end]);
+    }
+
+    private static void writeFrame(ByteWriter w, int delta, String[] previous, String[] locals, String[] stack, int[] offsets, ConstantPool cpo) {
+        int diff = locals.length - previous.length;
+        boolean same = diff == 0 && Arrays.equals(previous, locals);
+        if (same && stack.length == 0) {
+            if (delta < 64)
+                w.u1(delta);
+            else {
+                w.u1(251);
+                w.u2(delta);
+            }
+        } else if (same && stack.length == 1) {
+            if (delta < 64)
+                w.u1(64 + delta);
+            else {
+                w.u1(247);
+                w.u2(delta);
+            }
+            writeType(w, stack[0], offsets, cpo);
+        } else if (stack.length == 0 && diff < 0 && diff >= -3 && startsWith(previous, locals)) {
+            w.u1(251 + diff);
+            w.u2(delta);
+        } else if (stack.length == 0 && diff > 0 && diff <= 3 && startsWith(locals, previous)) {
+            w.u1(251 + diff);
+            w.u2(delta);
+            for (int i = previous.length; i < locals.length; i++)
+                writeType(w, locals[i], offsets, cpo);
+        } else {
+            w.u1(255);
+            w.u2(delta);
+            w.u2(locals.length);
+            for (String type : locals)
+                writeType(w, type, offsets, cpo);
+            w.u2(stack.length);
+            for (String type : stack)
+                writeType(w, type, offsets, cpo);
+        }
+    }
+
+    private static boolean startsWith(String[] types, String[] prefix) {
+        for (int i = 0; i < prefix.length; i++)
+            if (!types[i].equals(prefix[i]))
+                return false;
+        return true;
+    }
+
+    private static void writeType(ByteWriter w, String type, int[] offsets, ConstantPool cpo) {
+        switch (type.charAt(0)) {
+            case 't':
+                w.u1(0);
+                break;
+            case 'I':
+                w.u1(1);
+                break;
+            case 'F':
+                w.u1(2);
+                break;
+            case 'D':
+                w.u1(3);
+                break;
+            case 'J':
+                w.u1(4);
+                break;
+            case 'n':
+                w.u1(5);
+                break;
+            case 'u':
+                if (type.length() == 1)
+                    w.u1(6);
+                else {
+                    w.u1(8);
+                    w.u2(offsets[Integer.parseInt(type.substring(1))]);
+                }
+                break;
+            case 'L':
+                w.u1(7);
+                w.u2(cpo.insert(new ConstantClass(type.substring(1, type.length() - 1))));
+                break;
+            default:
+                w.u1(7);
+                w.u2(cpo.insert(new ConstantClass(type)));
+        }
+    }
+}
\ No newline at end of file
@@ -35,6 +35,7 @@ public final class GETSTATIC extends Instruction {
 
     public GETSTATIC(ConstantFieldref field) {
         this.field = field;
+        this.tag = Constants.GETSTATIC;
     }
 
     public String toString() {
@@ -49,8 +50,8 @@ public final class GETSTATIC extends Instruction {
         return 1 + (field.descriptor.equals("D") || field.descriptor.equals("J")? 1: 0);
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        field = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(field_index);
     }
 }
\ No newline at end of file
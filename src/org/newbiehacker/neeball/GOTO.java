@@ -36,9 +36,11 @@ public final class GOTO extends BranchInstruction {
      */
     public GOTO(int branch_index) {
         super(branch_index);
+        this.tag = Constants.GOTO;
     }
 
     GOTO() {
+        this.tag = Constants.GOTO;
     }
 
     public String toString() {
@@ -46,6 +48,20 @@ public final class GOTO extends BranchInstruction {
     }
 
     public int getLength() {
-        return 3 + (branchoffset < -32768 || branchoffset > 32767? 2: 0);
+        return 3 + (isWide()? 2: 0);
+    }
+
+    private boolean isWide() {
+        return branchoffset < Short.MIN_VALUE || branchoffset > Short.MAX_VALUE;
+    }
+
+    void encode(ByteWriter w) {
+        if (isWide()) {
+            w.u1(Constants.GOTO_W);
+            w.s4(branchoffset);
+        } else {
+            w.u1(tag);
+            w.u2(branchoffset);
+        }
     }
 }
\ No newline at end of file
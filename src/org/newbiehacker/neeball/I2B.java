@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class I2B extends Instruction {
+    public static final I2B INSTANCE = new I2B();
+
+    public I2B() {
+        this.tag = Constants.I2B;
+    }
+
     public String toString() {
         return "i2b";
     }
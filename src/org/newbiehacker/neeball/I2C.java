@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class I2C extends Instruction {
+    public static final I2C INSTANCE = new I2C();
+
+    public I2C() {
+        this.tag = Constants.I2C;
+    }
+
     public String toString() {
         return "i2c";
     }
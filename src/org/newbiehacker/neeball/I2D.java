@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class I2D extends Instruction {
+    public static final I2D INSTANCE = new I2D();
+
+    public I2D() {
+        this.tag = Constants.I2D;
+    }
+
     public String toString() {
         return "i2d";
     }
+
+    public int getStackChange() {
+        return 1;
+    }
 }
\ No newline at end of file
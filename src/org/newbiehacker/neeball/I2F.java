@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class I2F extends Instruction {
+    public static final I2F INSTANCE = new I2F();
+
+    public I2F() {
+        this.tag = Constants.I2F;
+    }
+
     public String toString() {
         return "i2f";
     }
@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class I2L extends Instruction {
+    public static final I2L INSTANCE = new I2L();
+
+    public I2L() {
+        this.tag = Constants.I2L;
+    }
+
     public String toString() {
         return "i2l";
     }
+
+    public int getStackChange() {
+        return 1;
+    }
 }
\ No newline at end of file
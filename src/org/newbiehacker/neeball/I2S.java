@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class I2S extends Instruction {
+    public static final I2S INSTANCE = new I2S();
+
+    public I2S() {
+        this.tag = Constants.I2S;
+    }
+
     public String toString() {
         return "i2s";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IADD extends Instruction {
+    public static final IADD INSTANCE = new IADD();
+
+    public IADD() {
+        this.tag = Constants.IADD;
+    }
+
     public String toString() {
         return "iadd";
     }
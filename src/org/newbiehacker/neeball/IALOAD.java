@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IALOAD extends Instruction {
+    public static final IALOAD INSTANCE = new IALOAD();
+
+    public IALOAD() {
+        this.tag = Constants.IALOAD;
+    }
+
     public String toString() {
         return "iaload";
     }
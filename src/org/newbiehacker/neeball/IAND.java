@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IAND extends Instruction {
+    public static final IAND INSTANCE = new IAND();
+
+    public IAND() {
+        this.tag = Constants.IAND;
+    }
+
     public String toString() {
         return "iand";
     }
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class IASTORE extends Instruction {
+    public static final IASTORE INSTANCE = new IASTORE();
+
+    public IASTORE() {
+        this.tag = Constants.IASTORE;
+    }
+
     public String toString() {
         return "iastore";
     }
 
     public int getStackChange() {
-        return -1;
+        return -3;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_0 extends Instruction {
+    public static final ICONST_0 INSTANCE = new ICONST_0();
+
+    public ICONST_0() {
+        this.tag = Constants.ICONST_0;
+    }
+
     public String toString() {
         return "iconst_0";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_1 extends Instruction {
+    public static final ICONST_1 INSTANCE = new ICONST_1();
+
+    public ICONST_1() {
+        this.tag = Constants.ICONST_1;
+    }
+
     public String toString() {
         return "iconst_1";
     }
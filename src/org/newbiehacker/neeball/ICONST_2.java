@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_2 extends Instruction {
+    public static final ICONST_2 INSTANCE = new ICONST_2();
+
+    public ICONST_2() {
+        this.tag = Constants.ICONST_2;
+    }
+
     public String toString() {
         return "iconst_2";
     }
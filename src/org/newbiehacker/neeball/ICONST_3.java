@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_3 extends Instruction {
+    public static final ICONST_3 INSTANCE = new ICONST_3();
+
+    public ICONST_3() {
+        this.tag = Constants.ICONST_3;
+    }
+
     public String toString() {
         return "iconst_3";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_4 extends Instruction {
+    public static final ICONST_4 INSTANCE = new ICONST_4();
+
+    public ICONST_4() {
+        this.tag = Constants.ICONST_4;
+    }
+
     public String toString() {
         return "iconst_4";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_5 extends Instruction {
+    public static final ICONST_5 INSTANCE = new ICONST_5();
+
+    public ICONST_5() {
+        this.tag = Constants.ICONST_5;
+    }
+
     public String toString() {
         return "iconst_5";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ICONST_M1 extends Instruction {
+    public static final ICONST_M1 INSTANCE = new ICONST_M1();
+
+    public ICONST_M1() {
+        this.tag = Constants.ICONST_M1;
+    }
+
     public String toString() {
         return "iconst_m1";
     }
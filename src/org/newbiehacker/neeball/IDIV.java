@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IDIV extends Instruction {
+    public static final IDIV INSTANCE = new IDIV();
+
+    public IDIV() {
+        this.tag = Constants.IDIV;
+    }
+
     public String toString() {
         return "idiv";
     }
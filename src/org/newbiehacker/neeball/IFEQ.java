@@ -35,9 +35,11 @@ public final class IFEQ extends BranchInstruction {
      */
     public IFEQ(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFEQ;
     }
 
     IFEQ() {
+        this.tag = Constants.IFEQ;
     }
 
     public String toString() {
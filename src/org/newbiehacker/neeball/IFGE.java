@@ -35,9 +35,11 @@ public final class IFGE extends BranchInstruction {
      */
     public IFGE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFGE;
     }
 
     IFGE() {
+        this.tag = Constants.IFGE;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IFGT extends BranchInstruction {
      */
     public IFGT(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFGT;
     }
 
     IFGT() {
+        this.tag = Constants.IFGT;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IFLE extends BranchInstruction {
      */
     public IFLE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFLE;
     }
 
     IFLE() {
+        this.tag = Constants.IFLE;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IFLT extends BranchInstruction {
      */
     public IFLT(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFLT;
     }
 
     IFLT() {
+        this.tag = Constants.IFLT;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IFNE extends BranchInstruction {
      */
     public IFNE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFNE;
     }
 
     IFNE() {
+        this.tag = Constants.IFNE;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IFNONNULL extends BranchInstruction {
      */
     public IFNONNULL(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFNONNULL;
     }
 
     IFNONNULL() {
+        this.tag = Constants.IFNONNULL;
     }
 
     public String toString() {
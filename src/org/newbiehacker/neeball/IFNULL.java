@@ -35,9 +35,11 @@ public final class IFNULL extends BranchInstruction {
      */
     public IFNULL(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IFNULL;
     }
 
     IFNULL() {
+        this.tag = Constants.IFNULL;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IF_ACMPEQ extends BranchInstruction {
      */
     public IF_ACMPEQ(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ACMPEQ;
     }
 
     IF_ACMPEQ() {
+        this.tag = Constants.IF_ACMPEQ;
     }
 
     public String toString() {
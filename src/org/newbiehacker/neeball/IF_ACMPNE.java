@@ -35,9 +35,11 @@ public final class IF_ACMPNE extends BranchInstruction {
      */
     public IF_ACMPNE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ACMPNE;
     }
 
     IF_ACMPNE() {
+        this.tag = Constants.IF_ACMPNE;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IF_ICMPEQ extends BranchInstruction {
      */
     public IF_ICMPEQ(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPEQ;
     }
 
     IF_ICMPEQ() {
+        this.tag = Constants.IF_ICMPEQ;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IF_ICMPGE extends BranchInstruction {
      */
     public IF_ICMPGE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPGE;
     }
 
     IF_ICMPGE() {
+        this.tag = Constants.IF_ICMPGE;
     }
 
     public String toString() {
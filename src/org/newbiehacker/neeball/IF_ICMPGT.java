@@ -35,9 +35,11 @@ public final class IF_ICMPGT extends BranchInstruction {
      */
     public IF_ICMPGT(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPGT;
     }
 
     IF_ICMPGT() {
+        this.tag = Constants.IF_ICMPGT;
     }
 
     public String toString() {
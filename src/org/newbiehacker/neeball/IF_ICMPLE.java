@@ -35,9 +35,11 @@ public final class IF_ICMPLE extends BranchInstruction {
      */
     public IF_ICMPLE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPLE;
     }
 
     IF_ICMPLE() {
+        this.tag = Constants.IF_ICMPLE;
     }
 
     public String toString() {
@@ -35,9 +35,11 @@ public final class IF_ICMPLT extends BranchInstruction {
      */
     public IF_ICMPLT(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPLT;
     }
 
     IF_ICMPLT() {
+        this.tag = Constants.IF_ICMPLT;
     }
 
     public String toString() {
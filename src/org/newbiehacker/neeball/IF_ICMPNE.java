@@ -35,9 +35,11 @@ public final class IF_ICMPNE extends BranchInstruction {
      */
     public IF_ICMPNE(int branch_index) {
         super(branch_index);
+        this.tag = Constants.IF_ICMPNE;
     }
 
     IF_ICMPNE() {
+        this.tag = Constants.IF_ICMPNE;
     }
 
     public String toString() {
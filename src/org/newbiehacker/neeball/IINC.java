@@ -27,7 +27,7 @@
 
 package org.newbiehacker.neeball;
 
-public final class IINC extends Instruction {
+public final class IINC extends Instruction implements IWideInstruction {
     /**
      * <p>An index into the local variable table of the integer to increment</p>
      */
@@ -41,6 +41,7 @@ public final class IINC extends Instruction {
     public IINC(int index, int increment) {
         this.index = index;
         this.increment = increment;
+        this.tag = Constants.IINC;
     }
 
     IINC(int i, short i1, boolean b) {
@@ -53,6 +54,25 @@ public final class IINC extends Instruction {
     }
 
     public int getLength() {
-        return 3 + (index > 255 || increment < -128 || increment > 127 || wide ? 3 : 0);
+        return 3 + (isWide() ? 3 : 0);
+    }
+
+    public boolean isWide() {
+        return wide || index > 255 || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE;
+    }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (index > 0xffff || increment < Short.MIN_VALUE || increment > Short.MAX_VALUE)
+            throw new EncodingException("Operands out of range for " + this);
+        if (isWide()) {
+            w.u1(Constants.WIDE);
+            w.u1(tag);
+            w.u2(index);
+            w.u2(increment);
+        } else {
+            w.u1(tag);
+            w.u1(index);
+            w.u1(increment);
+        }
     }
 }
\ No newline at end of file
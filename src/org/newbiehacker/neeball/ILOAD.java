@@ -35,10 +35,12 @@ public final class ILOAD extends LoadInstruction {
      */
     public ILOAD(int index) {
         super(index);
+        this.tag = Constants.ILOAD;
     }
 
     ILOAD(int i, boolean b) {
         super(i, b);
+        this.tag = Constants.ILOAD;
     }
 
     public String toString() {
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IMUL extends Instruction {
+    public static final IMUL INSTANCE = new IMUL();
+
+    public IMUL() {
+        this.tag = Constants.IMUL;
+    }
+
     public String toString() {
         return "imul";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class INEG extends Instruction {
+    public static final INEG INSTANCE = new INEG();
+
+    public INEG() {
+        this.tag = Constants.INEG;
+    }
+
     public String toString() {
         return "ineg";
     }
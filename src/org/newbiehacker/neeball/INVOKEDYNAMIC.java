@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.ConstantInvokeDynamic;
+
+public final class INVOKEDYNAMIC extends Instruction {
+    /**
+     * <p>The call site being invoked, linked by a bootstrap method of the class the first time it's run</p>
+     */
+    public ConstantInvokeDynamic call_site;
+    int index;
+
+    /**
+     * <p>Constructs a new <code>INVOKEDYNAMIC</code> with the specified <code>ConstantInvokeDynamic</code> to invoke</p>
+     *
+     * @param call_site the call site to be invoked
+     */
+    public INVOKEDYNAMIC(ConstantInvokeDynamic call_site) {
+        this.call_site = call_site;
+        this.tag = Constants.INVOKEDYNAMIC;
+    }
+
+    public String toString() {
+        return "invokedynamic " + call_site;
+    }
+
+    public int getLength() {
+        return 5;
+    }
+
+    public int getStackChange() {
+        return Util.getMethodStackUse(call_site.descriptor, false);
+    }
+
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
+        w.u2(0);
+    }
+}
\ No newline at end of file
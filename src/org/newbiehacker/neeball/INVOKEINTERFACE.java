@@ -43,6 +43,7 @@ public final class INVOKEINTERFACE extends Instruction {
      */
     public INVOKEINTERFACE(ConstantInterfaceMethodref method) {
         this.method = method;
+        this.tag = Constants.INVOKEINTERFACE;
     }
 
     public String toString() {
@@ -54,11 +55,13 @@ public final class INVOKEINTERFACE extends Instruction {
     }
 
     public int getStackChange() {
-        return Util.getMethodStackUse(method.descriptor);
+        return Util.getMethodStackUse(method.descriptor, true);
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        method = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
+        w.u1(Util.getParamCount(method.descriptor));
+        w.u1(0);
     }
 }
\ No newline at end of file
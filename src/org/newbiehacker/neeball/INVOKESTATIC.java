@@ -43,6 +43,7 @@ public final class INVOKESTATIC extends Instruction {
      */
     public INVOKESTATIC(ConstantMethodref method) {
         this.method = method;
+        this.tag = Constants.INVOKESTATIC;
     }
 
     public String toString() {
@@ -54,11 +55,11 @@ public final class INVOKESTATIC extends Instruction {
     }
 
     public int getStackChange() {
-        return Util.getMethodStackUse(method.descriptor);
+        return Util.getMethodStackUse(method.descriptor, false);
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        method = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IOR extends Instruction {
+    public static final IOR INSTANCE = new IOR();
+
+    public IOR() {
+        this.tag = Constants.IOR;
+    }
+
     public String toString() {
         return "ior";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IREM extends Instruction {
+    public static final IREM INSTANCE = new IREM();
+
+    public IREM() {
+        this.tag = Constants.IREM;
+    }
+
     public String toString() {
         return "irem";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IRETURN extends Instruction implements TerminatingInstruction {
+    public static final IRETURN INSTANCE = new IRETURN();
+
+    public IRETURN() {
+        this.tag = Constants.IRETURN;
+    }
+
     public String toString() {
         return "ireturn";
     }
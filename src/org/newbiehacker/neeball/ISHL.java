@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ISHL extends Instruction {
+    public static final ISHL INSTANCE = new ISHL();
+
+    public ISHL() {
+        this.tag = Constants.ISHL;
+    }
+
     public String toString() {
         return "ishl";
     }
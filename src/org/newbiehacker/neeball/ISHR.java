@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ISHR extends Instruction {
+    public static final ISHR INSTANCE = new ISHR();
+
+    public ISHR() {
+        this.tag = Constants.ISHR;
+    }
+
     public String toString() {
         return "ishr";
     }
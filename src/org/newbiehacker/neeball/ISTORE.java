@@ -35,10 +35,12 @@ public final class ISTORE extends StoreInstruction {
      */
     public ISTORE(int index) {
         super(index);
+        this.tag = Constants.ISTORE;
     }
 
     ISTORE(int i, boolean b) {
         super(i, b);
+        this.tag = Constants.ISTORE;
     }
 
     public String toString() {
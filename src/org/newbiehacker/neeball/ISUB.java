@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class ISUB extends Instruction {
+    public static final ISUB INSTANCE = new ISUB();
+
+    public ISUB() {
+        this.tag = Constants.ISUB;
+    }
+
     public String toString() {
         return "isub";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IUSHR extends Instruction {
+    public static final IUSHR INSTANCE = new IUSHR();
+
+    public IUSHR() {
+        this.tag = Constants.IUSHR;
+    }
+
     public String toString() {
         return "iushr";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class IXOR extends Instruction {
+    public static final IXOR INSTANCE = new IXOR();
+
+    public IXOR() {
+        this.tag = Constants.IXOR;
+    }
+
     public String toString() {
         return "ixor";
     }
@@ -115,11 +115,4 @@ public final class InnerClass {
     public String toString() {
         return "InnerClass inner=" + inner_class + ",outer=" + outer_class + ",inner_name=" + inner_name;
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        inner_class = null;
-        outer_class = null;
-        inner_name = null;
-    }
 }
\ No newline at end of file
@@ -7,6 +7,12 @@ package org.newbiehacker.neeball;
  * Modification and redistribution without explicit permission by the creator(s) is prohibited
  * This source may be modified for personal use as long as the original author is accredited
  */
+
+/**
+ * <p>An instruction in the code of a method</p>
+ * <p>Instructions without operands hold no state, each of them has a shared <code>INSTANCE</code> which the decoder
+ * hands out instead of a new object, new ones can still be constructed where a distinct object is wanted</p>
+ */
 public abstract class Instruction {
     protected int tag;
 
@@ -30,4 +36,16 @@ public abstract class Instruction {
     public int getTag() {
         return tag;
     }
+
+    /**
+     * <p>Writes the opcode and operands of this instruction</p>
+     *
+     * @param w the writer holding the code array, positioned at this instruction
+     * @throws EncodingException if this instruction can't be written as it stands
+     */
+    void encode(ByteWriter w) throws EncodingException {
+        if (tag == 0 && !(this instanceof NOP))
+            throw new EncodingException("No opcode set for " + getClass().getName());
+        w.u1(tag);
+    }
 }
\ No newline at end of file
@@ -38,16 +38,33 @@ public final class JSR extends BranchInstruction {
      */
     public JSR(int branch_index) {
         super(branch_index);
+        this.tag = Constants.JSR;
     }
 
-    JSR() {}
+    JSR() {
+        this.tag = Constants.JSR;
+    }
 
     public String toString() {
         return "jsr " + this.branch_index;
     }
 
     public int getLength() {
-        return 3 + (branchoffset > 65535? 2: 0);
+        return 3 + (isWide()? 2: 0);
+    }
+
+    private boolean isWide() {
+        return branchoffset < Short.MIN_VALUE || branchoffset > Short.MAX_VALUE;
+    }
+
+    void encode(ByteWriter w) {
+        if (isWide()) {
+            w.u1(Constants.JSR_W);
+            w.s4(branchoffset);
+        } else {
+            w.u1(tag);
+            w.u2(branchoffset);
+        }
     }
 
     public int getStackChange() {
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>Runs a <code>ClassTransformer</code> over every class in a jar or directory, writing the results to a jar</p>
+ * <p>Classes are read, transformed and written on a pool of threads, while entries are written in the order they were
+ * read (sorted by path for directories) so the same input always gives the same output. Reading stops whenever the
+ * entries that haven't been written yet hold more than the memory budget, until the oldest has been written.</p>
+ * <p>Classes that can't be read are copied unchanged, other entries are always copied unchanged. Jar signature files
+ * are left out, as they won't match the transformed classes.</p>
+ * <p>Transformed classes are written with their stack map frames computed, looking classes up in the input and then
+ * through the loader of this library unless another hierarchy is given.</p>
+ */
+public final class JarProcessor {
+    private final ClassTransformer transformer;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memory_budget = 64L << 20;
+    private boolean lazy;
+    private ClassHierarchy hierarchy;
+
+    /**
+     * <p>Constructs a new <code>JarProcessor</code> that applies the given transformer</p>
+     *
+     * @param transformer the transformer to apply to each class
+     */
+    public JarProcessor(ClassTransformer transformer) {
+        this.transformer = transformer;
+    }
+
+    /**
+     * <p>Sets the number of threads classes are transformed on, the number of processors by default</p>
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * <p>Sets how many bytes of entries may be read but not yet written at once, 64MB by default</p>
+     * <p>This counts the entries as they're stored in the input, a class being transformed takes several times that</p>
+     *
+     * @param memory_budget the budget in bytes, an entry larger than it is still processed on its own
+     */
+    public void setMemoryBudget(long memory_budget) {
+        if (memory_budget < 1)
+            throw new IllegalArgumentException("memory_budget must be positive: " + memory_budget);
+        this.memory_budget = memory_budget;
+    }
+
+    /**
+     * <p>Sets whether classes are read lazily, so only the code of methods the transformer uses is decoded</p>
+     *
+     * @param lazy whether to read classes lazily
+     * @see ClassIO#readClassFile(InputStream, boolean)
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * <p>Sets the hierarchy stack map frames are computed with, which must know the classes being transformed and the
+     * ones they refer to</p>
+     * <p>By default a <code>ClassLoaderHierarchy</code> looks classes up in the input, then through the loader of this
+     * library</p>
+     *
+     * @param hierarchy the hierarchy to use, or null for the default
+     * @see ClassIO#writeClassFile(ClassFile, ClassHierarchy)
+     */
+    public void setHierarchy(ClassHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * <p>Transforms every class in a jar or directory, writing the results to a jar file</p>
+     *
+     * @param in  the jar, zip or directory to read
+     * @param out the jar file to write
+     * @throws IOException if there is an I/O error or the transformed classes can't be written
+     */
+    public void process(File in, File out) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out))) {
+            process(in, os);
+        }
+    }
+
+    /**
+     * <p>Transforms every class in a jar or directory, writing the results as a jar to the given stream, which is left open</p>
+     *
+     * @param in the jar, zip or directory to read
+     * @param os the <code>OutputStream</code> to write to
+     * @throws IOException if there is an I/O error or the transformed classes can't be written
+     */
+    public void process(File in, OutputStream os) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(os);
+        URLClassLoader loader = null;
+        ClassHierarchy h = hierarchy;
+        if (h == null) {
+            loader = new URLClassLoader(new URL[]{in.toURI().toURL()}, JarProcessor.class.getClassLoader());
+            h = new ClassLoaderHierarchy(loader);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Pipeline p = new Pipeline(executor, zos, h);
+        try {
+            if (in.isDirectory()) {
+                List<String> names = new ArrayList<>();
+                list(in, "", names);
+                Collections.sort(names);
+                for (String name : names) {
+                    File f = new File(in, name);
+                    try (InputStream is = new FileInputStream(f)) {
+                        p.add(name, f.lastModified(), readFully(is, (int) f.length()));
+                    }
+                }
+            } else {
+                try (ZipFile zf = new ZipFile(in)) {
+                    Enumeration<? extends ZipEntry> entries = zf.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry ze = entries.nextElement();
+                        if (ze.isDirectory()) {
+                            p.add(ze.getName(), ze.getTime(), null);
+                            continue;
+                        }
+                        try (InputStream is = zf.getInputStream(ze)) {
+                            p.add(ze.getName(), ze.getTime(), readFully(is, (int) ze.getSize()));
+                        }
+                    }
+                }
+            }
+            p.finish();
+            zos.finish();
+        } finally {
+            executor.shutdownNow();
+            if (loader != null)
+                loader.close();
+        }
+    }
+
+    private static void list(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory())
+                list(f, prefix + f.getName() + "/", names);
+            else
+                names.add(prefix + f.getName());
+        }
+    }
+
+    private static byte[] readFully(InputStream is, int size) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(size > 0 ? size : 8192);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1)
+            bos.write(buf, 0, n);
+        return bos.toByteArray();
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', 9) != -1)
+            return false;
+        name = name.toUpperCase(Locale.ENGLISH);
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+
+    private byte[] transform(String name, byte[] data, ClassHierarchy hierarchy) throws IOException {
+        ClassFile cf;
+        try {
+            cf = ClassIO.readClassFile(data, 0, data.length, lazy);
+        } catch (IOException | RuntimeException e) {
+            Logger.logger.warning("Copying " + name + " unchanged, it couldn't be read: " + e);
+            return data;
+        }
+        transformer.transform(cf);
+        return ClassIO.writeClassFile(cf, hierarchy);
+    }
+
+    /**
+     * <p>Holds the entries that have been read but not yet written, in the order they will be written</p>
+     */
+    private final class Pipeline {
+        private final ExecutorService executor;
+        private final ZipOutputStream zos;
+        private final ClassHierarchy hierarchy;
+        private final Deque<Entry> pending = new ArrayDeque<>();
+        private long in_flight;
+
+        Pipeline(ExecutorService executor, ZipOutputStream zos, ClassHierarchy hierarchy) {
+            this.executor = executor;
+            this.zos = zos;
+            this.hierarchy = hierarchy;
+        }
+
+        void add(final String name, long time, final byte[] data) throws IOException {
+            if (isSignatureFile(name)) {
+                Logger.logger.fine("Leaving out signature file " + name);
+                return;
+            }
+            int size = data == null ? 0 : data.length;
+            while (!pending.isEmpty() && (in_flight + size > memory_budget || pending.size() >= threads * 4))
+                writeNext();
+            Entry e = new Entry(name, time, data);
+            if (data != null && name.endsWith(".class")) {
+                e.result = executor.submit(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        return transform(name, data, hierarchy);
+                    }
+                });
+            }
+            pending.add(e);
+            in_flight += size;
+            // Write whatever has already finished so it doesn't hold the budget
+            while (!pending.isEmpty() && (pending.peek().result == null || pending.peek().result.isDone()))
+                writeNext();
+        }
+
+        void finish() throws IOException {
+            while (!pending.isEmpty())
+                writeNext();
+        }
+
+        private void writeNext() throws IOException {
+            Entry e = pending.poll();
+            byte[] data = e.data;
+            if (e.result != null) {
+                try {
+                    data = e.result.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while transforming " + e.name);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new IOException("Couldn't transform " + e.name, cause);
+                }
+            }
+            ZipEntry ze = new ZipEntry(e.name);
+            if (e.time != -1)
+                ze.setTime(e.time);
+            zos.putNextEntry(ze);
+            if (data != null)
+                zos.write(data);
+            zos.closeEntry();
+            if (e.data != null)
+                in_flight -= e.data.length;
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final long time;
+        final byte[] data;
+        Future<byte[]> result;
+
+        Entry(String name, long time, byte[] data) {
+            this.name = name;
+            this.time = time;
+            this.data = data;
+        }
+    }
+}
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class L2D extends Instruction {
+    public static final L2D INSTANCE = new L2D();
+
+    public L2D() {
+        this.tag = Constants.L2D;
+    }
+
     public String toString() {
         return "l2d";
     }
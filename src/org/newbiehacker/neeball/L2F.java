@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class L2F extends Instruction {
+    public static final L2F INSTANCE = new L2F();
+
+    public L2F() {
+        this.tag = Constants.L2F;
+    }
+
     public String toString() {
         return "l2f";
     }
+
+    public int getStackChange() {
+        return -1;
+    }
 }
\ No newline at end of file
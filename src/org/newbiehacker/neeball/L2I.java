@@ -28,7 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class L2I extends Instruction {
+    public static final L2I INSTANCE = new L2I();
+
+    public L2I() {
+        this.tag = Constants.L2I;
+    }
+
     public String toString() {
         return "l2i";
     }
+
+    public int getStackChange() {
+        return -1;
+    }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LADD extends Instruction {
+    public static final LADD INSTANCE = new LADD();
+
+    public LADD() {
+        this.tag = Constants.LADD;
+    }
+
     public String toString() {
         return "ladd";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LALOAD extends Instruction {
+    public static final LALOAD INSTANCE = new LALOAD();
+
+    public LALOAD() {
+        this.tag = Constants.LALOAD;
+    }
+
     public String toString() {
         return "laload";
     }
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LAND extends Instruction {
+    public static final LAND INSTANCE = new LAND();
+
+    public LAND() {
+        this.tag = Constants.LAND;
+    }
+
     public String toString() {
         return "land";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LASTORE extends Instruction {
+    public static final LASTORE INSTANCE = new LASTORE();
+
+    public LASTORE() {
+        this.tag = Constants.LASTORE;
+    }
+
     public String toString() {
         return "lastore";
     }
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LCMP extends Instruction {
+    public static final LCMP INSTANCE = new LCMP();
+
+    public LCMP() {
+        this.tag = Constants.LCMP;
+    }
+
     public String toString() {
         return "lcmp";
     }
 
     public int getStackChange() {
-        return -1;
+        return -3;
     }
 }
\ No newline at end of file
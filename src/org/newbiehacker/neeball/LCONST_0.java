@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LCONST_0 extends Instruction {
+    public static final LCONST_0 INSTANCE = new LCONST_0();
+
+    public LCONST_0() {
+        this.tag = Constants.LCONST_0;
+    }
+
     public String toString() {
         return "lconst_0";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LCONST_1 extends Instruction {
+    public static final LCONST_1 INSTANCE = new LCONST_1();
+
+    public LCONST_1() {
+        this.tag = Constants.LCONST_1;
+    }
+
     public String toString() {
         return "lconst_1";
     }
@@ -28,6 +28,7 @@
 package org.newbiehacker.neeball;
 
 import org.newbiehacker.neeball.pool.Constant;
+import org.newbiehacker.neeball.pool.ConstantDynamic;
 
 public final class LDC extends Instruction {
     /**
@@ -41,13 +42,19 @@ public final class LDC extends Instruction {
      * <p>Valid constants are:</p>
      * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantFloat</code>,</p>
      * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantInteger</code>,</p>
-     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantString</code></p>
+     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantString</code>,</p>
+     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantClass</code>,</p>
+     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantMethodHandle</code>,</p>
+     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantMethodType</code>,</p>
+     * <p>&nbsp;&nbsp;&nbsp;&nbsp;<code>ConstantDynamic</code>, and as <code>LDC2_W</code>,
+     * <code>ConstantLong</code> and <code>ConstantDouble</code></p>
      * <p><b>NOTE</b>: <code>LDC</code> and <code>LDC_W</code> can be used interchangeably because the library will calculate whether the instruction is wide or not before writing</p>
      *
      * @param c the constant to be pushed onto the stack
      */
     public LDC(Constant c) {
         this.c = c;
+        this.tag = Constants.LDC;
     }
 
     public String toString() {
@@ -59,15 +66,28 @@ public final class LDC extends Instruction {
     }
 
     public int getStackChange() {
-        return 1 + (c.isLong() ? 1: 0);
+        return 1 + (isCategory2() ? 1: 0);
     }
 
     public boolean isWide() {
-        return (c.isLong() || index > 255);
+        return (isCategory2() || index > 255);
     }
 
-    protected void finalize() throws Throwable {
-        c = null;
-        super.finalize();
+    // Longs and doubles are loaded with LDC2_W, a dynamic one takes one pool entry but is loaded the same way
+    private boolean isCategory2() {
+        return c.isLong() || (c instanceof ConstantDynamic && ((ConstantDynamic) c).isCategory2());
+    }
+
+    void encode(ByteWriter w) {
+        if (isCategory2()) {
+            w.u1(Constants.LDC2_W);
+            w.u2(index);
+        } else if (index > 255) {
+            w.u1(Constants.LDC_W);
+            w.u2(index);
+        } else {
+            w.u1(tag);
+            w.u1(index);
+        }
     }
 }
\ No newline at end of file
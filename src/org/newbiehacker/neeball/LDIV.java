@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LDIV extends Instruction {
+    public static final LDIV INSTANCE = new LDIV();
+
+    public LDIV() {
+        this.tag = Constants.LDIV;
+    }
+
     public String toString() {
         return "ldiv";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
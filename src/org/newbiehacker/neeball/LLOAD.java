@@ -35,10 +35,12 @@ public final class LLOAD extends LoadInstruction {
      */
     public LLOAD(int index) {
         super(index);
+        this.tag = Constants.LLOAD;
     }
 
     LLOAD(int i, boolean b) {
         super(i, b);
+        this.tag = Constants.LLOAD;
     }
 
     public String toString() {
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LMUL extends Instruction {
+    public static final LMUL INSTANCE = new LMUL();
+
+    public LMUL() {
+        this.tag = Constants.LMUL;
+    }
+
     public String toString() {
         return "lmul";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
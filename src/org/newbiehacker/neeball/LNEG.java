@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LNEG extends Instruction {
+    public static final LNEG INSTANCE = new LNEG();
+
+    public LNEG() {
+        this.tag = Constants.LNEG;
+    }
+
     public String toString() {
         return "lneg";
     }
@@ -29,6 +29,7 @@ package org.newbiehacker.neeball;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright 2006 James Lawrence
@@ -40,10 +41,12 @@ import java.util.List;
 public final class LOOKUPSWITCH extends Switch {
     LOOKUPSWITCH(int default_offset, int[] matches, int[] offsets) {
         super(default_offset, matches, offsets);
+        this.tag = Constants.LOOKUPSWITCH;
     }
 
     public LOOKUPSWITCH(int default_index, List<Integer> matches, List<Integer> indices) {
         super(default_index, matches, indices);
+        this.tag = Constants.LOOKUPSWITCH;
     }
 
     public String toString() {
@@ -61,4 +64,15 @@ public final class LOOKUPSWITCH extends Switch {
     public int getLength() {
         return 9 + match_pairs.size() * 8;
     }
+
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.align();
+        w.s4(branchoffset);
+        w.s4(match_pair_offsets.size());
+        for (Map.Entry<Integer, Integer> e : match_pair_offsets.entrySet()) {
+            w.s4(e.getKey());
+            w.s4(e.getValue());
+        }
+    }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LOR extends Instruction {
+    public static final LOR INSTANCE = new LOR();
+
+    public LOR() {
+        this.tag = Constants.LOR;
+    }
+
     public String toString() {
         return "lor";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LREM extends Instruction {
+    public static final LREM INSTANCE = new LREM();
+
+    public LREM() {
+        this.tag = Constants.LREM;
+    }
+
     public String toString() {
         return "lrem";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LRETURN extends Instruction implements TerminatingInstruction {
+    public static final LRETURN INSTANCE = new LRETURN();
+
+    public LRETURN() {
+        this.tag = Constants.LRETURN;
+    }
+
     public String toString() {
         return "lreturn";
     }
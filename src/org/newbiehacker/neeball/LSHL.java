@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LSHL extends Instruction {
+    public static final LSHL INSTANCE = new LSHL();
+
+    public LSHL() {
+        this.tag = Constants.LSHL;
+    }
+
     public String toString() {
         return "lshl";
     }
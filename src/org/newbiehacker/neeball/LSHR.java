@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LSHR extends Instruction {
+    public static final LSHR INSTANCE = new LSHR();
+
+    public LSHR() {
+        this.tag = Constants.LSHR;
+    }
+
     public String toString() {
         return "lshr";
     }
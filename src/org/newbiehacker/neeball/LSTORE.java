@@ -35,10 +35,12 @@ public final class LSTORE extends StoreInstruction {
      */
     public LSTORE(int index) {
         super(index);
+        this.tag = Constants.LSTORE;
     }
 
     LSTORE(int i, boolean b) {
         super(i, b);
+        this.tag = Constants.LSTORE;
     }
 
     public String toString() {
@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LSUB extends Instruction {
+    public static final LSUB INSTANCE = new LSUB();
+
+    public LSUB() {
+        this.tag = Constants.LSUB;
+    }
+
     public String toString() {
         return "lsub";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class LUSHR extends Instruction {
+    public static final LUSHR INSTANCE = new LUSHR();
+
+    public LUSHR() {
+        this.tag = Constants.LUSHR;
+    }
+
     public String toString() {
         return "lushr";
     }
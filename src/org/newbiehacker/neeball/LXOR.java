@@ -28,11 +28,17 @@
 package org.newbiehacker.neeball;
 
 public final class LXOR extends Instruction {
+    public static final LXOR INSTANCE = new LXOR();
+
+    public LXOR() {
+        this.tag = Constants.LXOR;
+    }
+
     public String toString() {
         return "lxor";
     }
 
     public int getStackChange() {
-        return -1;
+        return -2;
     }
 }
\ No newline at end of file
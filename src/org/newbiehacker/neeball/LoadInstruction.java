@@ -44,7 +44,7 @@ public abstract class LoadInstruction extends Instruction implements IWideInstru
     }
 
     public int getLength() {
-        return 1 + (index > 3? 1: 0) + (isWide()? 1: 0);
+        return isWide()? 4: index > 3? 2: 1;
     }
 
     public int getStackChange() {
@@ -54,4 +54,18 @@ public abstract class LoadInstruction extends Instruction implements IWideInstru
     public final boolean isWide() {
         return wide || index > 255;
     }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (index > 0xffff)
+            throw new EncodingException("Local variable index out of range for " + this);
+        if (isWide()) {
+            w.u1(Constants.WIDE);
+            w.u1(tag);
+            w.u2(index);
+        } else if (index > 3) {
+            w.u1(tag);
+            w.u1(index);
+        } else
+            w.u1(Constants.ILOAD_0 + (tag - Constants.ILOAD) * 4 + index);
+    }
 }
\ No newline at end of file
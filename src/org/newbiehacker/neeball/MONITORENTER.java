@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class MONITORENTER extends Instruction {
+    public static final MONITORENTER INSTANCE = new MONITORENTER();
+
+    public MONITORENTER() {
+        this.tag = Constants.MONITORENTER;
+    }
+
     public String toString() {
         return "monitorenter";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class MONITOREXIT extends Instruction {
+    public static final MONITOREXIT INSTANCE = new MONITOREXIT();
+
+    public MONITOREXIT() {
+        this.tag = Constants.MONITOREXIT;
+    }
+
     public String toString() {
         return "monitorexit";
     }
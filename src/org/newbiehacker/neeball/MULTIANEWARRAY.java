@@ -47,6 +47,7 @@ public final class MULTIANEWARRAY extends Instruction {
     public MULTIANEWARRAY(String type, int dimensions) {
         this.type = type;
         this.dimensions = dimensions;
+        this.tag = Constants.MULTIANEWARRAY;
     }
 
     public String toString() {
@@ -61,8 +62,9 @@ public final class MULTIANEWARRAY extends Instruction {
         return -dimensions + 1;
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        type = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
+        w.u1(dimensions);
     }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>A list of the fields or methods of a class that keeps a hash index of them by name and descriptor</p>
+ * <p>The index is built when a member is first looked up and rebuilt on the next lookup after the list is changed.
+ * A member renamed in place is never returned under its old name, and a lookup the index misses searches the whole
+ * list before giving up, so it's found under its new one too</p>
+ */
+abstract class MemberList<T> extends ArrayList<T> {
+    private static final long serialVersionUID = 1L;
+    // modCount as of the last time the index was built, -1 if it hasn't been
+    private int indexed = -1;
+    private HashMap<String, ArrayList<T>> by_name;
+    private HashMap<String, ArrayList<T>> by_descriptor;
+
+    MemberList() {
+    }
+
+    MemberList(int capacity) {
+        super(capacity);
+    }
+
+    abstract String getName(T member);
+
+    abstract String getDescriptor(T member);
+
+    // ArrayList doesn't count a set as a modification, but it changes what the index should hold
+    public T set(int index, T element) {
+        modCount++;
+        return super.set(index, element);
+    }
+
+    /**
+     * <p>Forgets the index, so the next lookup rebuilds it</p>
+     */
+    void reindex() {
+        indexed = -1;
+    }
+
+    private void index() {
+        if (indexed == modCount)
+            return;
+        by_name = new HashMap<>(size() * 2);
+        by_descriptor = null;
+        for (T member : this)
+            add(by_name, getName(member), member);
+        indexed = modCount;
+    }
+
+    private HashMap<String, ArrayList<T>> byDescriptor() {
+        index();
+        if (by_descriptor == null) {
+            by_descriptor = new HashMap<>(size() * 2);
+            for (T member : this)
+                add(by_descriptor, getDescriptor(member), member);
+        }
+        return by_descriptor;
+    }
+
+    private static <T> void add(HashMap<String, ArrayList<T>> map, String key, T member) {
+        ArrayList<T> l = map.get(key);
+        if (l == null)
+            map.put(key, l = new ArrayList<>(1));
+        l.add(member);
+    }
+
+    T get(String name, String descriptor) {
+        index();
+        ArrayList<T> l = by_name.get(name);
+        if (l == null)
+            return scan(name, descriptor);
+        for (T member : l) {
+            if (!name.equals(getName(member))) {
+                // Renamed since the index was built
+                reindex();
+                return get(name, descriptor);
+            }
+            if (descriptor.equals(getDescriptor(member)))
+                return member;
+        }
+        return scan(name, descriptor);
+    }
+
+    // Finds a member renamed in place since the index was built, a lookup that finds one has the index rebuilt
+    private T scan(String name, String descriptor) {
+        for (T member : this)
+            if ((name == null || name.equals(getName(member))) && (descriptor == null || descriptor.equals(getDescriptor(member)))) {
+                reindex();
+                return member;
+            }
+        return null;
+    }
+
+    List<T> getByName(String name) {
+        index();
+        ArrayList<T> l = by_name.get(name);
+        if (l == null)
+            return scan(name, null) == null ? null : getByName(name);
+        for (T member : l)
+            if (!name.equals(getName(member))) {
+                reindex();
+                return getByName(name);
+            }
+        return new ArrayList<>(l);
+    }
+
+    List<T> getByDescriptor(String descriptor) {
+        ArrayList<T> l = byDescriptor().get(descriptor);
+        if (l == null)
+            return scan(null, descriptor) == null ? null : getByDescriptor(descriptor);
+        for (T member : l)
+            if (!descriptor.equals(getDescriptor(member))) {
+                reindex();
+                return getByDescriptor(descriptor);
+            }
+        return new ArrayList<>(l);
+    }
+
+    static final class Fields extends MemberList<Field> {
+        private static final long serialVersionUID = 1L;
+
+        Fields() {
+        }
+
+        Fields(int capacity) {
+            super(capacity);
+        }
+
+        String getName(Field member) {
+            return member.name;
+        }
+
+        String getDescriptor(Field member) {
+            return member.descriptor;
+        }
+    }
+
+    static final class Methods extends MemberList<Method> {
+        private static final long serialVersionUID = 1L;
+
+        Methods() {
+        }
+
+        Methods(int capacity) {
+            super(capacity);
+        }
+
+        String getName(Method member) {
+            return member.name;
+        }
+
+        String getDescriptor(Method member) {
+            return member.descriptor;
+        }
+    }
+}
\ No newline at end of file
@@ -164,6 +164,8 @@ public final class Method implements Comparable<Method> {
     public int max_stack;
     /**
      * <p>This should be null if this method is abstract, if not it contains the code for this method</p>
+     * <p>Instructions without operands are decoded as their shared <code>INSTANCE</code>, so the same object can appear
+     * more than once, instructions should be edited by their index rather than found with <code>indexOf</code></p>
      */
     public List<Instruction> code;
     /**
@@ -184,6 +186,40 @@ public final class Method implements Comparable<Method> {
      */
     public String signature;
     int signature_index;
+    /**
+     * <p>The attributes of this method that aren't flattened into it, as they were read (or null if none)</p>
+     */
+    public List<Attribute> attributes;
+    /**
+     * <p>The attributes of the Code attribute of this method, as they were read (or null if none)</p>
+     * <p>Most of these refer to offsets into the code, once it has moved the line number and local variable tables are
+     * moved with it, a StackMapTable is only kept while the instructions are still the ones read and the rest are
+     * dropped</p>
+     */
+    public List<Attribute> code_attributes;
+    // Offsets of the instructions as they were read, which the offsets in code_attributes refer to
+    private int[] read_offsets;
+    // Whether the last layout() laid the code out differently than it was read
+    boolean moved;
+    // The instructions as they were read, the code as it was last changed through this class and the index each of
+    // its instructions was read at (-1 if added), so offsets that were read can be moved to where they're written
+    private Instruction[] read_code;
+    private Instruction[] tracked_code;
+    private int[] origins;
+    // Worked out while preparing to write the code, so the length of the class file is known before any of it is written
+    int write_code_length;
+    int write_max_stack;
+    int write_max_locals;
+    List<Attribute> write_code_attributes;
+    // Offsets of the instructions as they were read, only kept between setBytes and setIndices
+    private int[] decoded_offsets;
+    // The Code attribute of a lazily read method, as a slice of the class file, and the pool it refers to, kept until code is first asked for
+    byte[] raw_code;
+    int raw_offset;
+    int raw_length;
+    private ConstantPool raw_pool;
+    // The editor handed out by edit(), applied and finished the next time the code is used any other way
+    CodeEditor editor;
 
     /**
      * <p>Constructs a new <code>Method</code> with every field set</p>
@@ -213,7 +249,7 @@ public final class Method implements Comparable<Method> {
         this.synthetic = synthetic;
         if(!is_abstract && !is_native) {
             this.code = new ArrayList<>();
-            this.exception_table = new LinkedList<>();
+            this.exception_table = new ArrayList<>();
         }
     }
 
@@ -252,686 +288,940 @@ public final class Method implements Comparable<Method> {
         return i;
     }
 
+    /**
+     * <p>Returns the code of this method, decoding it first if this method was read lazily</p>
+     *
+     * @return the same list as <code>code</code>, null if this method has no code
+     * @throws IllegalStateException if the code of a lazily read method can't be decoded
+     */
+    public List<Instruction> getCode() {
+        decode();
+        return code;
+    }
+
+    /**
+     * <p>Returns the exception table of this method, decoding the code first if this method was read lazily</p>
+     *
+     * @return the same list as <code>exception_table</code>, null if this method has no code
+     * @throws IllegalStateException if the code of a lazily read method can't be decoded
+     */
+    public List<ExceptionTableEntry> getExceptionTable() {
+        decode();
+        return exception_table;
+    }
+
+    /**
+     * <p>Whether the code of this method has been decoded, only false for lazily read methods that haven't been used yet</p>
+     * <p>Until then <code>code</code> and <code>exception_table</code> are null and the method is written back exactly as it was read</p>
+     *
+     * @return false if the code of this method is still held undecoded
+     */
+    public boolean isDecoded() {
+        return raw_code == null;
+    }
+
+    /**
+     * <p>Returns the code of a lazily read method as a <code>CompactCode</code>, without decoding it</p>
+     * <p>This is only available while the code is held undecoded, read the class lazily to use it</p>
+     *
+     * @return the code of this method, null if it has no code or it has already been decoded
+     * @throws IllegalStateException if the code can't be read
+     */
+    public CompactCode getCompactCode() {
+        if (raw_code == null)
+            return null;
+        try {
+            return new CompactCode(raw_code, raw_offset, raw_length, raw_pool);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't read the code of " + this, e);
+        }
+    }
+
+    /**
+     * <p>Returns a scanner over the code of a lazily read method, which reads straight from the bytes of the class</p>
+     * <p>This is only available while the code is held undecoded, read the class lazily to use it</p>
+     *
+     * @return a scanner before the first instruction, null if this method has no code or it has already been decoded
+     */
+    public CodeScanner getCodeScanner() {
+        if (raw_code == null)
+            return null;
+        ByteReader r = new ByteReader(raw_code, raw_offset, raw_length);
+        r.pos += 4;
+        try {
+            int code_length = r.s4();
+            r.require(code_length, "code");
+            return new CodeScanner(raw_code, r.pos, code_length, raw_pool);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't read the code of " + this, e);
+        }
+    }
+
+    /**
+     * <p>Starts editing the code of this method through a <code>CodeEditor</code>, which costs the same to insert and
+     * remove with wherever it happens and keeps branches and the exception table pointing where they should</p>
+     * <p>Any editor handed out before is finished first</p>
+     *
+     * @return the editor
+     * @throws IllegalStateException if this method has no code or its code can't be decoded
+     */
+    public CodeEditor edit() {
+        decode();
+        if (code == null)
+            throw new IllegalStateException(this + " has no code");
+        return editor = new CodeEditor(this);
+    }
+
+    /**
+     * <p>Applies and finishes the editor handed out by <code>edit()</code>, if there is one</p>
+     */
+    void finishEditing() {
+        if (editor != null) {
+            CodeEditor e = editor;
+            editor = null;
+            e.apply();
+        }
+    }
+
+    private void decode() {
+        finishEditing();
+        if (raw_code == null)
+            return;
+        try {
+            setCode(raw_code, raw_offset, raw_length, raw_pool);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't decode the code of " + this, e);
+        }
+        raw_code = null;
+        raw_pool = null;
+    }
+
+    /**
+     * <p>Keeps the body of a Code attribute to be decoded when the code is first asked for</p>
+     * <p>The attribute isn't copied, so the array mustn't change until then</p>
+     *
+     * @param b   the array holding the attribute
+     * @param off the offset of the attribute, after its name and length
+     * @param len the length of the attribute
+     * @param cp  the constant pool the attribute refers to
+     * @throws IOException if the attribute is too short to hold max_stack
+     */
+    void setRawCode(byte[] b, int off, int len, ConstantPool cp) throws IOException {
+        max_stack = new ByteReader(b, off, len).u2();
+        code = null;
+        exception_table = null;
+        raw_code = b;
+        raw_offset = off;
+        raw_length = len;
+        raw_pool = cp;
+    }
+
+    /**
+     * <p>Decodes the body of a Code attribute into <code>code</code> and <code>exception_table</code>, straight from
+     * the array holding it</p>
+     *
+     * @param b   the array holding the attribute
+     * @param off the offset of the attribute, after its name and length
+     * @param len the length of the attribute
+     * @param cp  the constant pool the attribute refers to
+     * @throws IOException if the attribute is malformed
+     */
+    void setCode(byte[] b, int off, int len, ConstantPool cp) throws IOException {
+        ByteReader r = new ByteReader(b, off, len);
+        max_stack = r.u2();
+        // Skip max_locals xD
+        r.u2();
+        int code_length = r.s4();
+        r.require(code_length, "code");
+        code = new ArrayList<>();
+        setBytes(b, r.pos, code_length, cp);
+        read_offsets = decoded_offsets;
+        read_code = code.toArray(new Instruction[code.size()]);
+        int[] identity = new int[read_code.length];
+        for (int i = 0; i < identity.length; i++)
+            identity[i] = i;
+        track(identity);
+        r.pos += code_length;
+        int exception_table_length = r.u2();
+        exception_table = new ArrayList<>(exception_table_length);
+        for (int i = 0; i < exception_table_length; i++) {
+            ExceptionTableEntry ete = new ExceptionTableEntry();
+            ete.start_pc = r.u2();
+            ete.end_pc = r.u2();
+            ete.handler_pc = r.u2();
+            int catch_type = r.u2();
+            ete.catch_type = catch_type == 0 ? null : ((ConstantClass) cp.get(catch_type)).value;
+            exception_table.add(ete);
+        }
+        setIndices();
+        int attribute_count = r.u2();
+        code_attributes = attribute_count == 0 ? null : new ArrayList<Attribute>(attribute_count);
+        for (int i = 0; i < attribute_count; i++) {
+            String name = ((ConstantUtf8) cp.get(r.u2())).getValue();
+            int length = r.s4();
+            r.require(length, name + " attribute");
+            code_attributes.add(new Attribute(name, Arrays.copyOfRange(b, r.pos, r.pos + length), cp));
+            r.pos += length;
+        }
+    }
+
     void setBytes(byte[] b, ConstantPool cp) throws IOException {
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(b));
-        while (dis.available() > 0) {
-            int o = dis.readUnsignedByte();
-            if (o == 0x32) {
-                code.add(new AALOAD());
-            } else if (o == 0x53) {
-                code.add(new AASTORE());
-            } else if (o == 0x1) {
-                code.add(new ACONST_NULL());
-            } else if (o == 0x19) {
-                code.add(new ALOAD(dis.readUnsignedByte()));
-            } else if (o == 0x2a) {
-                code.add(new ALOAD(0));
-            } else if (o == 0X2b) {
-                code.add(new ALOAD(1));
-            } else if (o == 0x2c) {
-                code.add(new ALOAD(2));
-            } else if (o == 0x2d) {
-                code.add(new ALOAD(3));
-            } else if (o == 0xbd) {
-                code.add(new ANEWARRAY(((ConstantClass) cp.get(dis.readUnsignedShort())).value));
-            } else if (o == 0xb0) {
-                code.add(new ARETURN());
-            } else if (o == 0xbe) {
-                code.add(new ARRAYLENGTH());
-            } else if (o == 0x3a) {
-                code.add(new ASTORE(dis.readUnsignedByte()));
-            } else if (o == 0x4b) {
-                code.add(new ASTORE(0));
-            } else if (o == 0x4c) {
-                code.add(new ASTORE(1));
-            } else if (o == 0x4d) {
-                code.add(new ASTORE(2));
-            } else if (o == 0x4e) {
-                code.add(new ASTORE(3));
-            } else if (o == 0xbf) {
-                code.add(new ATHROW());
-            } else if (o == 0x33) {
-                code.add(new BALOAD());
-            } else if (o == 0x54) {
-                code.add(new BASTORE());
-            } else if (o == 0x10) {
-                code.add(new BIPUSH(dis.readByte()));
-            } else if (o == 0x34) {
-                code.add(new CALOAD());
-            } else if (o == 0x55) {
-                code.add(new CASTORE());
-            } else if (o == 0xc0) {
-                code.add(new CHECKCAST(((ConstantClass) cp.get(dis.readUnsignedShort())).value));
-            } else if (o == 0x90) {
-                code.add(new D2F());
-            } else if (o == 0x8e) {
-                code.add(new D2I());
-            } else if (o == 0x8f) {
-                code.add(new D2L());
-            } else if (o == 0x63) {
-                code.add(new DADD());
-            } else if (o == 0x31) {
-                code.add(new DALOAD());
-            } else if (o == 0x52) {
-                code.add(new DASTORE());
-            } else if (o == 0x98) {
-                code.add(new DCMPG());
-            } else if (o == 0x97) {
-                code.add(new DCMPL());
-            } else if (o == 0xe) {
-                code.add(new DCONST_0());
-            } else if (o == 0xf) {
-                code.add(new DCONST_1());
-            } else if (o == 0x6f) {
-                code.add(new DDIV());
-            } else if (o == 0x18) {
-                code.add(new DLOAD(dis.readUnsignedByte()));
-            } else if (o == 0x26) {
-                code.add(new DLOAD(0));
-            } else if (o == 0x27) {
-                code.add(new DLOAD(1));
-            } else if (o == 0x28) {
-                code.add(new DLOAD(2));
-            } else if (o == 0x29) {
-                code.add(new DLOAD(3));
-            } else if (o == 0x6b) {
-                code.add(new DMUL());
-            } else if (o == 0x77) {
-                code.add(new DNEG());
-            } else if (o == 0x73) {
-                code.add(new DREM());
-            } else if (o == 0xaf) {
-                code.add(new DRETURN());
-            } else if (o == 0x39) {
-                code.add(new DSTORE(dis.readUnsignedByte()));
-            } else if (o == 0x47) {
-                code.add(new DSTORE(0));
-            } else if (o == 0x48) {
-                code.add(new DSTORE(1));
-            } else if (o == 0x49) {
-                code.add(new DSTORE(2));
-            } else if (o == 0x4a) {
-                code.add(new DSTORE(3));
-            } else if (o == 0x67) {
-                code.add(new DSUB());
-            } else if (o == 0x59) {
-                code.add(new DUP());
-            } else if (o == 0x5a) {
-                code.add(new DUP_X1());
-            } else if (o == 0x5b) {
-                code.add(new DUP_X2());
-            } else if (o == 0x5c) {
-                code.add(new DUP2());
-            } else if (o == 0x5d) {
-                code.add(new DUP2_X1());
-            } else if (o == 0x5e) {
-                code.add(new DUP2_X2());
-            } else if (o == 0x8d) {
-                code.add(new F2D());
-            } else if (o == 0x8b) {
-                code.add(new F2I());
-            } else if (o == 0x8c) {
-                code.add(new F2L());
-            } else if (o == 0x62) {
-                code.add(new FADD());
-            } else if (o == 0x30) {
-                code.add(new FALOAD());
-            } else if (o == 0x51) {
-                code.add(new FASTORE());
-            } else if (o == 0x96) {
-                code.add(new FCMPG());
-            } else if (o == 0x95) {
-                code.add(new FCMPL());
-            } else if (o == 0xb) {
-                code.add(new FCONST_0());
-            } else if (o == 0xc) {
-                code.add(new FCONST_1());
-            } else if (o == 0xd) {
-                code.add(new FCONST_2());
-            } else if (o == 0x6e) {
-                code.add(new FDIV());
-            } else if (o == 0x17) {
-                code.add(new FLOAD(dis.readUnsignedByte()));
-            } else if (o == 0x22) {
-                code.add(new FLOAD(0));
-            } else if (o == 0x23) {
-                code.add(new FLOAD(1));
-            } else if (o == 0x24) {
-                code.add(new FLOAD(2));
-            } else if (o == 0x25) {
-                code.add(new FLOAD(3));
-            } else if (o == 0x6a) {
-                code.add(new FMUL());
-            } else if (o == 0x76) {
-                code.add(new FNEG());
-            } else if (o == 0x72) {
-                code.add(new FREM());
-            } else if (o == 0xae) {
-                code.add(new FRETURN());
-            } else if (o == 0x38) {
-                code.add(new FSTORE(dis.readUnsignedByte()));
-            } else if (o == 0x43) {
-                code.add(new FSTORE(0));
-            } else if (o == 0x44) {
-                code.add(new FSTORE(1));
-            } else if (o == 0x45) {
-                code.add(new FSTORE(2));
-            } else if (o == 0x46) {
-                code.add(new FSTORE(3));
-            } else if (o == 0x66) {
-                code.add(new FSUB());
-            } else if (o == 0xb4) {
-                code.add(new GETFIELD((ConstantFieldref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xb2) {
-                code.add(new GETSTATIC((ConstantFieldref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xa7) {
-                GOTO g = new GOTO();
-                g.branchoffset = dis.readShort();
-                code.add(g);
-            } else if (o == 0xc8) {
-                GOTO g = new GOTO();
-                g.branchoffset = dis.readInt();
-                code.add(g);
-            } else if (o == 0x91) {
-                code.add(new I2B());
-            } else if (o == 0x92) {
-                code.add(new I2C());
-            } else if (o == 0x87) {
-                code.add(new I2D());
-            } else if (o == 0x86) {
-                code.add(new I2F());
-            } else if (o == 0x85) {
-                code.add(new I2L());
-            } else if (o == 0x93) {
-                code.add(new I2S());
-            } else if (o == 0x60) {
-                code.add(new IADD());
-            } else if (o == 0x2e) {
-                code.add(new IALOAD());
-            } else if (o == 0x7e) {
-                code.add(new IAND());
-            } else if (o == 0x4f) {
-                code.add(new IASTORE());
-            } else if (o == 0x2) {
-                code.add(new ICONST_M1());
-            } else if (o == 0x3) {
-                code.add(new ICONST_0());
-            } else if (o == 0x4) {
-                code.add(new ICONST_1());
-            } else if (o == 0x5) {
-                code.add(new ICONST_2());
-            } else if (o == 0x6) {
-                code.add(new ICONST_3());
-            } else if (o == 0x7) {
-                code.add(new ICONST_4());
-            } else if (o == 0x8) {
-                code.add(new ICONST_5());
-            } else if (o == 0x6c) {
-                code.add(new IDIV());
-            } else if (o == 0xa5) {
-                IF_ACMPEQ i = new IF_ACMPEQ();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa6) {
-                IF_ACMPNE i = new IF_ACMPNE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9f) {
-                IF_ICMPEQ i = new IF_ICMPEQ();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa0) {
-                IF_ICMPNE i = new IF_ICMPNE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa1) {
-                IF_ICMPLT i = new IF_ICMPLT();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa2) {
-                IF_ICMPGE i = new IF_ICMPGE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa3) {
-                IF_ICMPGT i = new IF_ICMPGT();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xa4) {
-                IF_ICMPLE i = new IF_ICMPLE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x99) {
-                IFEQ i = new IFEQ();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9a) {
-                IFNE i = new IFNE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9b) {
-                IFLT i = new IFLT();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9c) {
-                IFGE i = new IFGE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9d) {
-                IFGT i = new IFGT();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x9e) {
-                IFLE i = new IFLE();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xc7) {
-                IFNONNULL i = new IFNONNULL();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0xc6) {
-                IFNULL i = new IFNULL();
-                i.branchoffset = dis.readShort();
-                code.add(i);
-            } else if (o == 0x84) {
-                code.add(new IINC(dis.readUnsignedByte(), dis.readByte()));
-            } else if (o == 0x15) {
-                code.add(new ILOAD(dis.readUnsignedByte()));
-            } else if (o == 0x1a) {
-                code.add(new ILOAD(0));
-            } else if (o == 0x1b) {
-                code.add(new ILOAD(1));
-            } else if (o == 0x1c) {
-                code.add(new ILOAD(2));
-            } else if (o == 0x1d) {
-                code.add(new ILOAD(3));
-            } else if (o == 0x68) {
-                code.add(new IMUL());
-            } else if (o == 0x74) {
-                code.add(new INEG());
-            } else if (o == 0xc1) {
-                code.add(new INSTANCEOF(((ConstantClass) cp.get(dis.readUnsignedShort())).value));
-            } else if (o == 0xb9) {
-                code.add(new INVOKEINTERFACE((ConstantInterfaceMethodref) cp.get(dis.readUnsignedShort())));
-                dis.readUnsignedByte(); // Read parameter count
-                dis.readByte(); // ConstantValue 0, used internally
-            } else if (o == 0xb7) {
-                code.add(new INVOKESPECIAL((ConstantMethodref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xb8) {
-                code.add(new INVOKESTATIC((ConstantMethodref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xb6) {
-                code.add(new INVOKEVIRTUAL((ConstantMethodref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0x80) {
-                code.add(new IOR());
-            } else if (o == 0x70) {
-                code.add(new IREM());
-            } else if (o == 0xac) {
-                code.add(new IRETURN());
-            } else if (o == 0x78) {
-                code.add(new ISHL());
-            } else if (o == 0x7a) {
-                code.add(new ISHR());
-            } else if (o == 0x36) {
-                code.add(new ISTORE(dis.readUnsignedByte()));
-            } else if (o == 0x3b) {
-                code.add(new ISTORE(0));
-            } else if (o == 0x3c) {
-                code.add(new ISTORE(1));
-            } else if (o == 0x3d) {
-                code.add(new ISTORE(2));
-            } else if (o == 0x3e) {
-                code.add(new ISTORE(3));
-            } else if (o == 0x64) {
-                code.add(new ISUB());
-            } else if (o == 0x7c) {
-                code.add(new IUSHR());
-            } else if (o == 0x82) {
-                code.add(new IXOR());
-            } else if (o == 0xa8) {
-                JSR j = new JSR();
-                j.branchoffset = dis.readShort();
-                code.add(j);
-            } else if (o == 0xc9) {
-                JSR j = new JSR();
-                j.branchoffset = dis.readInt();
-                code.add(j);
-            } else if (o == 0x8a) {
-                code.add(new L2D());
-            } else if (o == 0x89) {
-                code.add(new L2F());
-            } else if (o == 0x88) {
-                code.add(new L2I());
-            } else if (o == 0x61) {
-                code.add(new LADD());
-            } else if (o == 0x2f) {
-                code.add(new LALOAD());
-            } else if (o == 0x7f) {
-                code.add(new LAND());
-            } else if (o == 0x50) {
-                code.add(new LASTORE());
-            } else if (o == 0x94) {
-                code.add(new LCMP());
-            } else if (o == 0x9) {
-                code.add(new LCONST_0());
-            } else if (o == 0xa) {
-                code.add(new LCONST_1());
-            } else if (o == 0x12) {
-                code.add(new LDC(cp.get(dis.readUnsignedByte())));
-            } else if (o == 0x13) {
-                code.add(new LDC(cp.get(dis.readUnsignedShort())));
-            } else if (o == 0x14) {
-                code.add(new LDC(cp.get(dis.readUnsignedShort())));
-            } else if (o == 0x6d) {
-                code.add(new LDIV());
-            } else if (o == 0x16) {
-                code.add(new LLOAD(dis.readUnsignedByte()));
-            } else if (o == 0x1e) {
-                code.add(new LLOAD(0));
-            } else if (o == 0x1f) {
-                code.add(new LLOAD(1));
-            } else if (o == 0x20) {
-                code.add(new LLOAD(2));
-            } else if (o == 0x21) {
-                code.add(new LLOAD(3));
-            } else if (o == 0x69) {
-                code.add(new LMUL());
-            } else if (o == 0x75) {
-                code.add(new LNEG());
-            } else if (o == 0x81) {
-                code.add(new LOR());
-            } else if (o == 0xab) {
-                int index = getOffset(code.size());
-                int padding = getPadding(index);
-                for (int i = 0; i < padding; i++)
-                    dis.readByte();
-                int default_offset = dis.readInt();
-                int length = dis.readInt();
+        setBytes(b, 0, b.length, cp);
+    }
+
+    void setBytes(byte[] b, int off, int len, ConstantPool cp) throws IOException {
+        ByteReader r = new ByteReader(b, off, len);
+        int[] starts = new int[len + 1];
+        int count = 0;
+        Instruction i;
+        while (r.hasMore()) {
+            starts[count++] = r.offset();
+            i = readInstruction(r, cp);
+            if (i == null) {
+                StringBuilder sb = new StringBuilder("Unknown Instruction: ").append(Integer.toHexString(b[r.pos - 1] & 0xff)).append("\nCode dump:\n");
+                for (int i1 = 0; i1 < code.size(); i1++) {
+                    sb.append(i1).append("\t").append(code.get(i1)).append("\n");
+                }
+                throw new IOException(sb.toString());
+            }
+            code.add(i);
+        }
+        starts[count] = len;
+        decoded_offsets = Arrays.copyOf(starts, count + 1);
+    }
+
+    /**
+     * <p>Decodes the instruction at the cursor of the given reader</p>
+     *
+     * @param r  the reader, positioned at an opcode
+     * @param cp the constant pool the operands refer to
+     * @return the decoded instruction or null if the opcode is unknown
+     * @throws IOException if the code ends before the operands do or is otherwise malformed
+     */
+    static Instruction readInstruction(ByteReader r, ConstantPool cp) throws IOException {
+        int o = r.u1();
+        switch (o) {
+            case Constants.NOP:
+                return NOP.INSTANCE;
+            case Constants.ACONST_NULL:
+                return ACONST_NULL.INSTANCE;
+            case Constants.ICONST_M1:
+                return ICONST_M1.INSTANCE;
+            case Constants.ICONST_0:
+                return ICONST_0.INSTANCE;
+            case Constants.ICONST_1:
+                return ICONST_1.INSTANCE;
+            case Constants.ICONST_2:
+                return ICONST_2.INSTANCE;
+            case Constants.ICONST_3:
+                return ICONST_3.INSTANCE;
+            case Constants.ICONST_4:
+                return ICONST_4.INSTANCE;
+            case Constants.ICONST_5:
+                return ICONST_5.INSTANCE;
+            case Constants.LCONST_0:
+                return LCONST_0.INSTANCE;
+            case Constants.LCONST_1:
+                return LCONST_1.INSTANCE;
+            case Constants.FCONST_0:
+                return FCONST_0.INSTANCE;
+            case Constants.FCONST_1:
+                return FCONST_1.INSTANCE;
+            case Constants.FCONST_2:
+                return FCONST_2.INSTANCE;
+            case Constants.DCONST_0:
+                return DCONST_0.INSTANCE;
+            case Constants.DCONST_1:
+                return DCONST_1.INSTANCE;
+            case Constants.BIPUSH:
+                return new BIPUSH(r.s1());
+            case Constants.SIPUSH:
+                return new SIPUSH(r.s2());
+            case Constants.LDC:
+                return new LDC(cp.get(r.u1()));
+            case Constants.LDC_W:
+                return new LDC(cp.get(r.u2()));
+            case Constants.LDC2_W:
+                return new LDC(cp.get(r.u2()));
+            case Constants.ILOAD:
+                return new ILOAD(r.u1());
+            case Constants.LLOAD:
+                return new LLOAD(r.u1());
+            case Constants.FLOAD:
+                return new FLOAD(r.u1());
+            case Constants.DLOAD:
+                return new DLOAD(r.u1());
+            case Constants.ALOAD:
+                return new ALOAD(r.u1());
+            case Constants.ILOAD_0:
+                return new ILOAD(0);
+            case Constants.ILOAD_1:
+                return new ILOAD(1);
+            case Constants.ILOAD_2:
+                return new ILOAD(2);
+            case Constants.ILOAD_3:
+                return new ILOAD(3);
+            case Constants.LLOAD_0:
+                return new LLOAD(0);
+            case Constants.LLOAD_1:
+                return new LLOAD(1);
+            case Constants.LLOAD_2:
+                return new LLOAD(2);
+            case Constants.LLOAD_3:
+                return new LLOAD(3);
+            case Constants.FLOAD_0:
+                return new FLOAD(0);
+            case Constants.FLOAD_1:
+                return new FLOAD(1);
+            case Constants.FLOAD_2:
+                return new FLOAD(2);
+            case Constants.FLOAD_3:
+                return new FLOAD(3);
+            case Constants.DLOAD_0:
+                return new DLOAD(0);
+            case Constants.DLOAD_1:
+                return new DLOAD(1);
+            case Constants.DLOAD_2:
+                return new DLOAD(2);
+            case Constants.DLOAD_3:
+                return new DLOAD(3);
+            case Constants.ALOAD_0:
+                return new ALOAD(0);
+            case Constants.ALOAD_1:
+                return new ALOAD(1);
+            case Constants.ALOAD_2:
+                return new ALOAD(2);
+            case Constants.ALOAD_3:
+                return new ALOAD(3);
+            case Constants.IALOAD:
+                return IALOAD.INSTANCE;
+            case Constants.LALOAD:
+                return LALOAD.INSTANCE;
+            case Constants.FALOAD:
+                return FALOAD.INSTANCE;
+            case Constants.DALOAD:
+                return DALOAD.INSTANCE;
+            case Constants.AALOAD:
+                return AALOAD.INSTANCE;
+            case Constants.BALOAD:
+                return BALOAD.INSTANCE;
+            case Constants.CALOAD:
+                return CALOAD.INSTANCE;
+            case Constants.SALOAD:
+                return SALOAD.INSTANCE;
+            case Constants.ISTORE:
+                return new ISTORE(r.u1());
+            case Constants.LSTORE:
+                return new LSTORE(r.u1());
+            case Constants.FSTORE:
+                return new FSTORE(r.u1());
+            case Constants.DSTORE:
+                return new DSTORE(r.u1());
+            case Constants.ASTORE:
+                return new ASTORE(r.u1());
+            case Constants.ISTORE_0:
+                return new ISTORE(0);
+            case Constants.ISTORE_1:
+                return new ISTORE(1);
+            case Constants.ISTORE_2:
+                return new ISTORE(2);
+            case Constants.ISTORE_3:
+                return new ISTORE(3);
+            case Constants.LSTORE_0:
+                return new LSTORE(0);
+            case Constants.LSTORE_1:
+                return new LSTORE(1);
+            case Constants.LSTORE_2:
+                return new LSTORE(2);
+            case Constants.LSTORE_3:
+                return new LSTORE(3);
+            case Constants.FSTORE_0:
+                return new FSTORE(0);
+            case Constants.FSTORE_1:
+                return new FSTORE(1);
+            case Constants.FSTORE_2:
+                return new FSTORE(2);
+            case Constants.FSTORE_3:
+                return new FSTORE(3);
+            case Constants.DSTORE_0:
+                return new DSTORE(0);
+            case Constants.DSTORE_1:
+                return new DSTORE(1);
+            case Constants.DSTORE_2:
+                return new DSTORE(2);
+            case Constants.DSTORE_3:
+                return new DSTORE(3);
+            case Constants.ASTORE_0:
+                return new ASTORE(0);
+            case Constants.ASTORE_1:
+                return new ASTORE(1);
+            case Constants.ASTORE_2:
+                return new ASTORE(2);
+            case Constants.ASTORE_3:
+                return new ASTORE(3);
+            case Constants.IASTORE:
+                return IASTORE.INSTANCE;
+            case Constants.LASTORE:
+                return LASTORE.INSTANCE;
+            case Constants.FASTORE:
+                return FASTORE.INSTANCE;
+            case Constants.DASTORE:
+                return DASTORE.INSTANCE;
+            case Constants.AASTORE:
+                return AASTORE.INSTANCE;
+            case Constants.BASTORE:
+                return BASTORE.INSTANCE;
+            case Constants.CASTORE:
+                return CASTORE.INSTANCE;
+            case Constants.SASTORE:
+                return SASTORE.INSTANCE;
+            case Constants.POP:
+                return POP.INSTANCE;
+            case Constants.POP2:
+                return POP2.INSTANCE;
+            case Constants.DUP:
+                return DUP.INSTANCE;
+            case Constants.DUP_X1:
+                return DUP_X1.INSTANCE;
+            case Constants.DUP_X2:
+                return DUP_X2.INSTANCE;
+            case Constants.DUP2:
+                return DUP2.INSTANCE;
+            case Constants.DUP2_X1:
+                return DUP2_X1.INSTANCE;
+            case Constants.DUP2_X2:
+                return DUP2_X2.INSTANCE;
+            case Constants.SWAP:
+                return SWAP.INSTANCE;
+            case Constants.IADD:
+                return IADD.INSTANCE;
+            case Constants.LADD:
+                return LADD.INSTANCE;
+            case Constants.FADD:
+                return FADD.INSTANCE;
+            case Constants.DADD:
+                return DADD.INSTANCE;
+            case Constants.ISUB:
+                return ISUB.INSTANCE;
+            case Constants.LSUB:
+                return LSUB.INSTANCE;
+            case Constants.FSUB:
+                return FSUB.INSTANCE;
+            case Constants.DSUB:
+                return DSUB.INSTANCE;
+            case Constants.IMUL:
+                return IMUL.INSTANCE;
+            case Constants.LMUL:
+                return LMUL.INSTANCE;
+            case Constants.FMUL:
+                return FMUL.INSTANCE;
+            case Constants.DMUL:
+                return DMUL.INSTANCE;
+            case Constants.IDIV:
+                return IDIV.INSTANCE;
+            case Constants.LDIV:
+                return LDIV.INSTANCE;
+            case Constants.FDIV:
+                return FDIV.INSTANCE;
+            case Constants.DDIV:
+                return DDIV.INSTANCE;
+            case Constants.IREM:
+                return IREM.INSTANCE;
+            case Constants.LREM:
+                return LREM.INSTANCE;
+            case Constants.FREM:
+                return FREM.INSTANCE;
+            case Constants.DREM:
+                return DREM.INSTANCE;
+            case Constants.INEG:
+                return INEG.INSTANCE;
+            case Constants.LNEG:
+                return LNEG.INSTANCE;
+            case Constants.FNEG:
+                return FNEG.INSTANCE;
+            case Constants.DNEG:
+                return DNEG.INSTANCE;
+            case Constants.ISHL:
+                return ISHL.INSTANCE;
+            case Constants.LSHL:
+                return LSHL.INSTANCE;
+            case Constants.ISHR:
+                return ISHR.INSTANCE;
+            case Constants.LSHR:
+                return LSHR.INSTANCE;
+            case Constants.IUSHR:
+                return IUSHR.INSTANCE;
+            case Constants.LUSHR:
+                return LUSHR.INSTANCE;
+            case Constants.IAND:
+                return IAND.INSTANCE;
+            case Constants.LAND:
+                return LAND.INSTANCE;
+            case Constants.IOR:
+                return IOR.INSTANCE;
+            case Constants.LOR:
+                return LOR.INSTANCE;
+            case Constants.IXOR:
+                return IXOR.INSTANCE;
+            case Constants.LXOR:
+                return LXOR.INSTANCE;
+            case Constants.IINC:
+                return new IINC(r.u1(), r.s1());
+            case Constants.I2L:
+                return I2L.INSTANCE;
+            case Constants.I2F:
+                return I2F.INSTANCE;
+            case Constants.I2D:
+                return I2D.INSTANCE;
+            case Constants.L2I:
+                return L2I.INSTANCE;
+            case Constants.L2F:
+                return L2F.INSTANCE;
+            case Constants.L2D:
+                return L2D.INSTANCE;
+            case Constants.F2I:
+                return F2I.INSTANCE;
+            case Constants.F2L:
+                return F2L.INSTANCE;
+            case Constants.F2D:
+                return F2D.INSTANCE;
+            case Constants.D2I:
+                return D2I.INSTANCE;
+            case Constants.D2L:
+                return D2L.INSTANCE;
+            case Constants.D2F:
+                return D2F.INSTANCE;
+            case Constants.I2B:
+                return I2B.INSTANCE;
+            case Constants.I2C:
+                return I2C.INSTANCE;
+            case Constants.I2S:
+                return I2S.INSTANCE;
+            case Constants.LCMP:
+                return LCMP.INSTANCE;
+            case Constants.FCMPL:
+                return FCMPL.INSTANCE;
+            case Constants.FCMPG:
+                return FCMPG.INSTANCE;
+            case Constants.DCMPL:
+                return DCMPL.INSTANCE;
+            case Constants.DCMPG:
+                return DCMPG.INSTANCE;
+            case Constants.IFEQ:
+                return branch(new IFEQ(), r.s2());
+            case Constants.IFNE:
+                return branch(new IFNE(), r.s2());
+            case Constants.IFLT:
+                return branch(new IFLT(), r.s2());
+            case Constants.IFGE:
+                return branch(new IFGE(), r.s2());
+            case Constants.IFGT:
+                return branch(new IFGT(), r.s2());
+            case Constants.IFLE:
+                return branch(new IFLE(), r.s2());
+            case Constants.IF_ICMPEQ:
+                return branch(new IF_ICMPEQ(), r.s2());
+            case Constants.IF_ICMPNE:
+                return branch(new IF_ICMPNE(), r.s2());
+            case Constants.IF_ICMPLT:
+                return branch(new IF_ICMPLT(), r.s2());
+            case Constants.IF_ICMPGE:
+                return branch(new IF_ICMPGE(), r.s2());
+            case Constants.IF_ICMPGT:
+                return branch(new IF_ICMPGT(), r.s2());
+            case Constants.IF_ICMPLE:
+                return branch(new IF_ICMPLE(), r.s2());
+            case Constants.IF_ACMPEQ:
+                return branch(new IF_ACMPEQ(), r.s2());
+            case Constants.IF_ACMPNE:
+                return branch(new IF_ACMPNE(), r.s2());
+            case Constants.GOTO:
+                return branch(new GOTO(), r.s2());
+            case Constants.JSR:
+                return branch(new JSR(), r.s2());
+            case Constants.RET:
+                return new RET(r.u1());
+            case Constants.TABLESWITCH: {
+                r.align();
+                int default_offset = r.s4();
+                int low = r.s4();
+                int high = r.s4();
+                if (high < low)
+                    throw new IOException("Invalid tableswitch range: " + low + " to " + high);
+                int length = high - low + 1;
                 int[] matches = new int[length];
                 int[] offsets = new int[length];
                 for (int i = 0; i < length; i++) {
-                    matches[i] = dis.readInt();
-                    offsets[i] = dis.readInt();
+                    matches[i] = low + i;
+                    offsets[i] = r.s4();
                 }
-                code.add(new LOOKUPSWITCH(default_offset, matches, offsets));
-            } else if (o == 0x71) {
-                code.add(new LREM());
-            } else if (o == 0xad) {
-                code.add(new LRETURN());
-            } else if (o == 0x79) {
-                code.add(new LSHL());
-            } else if (o == 0x7b) {
-                code.add(new LSHR());
-            } else if (o == 0x37) {
-                code.add(new LSTORE(dis.readUnsignedByte()));
-            } else if (o == 0x3f) {
-                code.add(new LSTORE(0));
-            } else if (o == 0x40) {
-                code.add(new LSTORE(1));
-            } else if (o == 0x41) {
-                code.add(new LSTORE(2));
-            } else if (o == 0x42) {
-                code.add(new LSTORE(3));
-            } else if (o == 0x65) {
-                code.add(new LSUB());
-            } else if (o == 0x7d) {
-                code.add(new LUSHR());
-            } else if (o == 0x83) {
-                code.add(new LXOR());
-            } else if (o == 0xc2) {
-                code.add(new MONITORENTER());
-            } else if (o == 0xc3) {
-                code.add(new MONITOREXIT());
-            } else if (o == 0xc5) {
-                code.add(new MULTIANEWARRAY(((ConstantClass) cp.get(dis.readUnsignedShort())).value, dis.readUnsignedByte()));
-            } else if (o == 0xbb) {
-                code.add(new NEW(((ConstantClass) cp.get(dis.readUnsignedShort())).value));
-            } else if (o == 0xbc) {
-                code.add(new NEWARRAY(dis.readUnsignedByte()));
-            } else if (o == 0x0) {
-                code.add(new NOP());
-            } else if (o == 0x57) {
-                code.add(new POP());
-            } else if (o == 0x58) {
-                code.add(new POP2());
-            } else if (o == 0xb5) {
-                code.add(new PUTFIELD((ConstantFieldref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xb3) {
-                code.add(new PUTSTATIC((ConstantFieldref) cp.get(dis.readUnsignedShort())));
-            } else if (o == 0xa9) {
-                code.add(new RET(dis.readUnsignedByte()));
-            } else if (o == 0xb1) {
-                code.add(new RETURN());
-            } else if (o == 0x35) {
-                code.add(new SALOAD());
-            } else if (o == 0x56) {
-                code.add(new SASTORE());
-            } else if (o == 0x11) {
-                code.add(new SIPUSH(dis.readShort()));
-            } else if (o == 0x5f) {
-                code.add(new SWAP());
-            } else if (o == 0xaa) {
-                int index = getOffset(code.size());
-                int padding = getPadding(index);
-                for (int i = 0; i < padding; i++)
-                    dis.readByte();
-                int default_offset = dis.readInt();
-                int low = dis.readInt();
-                int high = dis.readInt();
-                int length = high - low + 1;
+                return new TABLESWITCH(default_offset, matches, offsets);
+            }
+            case Constants.LOOKUPSWITCH: {
+                r.align();
+                int default_offset = r.s4();
+                int length = r.s4();
+                if (length < 0)
+                    throw new IOException("Invalid lookupswitch size: " + length);
                 int[] matches = new int[length];
                 int[] offsets = new int[length];
-                for (int i = low; i <= high; i++)
-                    matches[i - low] = i;
-                for (int i = 0; i < length; i++)
-                    offsets[i] = dis.readInt();
-                code.add(new TABLESWITCH(default_offset, matches, offsets));
-            } else if (o == 0xc4) {
-                code.add(readWideInstruction(dis));
-            } else {
-                StringBuilder sb = new StringBuilder("Unknown Instruction: ").append(Integer.toHexString(o)).append("\nCode dump:\n");
-                for (int i = 0; i < code.size(); i++) {
-                    sb.append(i).append("\t").append(code.get(i)).append("\n");
+                for (int i = 0; i < length; i++) {
+                    matches[i] = r.s4();
+                    offsets[i] = r.s4();
                 }
-                throw new IOException(sb.toString());
+                return new LOOKUPSWITCH(default_offset, matches, offsets);
+            }
+            case Constants.IRETURN:
+                return IRETURN.INSTANCE;
+            case Constants.LRETURN:
+                return LRETURN.INSTANCE;
+            case Constants.FRETURN:
+                return FRETURN.INSTANCE;
+            case Constants.DRETURN:
+                return DRETURN.INSTANCE;
+            case Constants.ARETURN:
+                return ARETURN.INSTANCE;
+            case Constants.RETURN:
+                return RETURN.INSTANCE;
+            case Constants.GETSTATIC:
+                return new GETSTATIC((ConstantFieldref) cp.get(r.u2()));
+            case Constants.PUTSTATIC:
+                return new PUTSTATIC((ConstantFieldref) cp.get(r.u2()));
+            case Constants.GETFIELD:
+                return new GETFIELD((ConstantFieldref) cp.get(r.u2()));
+            case Constants.PUTFIELD:
+                return new PUTFIELD((ConstantFieldref) cp.get(r.u2()));
+            case Constants.INVOKEVIRTUAL:
+                return new INVOKEVIRTUAL((ConstantMethodref) cp.get(r.u2()));
+            case Constants.INVOKESPECIAL:
+                return new INVOKESPECIAL((ConstantMethodref) cp.get(r.u2()));
+            case Constants.INVOKESTATIC:
+                return new INVOKESTATIC((ConstantMethodref) cp.get(r.u2()));
+            case Constants.INVOKEINTERFACE: {
+                INVOKEINTERFACE i = new INVOKEINTERFACE((ConstantInterfaceMethodref) cp.get(r.u2()));
+                r.u1(); // Read parameter count
+                r.s1(); // ConstantValue 0, used internally
+                return i;
             }
+            case Constants.INVOKEDYNAMIC: {
+                INVOKEDYNAMIC i = new INVOKEDYNAMIC((ConstantInvokeDynamic) cp.get(r.u2()));
+                r.u2(); // Always 0
+                return i;
+            }
+            case Constants.NEW:
+                return new NEW(((ConstantClass) cp.get(r.u2())).value);
+            case Constants.NEWARRAY:
+                return new NEWARRAY(r.u1());
+            case Constants.ANEWARRAY:
+                return new ANEWARRAY(((ConstantClass) cp.get(r.u2())).value);
+            case Constants.ARRAYLENGTH:
+                return ARRAYLENGTH.INSTANCE;
+            case Constants.ATHROW:
+                return ATHROW.INSTANCE;
+            case Constants.CHECKCAST:
+                return new CHECKCAST(((ConstantClass) cp.get(r.u2())).value);
+            case Constants.INSTANCEOF:
+                return new INSTANCEOF(((ConstantClass) cp.get(r.u2())).value);
+            case Constants.MONITORENTER:
+                return MONITORENTER.INSTANCE;
+            case Constants.MONITOREXIT:
+                return MONITOREXIT.INSTANCE;
+            case Constants.WIDE:
+                return readWideInstruction(r);
+            case Constants.MULTIANEWARRAY:
+                return new MULTIANEWARRAY(((ConstantClass) cp.get(r.u2())).value, r.u1());
+            case Constants.IFNULL:
+                return branch(new IFNULL(), r.s2());
+            case Constants.IFNONNULL:
+                return branch(new IFNONNULL(), r.s2());
+            case Constants.GOTO_W:
+                return branch(new GOTO(), r.s4());
+            case Constants.JSR_W:
+                return branch(new JSR(), r.s4());
+            default:
+                return null;
         }
-        dis.close();
     }
 
-    private Instruction readWideInstruction(DataInputStream dis) throws IOException {
-        int o = dis.readUnsignedByte();
-        if (o == 0x19) {
-            return new ALOAD(dis.readUnsignedShort(), true);
-        } else if (o == 0x3a) {
-            return new ASTORE(dis.readUnsignedShort(), true);
-        } else if (o == 0x18) {
-            return new DLOAD(dis.readUnsignedShort(), true);
-        } else if (o == 0x39) {
-            return new DSTORE(dis.readUnsignedShort(), true);
-        } else if (o == 0x17) {
-            return new FLOAD(dis.readUnsignedShort(), true);
-        } else if (o == 0x38) {
-            return new FSTORE(dis.readUnsignedShort(), true);
-        } else if (o == 0x15) {
-            return new ILOAD(dis.readUnsignedShort(), true);
-        } else if (o == 0x36) {
-            return new ISTORE(dis.readUnsignedShort(), true);
-        } else if (o == 0x16) {
-            return new LLOAD(dis.readUnsignedShort(), true);
-        } else if (o == 0x37) {
-            return new LSTORE(dis.readUnsignedShort(), true);
-        } else if (o == 0xa9) {
-            return new RET(dis.readUnsignedShort(), true);
-        } else if (o == 0x84) {
-            return new IINC(dis.readUnsignedShort(), dis.readShort(), true);
-        } else
-            throw new IOException("Unknown instruction after wide: " + Integer.toHexString(o));
+    private static BranchInstruction branch(BranchInstruction bi, int offset) {
+        bi.branchoffset = offset;
+        return bi;
     }
 
-    int getIndex(int offset) {
-        int t = 0;
-        int index = 0;
-        Instruction i;
-        while (t < offset) {
-            i = code.get(index++);
-            //System.out.println(i);
-            if (i instanceof Switch)
-                t += getPadding(t);
-            t += i.getLength();
+    private static Instruction readWideInstruction(ByteReader r) throws IOException {
+        int o = r.u1();
+        switch (o) {
+            case Constants.ALOAD:
+                return new ALOAD(r.u2(), true);
+            case Constants.ASTORE:
+                return new ASTORE(r.u2(), true);
+            case Constants.DLOAD:
+                return new DLOAD(r.u2(), true);
+            case Constants.DSTORE:
+                return new DSTORE(r.u2(), true);
+            case Constants.FLOAD:
+                return new FLOAD(r.u2(), true);
+            case Constants.FSTORE:
+                return new FSTORE(r.u2(), true);
+            case Constants.ILOAD:
+                return new ILOAD(r.u2(), true);
+            case Constants.ISTORE:
+                return new ISTORE(r.u2(), true);
+            case Constants.LLOAD:
+                return new LLOAD(r.u2(), true);
+            case Constants.LSTORE:
+                return new LSTORE(r.u2(), true);
+            case Constants.RET:
+                return new RET(r.u2(), true);
+            case Constants.IINC:
+                return new IINC(r.u2(), r.s2(), true);
+            default:
+                throw new IOException("Unknown instruction after wide: " + Integer.toHexString(o));
+        }
+    }
+
+    /**
+     * <p>Lays out the code in a single pass</p>
+     *
+     * @return the offset of every instruction in the code array, followed by the length of the code
+     */
+    private int[] getOffsets() {
+        final int size = code.size();
+        int[] offsets = new int[size + 1];
+        int offset = 0;
+        Instruction ins;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = offset;
+            ins = code.get(i);
+            if (ins instanceof Switch)
+                offset += getPadding(offset);
+            offset += ins.getLength();
         }
+        offsets[size] = offset;
+        return offsets;
+    }
+
+    private int getIndex(int[] offsets, int offset) throws IOException {
+        int index = Arrays.binarySearch(offsets, offset);
+        if (index < 0)
+            throw new IOException("Offset " + offset + " in " + this + " isn't the start of an instruction");
         return index;
     }
 
-    void setIndices() {
+    /**
+     * <p>Works out the instruction indices of every branch target and exception table pc from the offsets read</p>
+     *
+     * @throws IOException if one doesn't fall on the start of an instruction
+     */
+    void setIndices() throws IOException {
+        // Use the offsets seen while decoding if we have them, they hold even where the original code used a longer form than we would
+        int[] offsets = decoded_offsets != null && decoded_offsets.length == code.size() + 1 ? decoded_offsets : getOffsets();
+        decoded_offsets = null;
         Instruction i;
         BranchInstruction ci;
         Switch s;
-        Iterator<Integer> it;
-        int i1;
-        Integer in;
+        int off;
         final int codeSize = code.size();
-        int length;
         for (int idx = 0; idx < codeSize; idx++) {
             i = code.get(idx);
             if (i instanceof BranchInstruction) {
+                off = offsets[idx];
                 ci = (BranchInstruction) i;
-                ci.branch_index = getIndex(getOffset(idx) + ci.branchoffset);
+                ci.branch_index = getIndex(offsets, off + ci.branchoffset);
                 if (i instanceof Switch) {
                     s = (Switch) i;
-                    it = s.match_pair_offsets.keySet().iterator();
-                    length = s.match_pair_offsets.size();
-                    for (i1 = 0; i1 < length; i1++) {
-                        in = it.next();
-                        s.match_pairs.put(in, getIndex(getOffset(idx) + s.match_pair_offsets.get(in)));
-                    }
+                    for (Map.Entry<Integer, Integer> e : s.match_pair_offsets.entrySet())
+                        s.match_pairs.put(e.getKey(), getIndex(offsets, off + e.getValue()));
                 }
             }
         }
         for (ExceptionTableEntry ete : exception_table) {
-            ete.start_index = getIndex(ete.start_pc);
-            ete.end_index = getIndex(ete.end_pc);
-            ete.handler_index = getIndex(ete.handler_pc);
+            ete.start_index = getIndex(offsets, ete.start_pc);
+            ete.end_index = getIndex(offsets, ete.end_pc);
+            ete.handler_index = getIndex(offsets, ete.handler_pc);
         }
     }
 
-    int getOffset(int index) {
-        int offset = 0;
-        Instruction ins;
-        for (int i = 0; i < index; i++) {
-            ins = code.get(i);
-            if (ins instanceof Switch)
-                offset += getPadding(offset);
-            offset += ins.getLength();
-        }
-        return offset;
+    /**
+     * <p>Recalculates every branch offset and exception table pc from the instruction indices</p>
+     *
+     * @return the layout the offsets were calculated against, as returned by <code>getOffsets()</code>
+     */
+    int[] resetOffsets() {
+        int[] offsets = getOffsets();
+        int[] previous;
+        // Branch offsets decide whether GOTO and JSR are wide, which moves everything after them, so repeat until the layout settles
+        do {
+            setOffsets(offsets);
+            previous = offsets;
+            offsets = getOffsets();
+        } while (!Arrays.equals(previous, offsets));
+        return offsets;
     }
 
-    void resetOffsets() {
+    private void setOffsets(int[] offsets) {
         Instruction i;
         BranchInstruction ci;
         Switch s;
         int off;
-        for (int idx = 0; idx < code.size(); idx++) {
+        final int codeSize = code.size();
+        for (int idx = 0; idx < codeSize; idx++) {
             i = code.get(idx);
             if (i instanceof BranchInstruction) {
-                off = getOffset(idx);
+                off = offsets[idx];
                 ci = (BranchInstruction) i;
-                ci.branchoffset = getOffset(ci.branch_index) - off;
+                ci.branchoffset = offsets[ci.branch_index] - off;
                 if (i instanceof Switch) {
                     s = (Switch) i;
                     s.match_pair_offsets.clear();
-                    for (final Integer in : s.match_pairs.keySet()) {
-                        s.match_pair_offsets.put(in, getOffset(s.match_pairs.get(in)) - off);
-                    }
+                    for (Map.Entry<Integer, Integer> e : s.match_pairs.entrySet())
+                        s.match_pair_offsets.put(e.getKey(), offsets[e.getValue()] - off);
                 }
             }
         }
         for (ExceptionTableEntry ete : exception_table) {
-            ete.start_pc = getOffset(ete.start_index);
-            ete.end_pc = getOffset(ete.end_index);
-            ete.handler_pc = getOffset(ete.handler_index);
+            ete.start_pc = offsets[ete.start_index];
+            ete.end_pc = offsets[ete.end_index];
+            ete.handler_pc = offsets[ete.handler_index];
         }
     }
 
+    /**
+     * <p>Gives every switch the cheaper of the <code>TABLESWITCH</code> and <code>LOOKUPSWITCH</code> forms, in a single pass</p>
+     * <p>Offsets are left alone, <code>layout()</code> lays the code out once afterwards</p>
+     */
     private void fix() {
-        main:
-        for (int idx = 0; idx < code.size(); idx++) {
-            Instruction i = code.get(idx);
-            if (i instanceof LOOKUPSWITCH) {
-                LOOKUPSWITCH lus = (LOOKUPSWITCH) i;
-                Iterator<Integer> keys = lus.match_pairs.navigableKeySet().iterator();
-                if (!keys.hasNext()) {
-                    TABLESWITCH ts = new TABLESWITCH(lus.branch_index, new ArrayList<Integer>(), new ArrayList<Integer>());
-                    replaceInstruction(idx, ts);
-                    resetOffsets();
-                }
-                int lastKey = keys.next();
-                int key;
-                while (keys.hasNext()) {
-                    key = keys.next();
-                    if (key != lastKey + 1)
-                        continue main;
-                    lastKey = key;
-                }
-                keys = lus.match_pairs.descendingKeySet().iterator();
+        Instruction i;
+        Switch s;
+        final int codeSize = code.size();
+        for (int idx = 0; idx < codeSize; idx++) {
+            i = code.get(idx);
+            if (!(i instanceof Switch))
+                continue;
+            s = (Switch) i;
+            if (isTableCheaper(s)) {
+                long low = s.match_pairs.firstKey();
+                long high = s.match_pairs.lastKey();
+                if (s instanceof TABLESWITCH && high - low + 1 == s.match_pairs.size())
+                    continue;
+                // Keys missing from the range go to the default target
                 ArrayList<Integer> matches = new ArrayList<>();
                 ArrayList<Integer> indices = new ArrayList<>();
-                while (keys.hasNext()) {
-                    key = keys.next();
-                    matches.add(key);
-                    indices.add(lus.match_pairs.get(key));
-                }
-                TABLESWITCH ts = new TABLESWITCH(lus.branch_index, matches, indices);
-                replaceInstruction(idx, ts);
-                resetOffsets();
-                idx = 0;
-            } else if (i instanceof TABLESWITCH) {
-                TABLESWITCH ts = (TABLESWITCH) i;
-                Iterator<Integer> keys = ts.match_pairs.navigableKeySet().iterator();
-                if (!keys.hasNext())
-                    continue;
-                int lastKey = keys.next();
-                int key;
-                while (keys.hasNext()) {
-                    key = keys.next();
-                    if (key != lastKey + 1) {
-                        ArrayList<Integer> matches = new ArrayList<>();
-                        ArrayList<Integer> indices = new ArrayList<>();
-                        matches.addAll(ts.match_pairs.keySet());
-                        indices.addAll(ts.match_pairs.values());
-                        LOOKUPSWITCH lus = new LOOKUPSWITCH(ts.branch_index, matches, indices);
-                        replaceInstruction(idx, lus);
-                        resetOffsets();
-                        idx = 0;
-                        continue main;
-                    }
-                    lastKey = key;
+                Integer index;
+                for (long key = low; key <= high; key++) {
+                    index = s.match_pairs.get((int) key);
+                    matches.add((int) key);
+                    indices.add(index == null ? s.branch_index : index);
                 }
+                replaceSwitch(idx, new TABLESWITCH(s.branch_index, matches, indices));
+            } else if (!(s instanceof LOOKUPSWITCH)) {
+                replaceSwitch(idx, new LOOKUPSWITCH(s.branch_index, new ArrayList<>(s.match_pairs.keySet()), new ArrayList<>(s.match_pairs.values())));
             }
         }
     }
 
+    /**
+     * <p>Swaps a switch for its other form, which branches the same way, so the code still counts as it was read</p>
+     */
+    private void replaceSwitch(int index, Switch s) {
+        int[] o = getOrigins();
+        if (o != null && o[index] != -1 && read_code[o[index]] == code.get(index))
+            read_code[o[index]] = s;
+        replaceInstruction(index, s);
+    }
+
+    /**
+     * <p>Records the code as it is now, along with the index each of its instructions was read at</p>
+     *
+     * @param origins the index each instruction was read at, -1 if it was added, or null if that's not known
+     */
+    void track(int[] origins) {
+        if (origins == null || read_code == null) {
+            this.origins = null;
+            tracked_code = null;
+            return;
+        }
+        this.origins = origins;
+        tracked_code = code.toArray(new Instruction[code.size()]);
+    }
+
+    /**
+     * <p>Returns the index each instruction was read at, while the code hasn't been changed behind this class's back</p>
+     *
+     * @return the indices, -1 for instructions added since, or null if they aren't known
+     */
+    int[] getOrigins() {
+        if (origins == null || code == null || tracked_code.length != code.size())
+            return null;
+        for (int i = 0; i < tracked_code.length; i++)
+            if (tracked_code[i] != code.get(i))
+                return null;
+        return origins;
+    }
+
+    /**
+     * <p>Whether the code is still the instructions that were read, in the same order, however they're laid out</p>
+     *
+     * @return true if no instruction has been added, removed or replaced
+     */
+    boolean isUnchanged() {
+        int[] o = getOrigins();
+        if (o == null || o.length != read_code.length)
+            return false;
+        for (int i = 0; i < o.length; i++)
+            if (o[i] != i || code.get(i) != read_code[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * <p>Returns a map from the offsets the code was read at to the ones it was last laid out at, once
+     * <code>write_max_locals</code> has been worked out</p>
+     *
+     * @param offsets the offsets returned by <code>layout()</code>
+     * @return the map, or null if where the instructions came from isn't known
+     */
+    OffsetMap getOffsetMap(int[] offsets) {
+        int[] o = getOrigins();
+        return o == null || read_offsets == null ? null : new OffsetMap(read_offsets, o, offsets, write_max_locals);
+    }
+
+    /**
+     * <p>Weighs the size and the number of comparisons of both switch forms the same way javac does</p>
+     *
+     * @param s the switch to weigh
+     * @return whether the switch should be written as a <code>TABLESWITCH</code>
+     */
+    private static boolean isTableCheaper(Switch s) {
+        final int labels = s.match_pairs.size();
+        if (labels == 0)
+            return false;
+        final long table_space_cost = 4 + ((long) s.match_pairs.lastKey() - s.match_pairs.firstKey() + 1);
+        final long table_time_cost = 3;
+        final long lookup_space_cost = 3 + 2 * (long) labels;
+        final long lookup_time_cost = labels;
+        return table_space_cost + 3 * table_time_cost <= lookup_space_cost + 3 * lookup_time_cost;
+    }
+
     /**
      * <p>Inserts an instruction at the specified index</p>
+     * <p>Branches and exception table entries keep pointing at the instructions they did, which renumbers all of
+     * them, use <code>edit()</code> to make many changes</p>
      *
      * @param index       the index into the <code>code List</code> on where to insert this instruction
      * @param instruction the instruction to insert
      */
     public void insertInstruction(int index, Instruction instruction) {
+        decode();
+        int[] o = getOrigins();
         code.add(index, instruction);
-        for (Instruction in : code) {
-            if (in instanceof BranchInstruction) {
-                BranchInstruction bi = (BranchInstruction) in;
-                if (bi.branch_index >= index)
-                    bi.branch_index += 1;
-            } else if (in instanceof Switch) {
-                Switch s = (Switch) in;
-                if (s.branch_index >= index)
-                    s.branch_index += 1;
-                Integer i = null;
-                for (Iterator<Integer> it = s.match_pairs.keySet().iterator(); it.hasNext(); i = it.next())
-                    if (s.match_pairs.get(i) >= index)
-                        s.match_pairs.put(i, s.match_pairs.get(i) + 1);
-            }
+        shiftIndices(index, 1);
+        if (o != null) {
+            int[] n = new int[o.length + 1];
+            System.arraycopy(o, 0, n, 0, index);
+            n[index] = -1;
+            System.arraycopy(o, index, n, index + 1, o.length - index);
+            track(n);
         }
     }
 
@@ -942,426 +1232,290 @@ public final class Method implements Comparable<Method> {
      * @param new_instruction the instruction to replace the old one with
      */
     public void replaceInstruction(int index, Instruction new_instruction) {
+        decode();
+        int[] o = getOrigins();
         code.set(index, new_instruction);
+        if (o != null)
+            track(o);
     }
 
     /**
      * <p>Removes the instruction at the specified index</p>
+     * <p>Anything that pointed at it points at the instruction that follows</p>
      *
-     * @param index the index into the <code>code List</code> on where to insert this instruction
+     * @param index the index into the <code>code List</code> of the instruction to remove
      */
     public void removeInstruction(int index) {
+        decode();
+        int[] o = getOrigins();
         code.remove(index);
+        if (o != null) {
+            int[] n = new int[o.length - 1];
+            System.arraycopy(o, 0, n, 0, index);
+            System.arraycopy(o, index + 1, n, index, n.length - index);
+            track(n);
+        }
+        shiftIndices(index + 1, -1);
+        // Drop handlers that only covered the removed instruction
+        for (Iterator<ExceptionTableEntry> it = exception_table.iterator(); it.hasNext(); ) {
+            ExceptionTableEntry ete = it.next();
+            if (ete.start_index >= ete.end_index)
+                it.remove();
+        }
+    }
+
+    /**
+     * <p>Moves every branch target and exception table index from the given index on, in a single pass</p>
+     *
+     * @param from the first index to move
+     * @param by   how far to move them
+     */
+    private void shiftIndices(int from, int by) {
         for (Instruction i : code) {
-            if (i instanceof BranchInstruction) {
-                BranchInstruction bi = (BranchInstruction) i;
-                if (bi.branch_index > index)
-                    bi.branch_index -= 1;
-            } else if (i instanceof Switch) {
-                Switch s = (Switch) i;
-                if (s.branch_index >= index)
-                    s.branch_index += 1;
-                Integer in = null;
-                for (Iterator<Integer> it = s.match_pairs.keySet().iterator(); it.hasNext(); in = it.next())
-                    if (s.match_pairs.get(in) > index)
-                        s.match_pairs.put(in, s.match_pairs.get(in) + -1);
-            }
+            if (!(i instanceof BranchInstruction))
+                continue;
+            BranchInstruction bi = (BranchInstruction) i;
+            if (bi.branch_index >= from)
+                bi.branch_index += by;
+            if (i instanceof Switch)
+                for (Map.Entry<Integer, Integer> e : ((Switch) i).match_pairs.entrySet())
+                    if (e.getValue() >= from)
+                        e.setValue(e.getValue() + by);
+        }
+        for (ExceptionTableEntry ete : exception_table) {
+            if (ete.start_index >= from)
+                ete.start_index += by;
+            if (ete.end_index >= from)
+                ete.end_index += by;
+            if (ete.handler_index >= from)
+                ete.handler_index += by;
         }
     }
 
     /**
-     * <p>Searches through this methods code for a specified pattern, pattern syntax is explained below</p>
-     * <p>Patterns are strings with special characters which define special properties</p>
-     * <p>For example, you may have a pattern like "ALOAD IFNULL GETFIELD RETURN" which is very simple, but not very versatile.</p>
-     * <p>That's where some simple logic checking comes in, by enclosing instructions in brackets and putting '|' chars between them you can have embedded 'IF' logic in your pattern</p>
-     * <p>For example "ALOAD (IFNULL | IFNONNULL) (GETFIELD | GETSTATIC)" is a much more versatile pattern (note that these are only examples</p>
-     * <p>You can also have nested if-expressions like "INS (INS | (INS | INS (INS | INS)))"</p>
-     * <p><b>NOTE:</b> I noticed some limitations with this pattern while bug testing, the syntax must remain how it is above, there MUST be spaces between if-expressions (I believe this is due to a bug in the <code>StringTokenizer</code> class)</p>
-     * <p>Apart from that, enjoy :)</p>
+     * <p>Searches through the code of this method for a pattern, the syntax of which is explained in
+     * <code>CodePattern</code></p>
+     * <p>For example <code>"ALOAD (IFNULL | IFNONNULL) [(GETFIELD | GETSTATIC)]"</code> returns the field instruction
+     * of the first place an <code>ALOAD</code> is followed by a null check and a field access</p>
+     * <p>Two things differ from before patterns were compiled. A pattern without square brackets returns the whole
+     * match rather than null, and a bare name matches only that instruction rather than every one whose name starts
+     * with it, so <code>"INVOKE"</code> is now an unknown instruction and has to be written <code>"INVOKE*"</code></p>
      *
-     * @param pattern The pattern to be compiled and searched for
-     * @return the instructions defined to be returned in the pattern
-     * @throws PatternFormatException if there is an error in your pattern
+     * @param pattern the pattern to compile and search for
+     * @return the instructions marked with square brackets in the first match, all of them if none are marked, or
+     *         null if there is no match
+     * @throws PatternFormatException if there is an error in the pattern
      */
     public List<Instruction> findInstructions(String pattern) throws PatternFormatException {
-        pattern = pattern.toLowerCase();
-        // Check pattern for validity
-        // First check if there are any [ or ], if not then return null
-        if (pattern.indexOf('[') < 0 && pattern.indexOf(']') < 0)
+        return findInstructions(CodePattern.compile(pattern));
+    }
+
+    /**
+     * <p>Searches through the code of this method for a compiled pattern</p>
+     *
+     * @param pattern the pattern to search for
+     * @return the instructions marked with square brackets in the first match, all of them if none are marked, or
+     *         null if there is no match
+     * @see CodePattern#findAll(List)
+     */
+    public List<Instruction> findInstructions(CodePattern pattern) {
+        decode();
+        if (code == null)
+            return null;
+        int start = pattern.find(code, 0);
+        if (start == -1)
             return null;
+        List<Instruction> found = new ArrayList<>();
+        for (int k = 0; k < pattern.length(); k++)
+            if (!pattern.hasMarks() || pattern.isMarked(k))
+                found.add(code.get(start + k));
+        return found;
+    }
 
-        // The rest of the checking is done while compiling the pattern in an odd linked structure
-        ArrayList<LinkedNode> tokens = new ArrayList<LinkedNode>();
-        StringTokenizer at = new StringTokenizer(pattern, "()| ", true);
-        while (at.hasMoreTokens()) {
-            String token = at.nextToken();
-            if (token.equals(" ")) {
-            } else if (token.equals("(")) {
-                int delta = 1;
-                String subPattern = "";
-                while (at.hasMoreTokens()) {
-                    String nextToken = at.nextToken();
-                    if (nextToken.equals("("))
-                        delta++;
-                    else if (nextToken.equals(")")) {
-                        delta--;
-                        if (delta == 0)
+    /**
+     * <p>Works out the deepest the stack gets by following every path through the code</p>
+     *
+     * @return the max_stack of this method
+     * @throws EncodingException if the stack underflows, branches out of the code, falls off the end of it or
+     *                           reaches an instruction at different heights
+     */
+    int getMaxStack() throws EncodingException {
+        final int size = code.size();
+        if (size == 0)
+            return 0;
+        // The stack height before each instruction, -1 until it's reached
+        int[] heights = new int[size];
+        Arrays.fill(heights, -1);
+        BitSet work = new BitSet(size);
+        heights[0] = 0;
+        work.set(0);
+        for (ExceptionTableEntry ete : exception_table) {
+            checkTarget(ete.handler_index, size);
+            // Handlers start with only the exception on the stack
+            if (heights[ete.handler_index] == -1) {
+                heights[ete.handler_index] = 1;
+                work.set(ete.handler_index);
+            } else if (heights[ete.handler_index] != 1)
+                throw new EncodingException("Inconsistent stack height at handler " + ete.handler_index + ": " + heights[ete.handler_index] + " and 1");
+        }
+        int max = exception_table.isEmpty() ? 0 : 1;
+        Instruction i;
+        int pc, height;
+        // Run each block straight through, only queueing branch targets
+        for (int start = work.nextSetBit(0); start >= 0; start = work.nextSetBit(0)) {
+            work.clear(start);
+            pc = start;
+            while (true) {
+                i = code.get(pc);
+                height = heights[pc] + i.getStackChange();
+                if (height < 0)
+                    throw new EncodingException("Stack underflow at " + pc + ": " + i);
+                if (height > max)
+                    max = height;
+                if (i instanceof TerminatingInstruction)
+                    break;
+                if (i instanceof BranchInstruction) {
+                    BranchInstruction bi = (BranchInstruction) i;
+                    if (i instanceof JSR) {
+                        // The subroutine pops its return address, so the JSR comes back at the height it left with
+                        merge(heights, work, bi.branch_index, height, size);
+                        height = heights[pc];
+                    } else {
+                        merge(heights, work, bi.branch_index, height, size);
+                        if (i instanceof Switch) {
+                            for (int target : ((Switch) i).match_pairs.values())
+                                merge(heights, work, target, height, size);
+                            break;
+                        }
+                        if (i instanceof GOTO)
                             break;
                     }
-                    subPattern += nextToken;
                 }
-                if (delta != 0)
-                    throw new PatternFormatException("Expecting token: ')'");
-                tokens.add(getSubs(subPattern));
-            } else if (token.equals(")")) {
-                throw new PatternFormatException("Unexpected token: ')'");
-            } else if (token.equals("|"))
-                throw new PatternFormatException("Unexpected token: '|'");
-            else if (!token.matches("[\\w_]+"))
-                throw new PatternFormatException("Unexpected token: '" + token + "'");
-            else
-                tokens.add(new LinkedNode(token));
-        }
-
-        LinkedNode[] ll = new LinkedNode[tokens.size()];
-        ll = tokens.toArray(ll);
-        LinkedList<Instruction> found = new LinkedList<>();
-        boolean valid;
-        int idx = 0;
-        for (Instruction i : code) {
-            if (matches(i, ll[idx])) {
-                found.add(i);
-                idx += 1;
-                valid = true;
-            } else {
-                idx = 0;
-                valid = false;
+                if (++pc == size)
+                    throw new EncodingException("Code falls off the end after " + i);
+                if (heights[pc] != -1) {
+                    if (heights[pc] != height)
+                        throw new EncodingException("Inconsistent stack height at " + pc + ": " + heights[pc] + " and " + height);
+                    break;
+                }
+                heights[pc] = height;
             }
-            if (!valid)
-                found.clear();
-            else if (idx >= ll.length)
-                return found;
         }
-        return null;
+        return max;
     }
 
-    private static boolean matches(Instruction i, LinkedNode pattern) {
-        if (i.toString().startsWith(pattern.value.replace("[", "").replace("]", "")))
-            return true;
-        for (LinkedNode child : pattern.equals) {
-            if (matches(i, child))
-                return true;
-        }
-        return false;
+    private static void checkTarget(int target, int size) throws EncodingException {
+        if (target < 0 || target >= size)
+            throw new EncodingException("Branch target out of range: " + target);
     }
 
-    private static LinkedNode getSubs(String pattern) throws PatternFormatException {
-        boolean rOr = false;
-        LinkedNode lns = new LinkedNode(null);
-        StringTokenizer at = new StringTokenizer(pattern, "() ", true);
-        while (at.hasMoreTokens()) {
-            String token = at.nextToken();
-            if (token.equals(" ")) {
-            } else if (token.equals("(")) {
-                int delta = 1;
-                String subPattern = "";
-                while (at.hasMoreTokens()) {
-                    String nextToken = at.nextToken();
-                    if (nextToken.equals("("))
-                        delta++;
-                    else if (nextToken.equals(")")) {
-                        delta--;
-                        if (delta == 0)
-                            break;
-                    }
-                    subPattern += nextToken;
-                }
-                if (delta != 0)
-                    throw new PatternFormatException("Expecting token: ')'");
-                lns.addEqual(getSubs(subPattern));
-            } else if (token.equals(")")) {
-                throw new PatternFormatException("Unexpected token: ')'");
-            } else if (token.equals("|")) {
-                if (!rOr)
-                    throw new PatternFormatException("Unexpected token: '|'");
-                else
-                    rOr = false;
-            } else if (!token.matches("[\\w_]+"))
-                throw new PatternFormatException("Unexpected token: '" + token + "'");
-            else if (rOr)
-                throw new PatternFormatException("Expecting token: '|");
-            else if (lns.value == null) {
-                lns.value = token;
-                rOr = true;
-            } else {
-                lns.addEqual(new LinkedNode(token));
-                rOr = true;
-            }
-        }
-        return lns;
+    private static void merge(int[] heights, BitSet work, int target, int height, int size) throws EncodingException {
+        checkTarget(target, size);
+        if (heights[target] == -1) {
+            heights[target] = height;
+            work.set(target);
+        } else if (heights[target] != height)
+            throw new EncodingException("Inconsistent stack height at " + target + ": " + heights[target] + " and " + height);
     }
 
-    private static class LinkedNode {
-        public String value;
-        public ArrayList<LinkedNode> equals;
-
-        public LinkedNode(String value) {
-            this.value = value;
-            this.equals = new ArrayList<LinkedNode>();
+    /**
+     * <p>Counts how many branches go to each instruction of the decoded code, the ranges and handlers of the exception
+     * table count too</p>
+     *
+     * @return the count for each index, followed by the count for the end of the code
+     */
+    int[] getSources() {
+        int[] sources = new int[code.size() + 1];
+        for (Instruction i : code) {
+            if (i instanceof BranchInstruction)
+                sources[((BranchInstruction) i).branch_index]++;
+            if (i instanceof Switch)
+                for (int target : ((Switch) i).match_pairs.values())
+                    sources[target]++;
         }
+        if (exception_table != null)
+            for (ExceptionTableEntry ete : exception_table) {
+                sources[ete.start_index]++;
+                sources[ete.end_index]++;
+                sources[ete.handler_index]++;
+            }
+        return sources;
+    }
 
-        public void addEqual(LinkedNode e) {
-            this.equals.add(e);
+    /**
+     * <p>Works out how many local variable slots the code uses, including the ones the arguments are passed in</p>
+     *
+     * @return the max_locals of this method
+     */
+    int getMaxLocals() {
+        if (code.size() == 0)
+            return 0;
+        int max_locals = Util.getDescriptorInfo(descriptor).param_slots;
+        if (!is_static)
+            ++max_locals;
+        int idx;
+        // Each local used needs its own slot, and the one after for longs and doubles
+        for (Instruction i : code) {
+            if (i instanceof LoadInstruction) {
+                idx = ((LoadInstruction) i).index + 1;
+                if (i instanceof LLOAD || i instanceof DLOAD)
+                    ++idx;
+            } else if (i instanceof StoreInstruction) {
+                idx = ((StoreInstruction) i).index + 1;
+                if (i instanceof LSTORE || i instanceof DSTORE)
+                    ++idx;
+            } else if (i instanceof IINC)
+                idx = ((IINC) i).index + 1;
+            else if (i instanceof RET)
+                idx = ((RET) i).index + 1;
+            else
+                continue;
+            if (idx > max_locals)
+                max_locals = idx;
         }
+        return max_locals;
+    }
 
-        public String toString() {
-            String val = value;
-            for (LinkedNode e : equals)
-                val += " | " + e.toString();
-            return val;
-        }
+    /**
+     * <p>Computes the stack map frames of the code</p>
+     *
+     * @param offsets    the layout of the code, as returned by <code>layout()</code>
+     * @param this_class the name of the class this method belongs to
+     * @param hierarchy  the hierarchy to merge class types with
+     * @param cpo        the constant pool being written
+     * @return the body of a StackMapTable attribute, or null if the code needs no frames
+     * @throws EncodingException if the code can't be given frames
+     */
+    byte[] getStackMapTable(int[] offsets, String this_class, ClassHierarchy hierarchy, ConstantPool cpo) throws EncodingException {
+        return new FrameComputer(this, this_class, hierarchy).compute(offsets, cpo);
     }
 
-    byte[] getBytes() throws IOException {
+    /**
+     * <p>Picks the form of each switch and lays the code out, ready for <code>encode</code></p>
+     *
+     * @return the offset of every instruction, followed by the length of the code
+     */
+    int[] layout() {
         fix();
-        resetOffsets();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        String[] posWidecode = new String[]{
-                "ALOAD", "DLOAD", "FLOAD", "ILOAD", "LLOAD",
-                "ASTORE", "DSTORE", "FSTORE", "ISTORE", "LSTORE",
-                "IINC", "RET"
-        };
-        for (int v = 0; v < code.size(); v++) {
-            Instruction i = code.get(v);
-            try {
-                // Todo: fix internal abstractions here, after checking if the instruction is wide
-                for (String isname : posWidecode) {
-                    if (Class.forName("org.newbiehacker.neeball." + isname).isInstance(i)) {
-                        writePossibleWide(i, dos);
-                    }
-                }
-                String name = i.getClass().getName();
-                name = name.substring(name.lastIndexOf('.') + 1);
-                if (i instanceof LoadInstruction) {
-                    int index = ((LoadInstruction) i).index;
-                    if (index <= 3)
-                        name = name + "_" + index;
-                } else if (i instanceof StoreInstruction) {
-                    int index = ((StoreInstruction) i).index;
-                    if (index <= 3)
-                        name = name + "_" + index;
-                } else if (i instanceof JSR) {
-                    int offset = ((JSR) i).branchoffset;
-                    if (offset < -32768 || offset > 32767)
-                        name += "_W";
-                } else if (i instanceof LDC) {
-                    LDC l = (LDC) i;
-                    if (l.c.isLong())
-                        name += "2_W";
-                    else if (l.index > 255)
-                        name += "_W";
-                }
-                dos.write(Constants.class.getDeclaredField(name).getInt(null));
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.err.println("Invalid instruction!: " + i.getClass().getName());
-                System.exit(-1);
-            }
-            if (i instanceof ANEWARRAY) {
-                ANEWARRAY ci = (ANEWARRAY) i;
-                dos.writeShort(ci.type_index);
-            } else if (i instanceof BIPUSH) {
-                BIPUSH ci = (BIPUSH) i;
-                dos.writeByte(ci.b);
-            } else if (i instanceof CHECKCAST) {
-                CHECKCAST ci = (CHECKCAST) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof GETFIELD) {
-                GETFIELD ci = (GETFIELD) i;
-                dos.writeShort(ci.field_index);
-            } else if (i instanceof GETSTATIC) {
-                GETSTATIC ci = (GETSTATIC) i;
-                dos.writeShort(ci.field_index);
-            } else if (i instanceof GOTO) {
-                GOTO ci = (GOTO) i;
-                if (ci.branchoffset >= -32768 && ci.branchoffset <= 32767)
-                    dos.writeShort(ci.branchoffset);
-                else
-                    dos.writeInt(ci.branchoffset);
-            } else if (i instanceof IF_ACMPEQ) {
-                IF_ACMPEQ ci = (IF_ACMPEQ) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ACMPNE) {
-                IF_ACMPNE ci = (IF_ACMPNE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPEQ) {
-                IF_ICMPEQ ci = (IF_ICMPEQ) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPNE) {
-                IF_ICMPNE ci = (IF_ICMPNE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPLT) {
-                IF_ICMPLT ci = (IF_ICMPLT) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPGE) {
-                IF_ICMPGE ci = (IF_ICMPGE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPGT) {
-                IF_ICMPGT ci = (IF_ICMPGT) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IF_ICMPLE) {
-                IF_ICMPLE ci = (IF_ICMPLE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFEQ) {
-                IFEQ ci = (IFEQ) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFNE) {
-                IFNE ci = (IFNE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFLT) {
-                IFLT ci = (IFLT) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFGE) {
-                IFGE ci = (IFGE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFGT) {
-                IFGT ci = (IFGT) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFLE) {
-                IFLE ci = (IFLE) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFNONNULL) {
-                IFNONNULL ci = (IFNONNULL) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IFNULL) {
-                IFNULL ci = (IFNULL) i;
-                dos.writeShort(ci.branchoffset);
-            } else if (i instanceof IINC) {
-                IINC ci = (IINC) i;
-                if (ci.index > 255 || ci.increment < -128 || ci.increment > 127) {
-                    dos.writeShort(ci.index);
-                    dos.writeShort(ci.increment);
-                } else {
-                    dos.writeByte(ci.index);
-                    dos.writeByte(ci.increment);
-                }
-            } else if (i instanceof INSTANCEOF) {
-                INSTANCEOF ci = (INSTANCEOF) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof INVOKEINTERFACE) {
-                INVOKEINTERFACE ci = (INVOKEINTERFACE) i;
-                dos.writeShort(ci.index);
-                dos.writeByte(Util.getParamCount(ci.method.descriptor));
-                dos.writeByte(0);
-            } else if (i instanceof INVOKESPECIAL) {
-                INVOKESPECIAL ci = (INVOKESPECIAL) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof INVOKESTATIC) {
-                INVOKESTATIC ci = (INVOKESTATIC) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof INVOKEVIRTUAL) {
-                INVOKEVIRTUAL ci = (INVOKEVIRTUAL) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof JSR) {
-                JSR ci = (JSR) i;
-                if (ci.branchoffset <= 65535)
-                    dos.writeShort(ci.branchoffset);
-                else
-                    dos.writeInt(ci.branchoffset);
-            } else if (i instanceof LDC) {
-                LDC ci = (LDC) i;
-                if (ci.index > 255 || ci.c.isLong())
-                    dos.writeShort(ci.index);
-                else
-                    dos.writeByte(ci.index);
-            } else if (i instanceof LoadInstruction) {
-                LoadInstruction li = (LoadInstruction) i;
-                if (li.index <= 3)
-                    continue;
-                if (li.index > 255)
-                    dos.writeShort(li.index);
-                else
-                    dos.writeByte(li.index);
-            } else if (i instanceof LOOKUPSWITCH) {
-                LOOKUPSWITCH lus = (LOOKUPSWITCH) i;
-                int index = getOffset(v);
-                int padding = getPadding(index);
-                for (int i1 = 0; i1 < padding; i1++) {
-                    dos.writeByte(0);
-                }
-                dos.writeInt(lus.branchoffset);
-                dos.writeInt(lus.match_pair_offsets.size());
-                for (Integer key : lus.match_pair_offsets.keySet()) {
-                    dos.writeInt(key);
-                    dos.writeInt(lus.match_pair_offsets.get(key));
-                }
-            } else if (i instanceof MULTIANEWARRAY) {
-                MULTIANEWARRAY ci = (MULTIANEWARRAY) i;
-                dos.writeShort(ci.index);
-                dos.writeByte(ci.dimensions);
-            } else if (i instanceof NEW) {
-                NEW ci = (NEW) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof NEWARRAY) {
-                NEWARRAY ci = (NEWARRAY) i;
-                dos.writeByte(ci.type);
-            } else if (i instanceof PUTFIELD) {
-                PUTFIELD ci = (PUTFIELD) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof PUTSTATIC) {
-                PUTSTATIC ci = (PUTSTATIC) i;
-                dos.writeShort(ci.index);
-            } else if (i instanceof RET) {
-                RET ci = (RET) i;
-                if (ci.index > 255)
-                    dos.writeShort(ci.index);
-                else
-                    dos.writeByte(ci.index);
-            } else if (i instanceof SIPUSH) {
-                SIPUSH ci = (SIPUSH) i;
-                dos.writeShort(ci.s);
-            } else if (i instanceof StoreInstruction) {
-                StoreInstruction si = (StoreInstruction) i;
-                if (si.index <= 3)
-                    continue;
-                if (si.index > 255)
-                    dos.writeShort(si.index);
-                else
-                    dos.writeByte(si.index);
-            } else if (i instanceof TABLESWITCH) {
-                TABLESWITCH ts = (TABLESWITCH) i;
-                int index = getOffset(v);
-                int padding = getPadding(index);
-                for (int i1 = 0; i1 < padding; i1++) {
-                    dos.writeByte(0);
-                }
-                dos.writeInt(ts.branchoffset);
-                NavigableSet<Integer> ns = ts.match_pair_offsets.navigableKeySet();
-                dos.writeInt(ns.first());
-                dos.writeInt(ns.last());
-                for (Integer i1 : ts.match_pair_offsets.values())
-                    dos.writeInt(i1);
-            }
-        }
-        dos.close();
-        baos.close();
-        return baos.toByteArray();
+        int[] offsets = resetOffsets();
+        moved = read_offsets != null && !Arrays.equals(read_offsets, offsets);
+        write_code_length = offsets[code.size()];
+        return offsets;
     }
 
-    private void writePossibleWide(Instruction i, DataOutputStream dos) throws IOException {
-        if (i instanceof LoadInstruction && ((LoadInstruction) i).index > 255)
-            dos.writeByte(0xc4);
-        else if (i instanceof StoreInstruction && ((StoreInstruction) i).index > 255)
-            dos.writeByte(0xc4);
-        else if (i instanceof RET && ((RET) i).index > 255)
-            dos.writeByte(0xc4);
-        else if (i instanceof IINC) {
-            IINC ci = (IINC) i;
-            if (ci.index > 255 || ci.increment < -128 || ci.increment > 127) {
-                dos.writeByte(0xc4);
-            }
-        }
+    /**
+     * <p>Encodes the code as it was last laid out by <code>layout()</code></p>
+     *
+     * @param w the writer to encode into
+     * @throws EncodingException if an instruction can't be encoded or the code doesn't come out at its laid out length
+     */
+    void encode(ByteWriter w) throws EncodingException {
+        final int start = w.pos;
+        w.origin = start;
+        for (Instruction i : code)
+            i.encode(w);
+        if (w.pos - start != write_code_length)
+            throw new EncodingException("Encoded " + (w.pos - start) + " bytes of code but laid out " + write_code_length);
     }
 
     public int compareTo(Method m) {
@@ -1375,18 +1529,4 @@ public final class Method implements Comparable<Method> {
     public String toString() {
         return Util.getFriendlyMethodString(name, descriptor);
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        name = null;
-        descriptor = null;
-        code.clear();
-        code = null;
-        exception_table.clear();
-        exception_table = null;
-        thrown_exceptions_table.clear();
-        thrown_exceptions_table = null;
-        exception_index_table = null;
-        signature = null;
-    }
 }
\ No newline at end of file
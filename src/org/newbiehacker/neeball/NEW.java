@@ -41,6 +41,7 @@ public final class NEW extends Instruction {
      */
     public NEW(String type) {
         this.type = type;
+        this.tag = Constants.NEW;
     }
 
     public String toString() {
@@ -55,8 +56,8 @@ public final class NEW extends Instruction {
         return 1;
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        type = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
     }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ public final class NEWARRAY extends Instruction {
      */
     public NEWARRAY(int type) {
         this.type = type;
+        this.tag = Constants.NEWARRAY;
     }
 
     public String toString() {
@@ -68,4 +69,9 @@ public final class NEWARRAY extends Instruction {
     public int getLength() {
         return 2;
     }
+
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u1(type);
+    }
 }
\ No newline at end of file
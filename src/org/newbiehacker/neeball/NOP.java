@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class NOP extends Instruction {
+    public static final NOP INSTANCE = new NOP();
+
+    public NOP() {
+        this.tag = Constants.NOP;
+    }
+
     public String toString() {
         return "nop";
     }
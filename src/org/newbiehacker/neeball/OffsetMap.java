@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.ConstantUtf8;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Maps offsets into the code of a method as it was read to offsets into the code as it's being written, so the
+ * attributes of the code that refer to offsets can be kept once it has moved</p>
+ * <p>An offset of an instruction that has been removed maps to the instruction that now follows it</p>
+ */
+final class OffsetMap {
+    private final int[] read_offsets;
+    // The index each instruction read at is now at
+    private final int[] indices;
+    private final int[] offsets;
+    private final int max_locals;
+
+    /**
+     * @param read_offsets the offset of each instruction as it was read, followed by the length of the code
+     * @param origins      the index each instruction was read at, or -1 if it was added since
+     * @param offsets      the offset of each instruction as it's laid out, followed by the length of the code
+     * @param max_locals   the number of locals the code uses now
+     */
+    OffsetMap(int[] read_offsets, int[] origins, int[] offsets, int max_locals) {
+        this.read_offsets = read_offsets;
+        this.offsets = offsets;
+        this.max_locals = max_locals;
+        int read_size = read_offsets.length - 1;
+        indices = new int[read_size + 1];
+        Arrays.fill(indices, -1);
+        for (int i = 0; i < origins.length; i++)
+            if (origins[i] != -1 && indices[origins[i]] == -1)
+                indices[origins[i]] = i;
+        indices[read_size] = origins.length;
+        for (int i = read_size - 1; i >= 0; i--)
+            if (indices[i] == -1)
+                indices[i] = indices[i + 1];
+    }
+
+    /**
+     * <p>Returns where the instruction at an offset as it was read is now</p>
+     *
+     * @param offset the offset as it was read, or the length of the code for its end
+     * @return the offset as it's laid out
+     * @throws IOException if the offset isn't the start of an instruction
+     */
+    int get(int offset) throws IOException {
+        int index = Arrays.binarySearch(read_offsets, offset);
+        if (index < 0)
+            throw new IOException("Offset " + offset + " isn't the start of an instruction");
+        return offsets[indices[index]];
+    }
+
+    /**
+     * <p>Moves the offsets in an attribute of the code that has been moved over to the pool being written</p>
+     *
+     * @param a the attribute
+     * @return the moved contents, or null if the attribute isn't one whose offsets are known
+     * @throws IOException if the attribute is malformed
+     */
+    byte[] move(Attribute a) throws IOException {
+        switch (a.name) {
+            case "LineNumberTable":
+                return lineNumberTable(a.remapped);
+            case "LocalVariableTable":
+            case "LocalVariableTypeTable":
+                return localVariableTable(a);
+            case "StackMapTable":
+                return stackMapTable(a.remapped);
+            default:
+                return null;
+        }
+    }
+
+    private byte[] lineNumberTable(byte[] info) throws IOException {
+        ByteReader r = new ByteReader(info, 0, info.length);
+        int n = r.u2();
+        // Where removed instructions leave several lines at one offset, the line of the instruction that's there wins
+        TreeMap<Integer, int[]> lines = new TreeMap<>();
+        int end = offsets[offsets.length - 1];
+        for (int i = 0; i < n; i++) {
+            int start_pc = r.u2();
+            int line = r.u2();
+            int pc = get(start_pc);
+            int[] previous = lines.get(pc);
+            if (pc < end && (previous == null || previous[0] <= start_pc))
+                lines.put(pc, new int[]{start_pc, line});
+        }
+        ByteWriter w = new ByteWriter(2 + 4 * lines.size());
+        w.u2(lines.size());
+        for (Map.Entry<Integer, int[]> e : lines.entrySet()) {
+            w.u2(e.getKey());
+            w.u2(e.getValue()[1]);
+        }
+        return w.toByteArray();
+    }
+
+    private byte[] localVariableTable(Attribute a) throws IOException {
+        byte[] info = a.remapped;
+        ByteReader r = new ByteReader(info, 0, info.length);
+        int n = r.u2();
+        ByteWriter w = new ByteWriter(info.length);
+        w.u2(0);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int start_pc = r.u2();
+            int length = r.u2();
+            int start = get(start_pc);
+            int end = get(start_pc + length);
+            int name_index = r.u2();
+            int descriptor_index = r.u2();
+            int index = r.u2();
+            // A variable whose whole range was removed goes with it, as does one whose local is no longer used at all
+            if (end <= start || index + size(a, i) > max_locals)
+                continue;
+            w.u2(start);
+            w.u2(end - start);
+            w.u2(name_index);
+            w.u2(descriptor_index);
+            w.u2(index);
+            count++;
+        }
+        byte[] b = w.toByteArray();
+        b[0] = (byte) (count >> 8);
+        b[1] = (byte) count;
+        return b;
+    }
+
+    /**
+     * <p>Returns how many locals a variable takes, looking its descriptor up in the pool the attribute was read with</p>
+     */
+    private static int size(Attribute a, int entry) throws IOException {
+        int descriptor_index = a.cp == null ? 0 : new ByteReader(a.info, 2 + 10 * entry + 6, 2).u2();
+        if (descriptor_index == 0 || !(a.cp.get(descriptor_index) instanceof ConstantUtf8))
+            throw new IOException("Bad descriptor index in " + a.name + ": " + descriptor_index);
+        String descriptor = ((ConstantUtf8) a.cp.get(descriptor_index)).getValue();
+        return descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+    }
+
+    /**
+     * <p>Moves the frames of code whose instructions are the ones read, only their offsets have changed</p>
+     * <p>Frames whose offset deltas no longer fit their compact forms are given the extended ones</p>
+     */
+    private byte[] stackMapTable(byte[] info) throws IOException {
+        ByteReader r = new ByteReader(info, 0, info.length);
+        ByteWriter w = new ByteWriter(info.length + 16);
+        int n = r.u2();
+        w.u2(n);
+        int read_previous = -1;
+        int previous = -1;
+        for (int i = 0; i < n; i++) {
+            int type = r.u1();
+            int delta;
+            if (type < 128)
+                delta = type & 63;
+            else if (type < 247)
+                throw new IOException("Reserved frame type: " + type);
+            else
+                delta = r.u2();
+            read_previous += delta + 1;
+            int pc = get(read_previous);
+            delta = pc - previous - 1;
+            previous = pc;
+            if (delta < 0)
+                throw new IOException("Frames out of order at " + pc);
+            if (type < 64) { // same_frame
+                if (delta < 64)
+                    w.u1(delta);
+                else {
+                    w.u1(251);
+                    w.u2(delta);
+                }
+            } else if (type < 128 || type == 247) { // same_locals_1_stack_item_frame
+                if (delta < 64)
+                    w.u1(64 + delta);
+                else {
+                    w.u1(247);
+                    w.u2(delta);
+                }
+                verificationType(r, w);
+            } else if (type < 255) { // chop_frame, same_frame_extended and append_frame
+                w.u1(type);
+                w.u2(delta);
+                for (int j = 251; j < type; j++)
+                    verificationType(r, w);
+            } else { // full_frame
+                w.u1(type);
+                w.u2(delta);
+                for (int k = 0; k < 2; k++) { // locals, then stack
+                    int count = r.u2();
+                    w.u2(count);
+                    for (int j = 0; j < count; j++)
+                        verificationType(r, w);
+                }
+            }
+        }
+        if (r.hasMore())
+            throw new IOException("StackMapTable has trailing bytes");
+        return w.toByteArray();
+    }
+
+    private void verificationType(ByteReader r, ByteWriter w) throws IOException {
+        int tag = r.u1();
+        w.u1(tag);
+        if (tag == 7) // Object_variable_info
+            w.u2(r.u2());
+        else if (tag == 8) // Uninitialized_variable_info, the offset of its NEW
+            w.u2(get(r.u2()));
+        else if (tag > 8)
+            throw new IOException("Unknown verification type: " + tag);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <p>Optimizer shrinks the code of methods with the peephole optimizations javac leaves to the JIT, so more of them
+ * fall under the sizes HotSpot inlines</p>
+ * <p>Constant int arithmetic is folded and each constant is pushed in its smallest form. A value stored and loaded
+ * straight back is kept on the stack, and the local dropped if nothing else reads it. Values pushed or duplicated only
+ * to be popped go, jumps to jumps go straight to where they end up, jumps to a return return and jumps to the next
+ * instruction go. Code left unreachable is removed. Nothing is changed across an instruction that is jumped to.</p>
+ * <p>The code of an optimized method has moved. Its line numbers and local variables are moved with it, but a variable
+ * whose stores were kept on the stack shows no value over them and one whose local is no longer used is dropped. Its
+ * frames have to be computed again: a class newer than Java 6 can't be written without a <code>ClassHierarchy</code>
+ * and a Java 6 one written without is left to the old verifier. <code>JarProcessor</code> gives one by default. How many
+ * bytes of code each class saved is logged at <code>FINE</code></p>
+ */
+public final class Optimizer implements ClassTransformer {
+    public void transform(ClassFile cf) {
+        int saved = 0;
+        for (Method m : cf.methods)
+            saved += transform(m);
+        if (saved > 0)
+            Logger.logger.fine("Saved " + saved + " bytes of code in " + cf);
+    }
+
+    /**
+     * <p>Optimizes the code of one method</p>
+     *
+     * @param m the method
+     * @return the number of bytes of code saved
+     */
+    public int transform(Method m) {
+        List<Instruction> code = m.getCode();
+        if (code == null || code.isEmpty())
+            return 0;
+        int length = m.layout()[code.size()];
+        boolean changed = false;
+        // Removing unreachable code can leave jumps to the next instruction, and threading jumps can leave unreachable code
+        for (boolean again = true; again; changed |= again) {
+            again = new Pass(m).run();
+            again |= removeUnreachable(m);
+        }
+        if (!changed)
+            return 0;
+        code = m.getCode();
+        return length - m.layout()[code.size()];
+    }
+
+    /**
+     * <p>Removes the instructions that can't be reached from the start of the code, or from the handler of an entry
+     * of the exception table that covers one that can</p>
+     *
+     * @return whether anything was removed
+     */
+    private static boolean removeUnreachable(Method m) {
+        List<Instruction> code = m.getCode();
+        final int size = code.size();
+        BitSet reachable = new BitSet(size);
+        int[] work = new int[size];
+        int top = reach(reachable, work, 0, 0, size);
+        while (top > 0) {
+            while (top > 0) {
+                int pc = work[--top];
+                Instruction i = code.get(pc);
+                if (i instanceof BranchInstruction) {
+                    top = reach(reachable, work, top, ((BranchInstruction) i).branch_index, size);
+                    if (i instanceof Switch)
+                        for (int target : ((Switch) i).match_pairs.values())
+                            top = reach(reachable, work, top, target, size);
+                }
+                if (!(i instanceof TerminatingInstruction || i instanceof GOTO || i instanceof Switch))
+                    top = reach(reachable, work, top, pc + 1, size);
+            }
+            for (ExceptionTableEntry ete : m.exception_table) {
+                int covered = reachable.nextSetBit(ete.start_index);
+                if (covered != -1 && covered < ete.end_index)
+                    top = reach(reachable, work, top, ete.handler_index, size);
+            }
+        }
+        if (reachable.cardinality() == size)
+            return false;
+        CodeEditor editor = m.edit();
+        for (int pc = reachable.nextClearBit(0); pc < size; pc = reachable.nextClearBit(pc + 1))
+            editor.remove(editor.get(pc));
+        return true;
+    }
+
+    private static int reach(BitSet reachable, int[] work, int top, int pc, int size) {
+        if (pc < size && !reachable.get(pc)) {
+            reachable.set(pc);
+            work[top++] = pc;
+        }
+        return top;
+    }
+
+    /**
+     * <p>Returns the int an instruction pushes, or null if it doesn't push a constant int</p>
+     */
+    private static Integer getInt(Instruction i) {
+        int tag = i.getTag();
+        if (tag >= Constants.ICONST_M1 && tag <= Constants.ICONST_5)
+            return tag - Constants.ICONST_0;
+        if (i instanceof BIPUSH)
+            return (int) ((BIPUSH) i).b;
+        if (i instanceof SIPUSH)
+            return (int) ((SIPUSH) i).s;
+        if (i instanceof LDC && ((LDC) i).c instanceof ConstantInteger)
+            return ((ConstantInteger) ((LDC) i).c).value;
+        return null;
+    }
+
+    /**
+     * <p>Returns the smallest instruction that pushes an int</p>
+     */
+    private static Instruction push(int value) {
+        switch (value) {
+            case -1:
+                return ICONST_M1.INSTANCE;
+            case 0:
+                return ICONST_0.INSTANCE;
+            case 1:
+                return ICONST_1.INSTANCE;
+            case 2:
+                return ICONST_2.INSTANCE;
+            case 3:
+                return ICONST_3.INSTANCE;
+            case 4:
+                return ICONST_4.INSTANCE;
+            case 5:
+                return ICONST_5.INSTANCE;
+        }
+        if (value == (byte) value)
+            return new BIPUSH((byte) value);
+        if (value == (short) value)
+            return new SIPUSH((short) value);
+        return new LDC(new ConstantInteger(value));
+    }
+
+    /**
+     * <p>Returns the smaller instruction that does the same as another, or null if there is none</p>
+     */
+    private static Instruction shrink(Instruction i) {
+        Integer value = getInt(i);
+        if (value != null) {
+            Instruction p = push(value);
+            // An LDC of the same length still takes a constant
+            if (p.getLength() < i.getLength() && !(p instanceof LDC) || p.getLength() == i.getLength() && i instanceof LDC && !(p instanceof LDC))
+                return p;
+            return null;
+        }
+        if (!(i instanceof LDC))
+            return null;
+        Constant c = ((LDC) i).c;
+        if (c instanceof ConstantLong) {
+            long l = ((ConstantLong) c).value;
+            return l == 0 ? LCONST_0.INSTANCE : l == 1 ? LCONST_1.INSTANCE : null;
+        }
+        // Compared as objects so -0.0 isn't taken for 0.0
+        if (c instanceof ConstantFloat) {
+            Float f = ((ConstantFloat) c).value;
+            return f.equals(0f) ? FCONST_0.INSTANCE : f.equals(1f) ? FCONST_1.INSTANCE : f.equals(2f) ? FCONST_2.INSTANCE : null;
+        }
+        if (c instanceof ConstantDouble) {
+            Double d = ((ConstantDouble) c).value;
+            return d.equals(0d) ? DCONST_0.INSTANCE : d.equals(1d) ? DCONST_1.INSTANCE : null;
+        }
+        return null;
+    }
+
+    /**
+     * <p>Works out an int operation on two constants, or returns null if it can't be done without throwing</p>
+     */
+    private static Integer fold(int tag, int x, int y) {
+        switch (tag) {
+            case Constants.IADD:
+                return x + y;
+            case Constants.ISUB:
+                return x - y;
+            case Constants.IMUL:
+                return x * y;
+            case Constants.IDIV:
+                return y == 0 ? null : x / y;
+            case Constants.IREM:
+                return y == 0 ? null : x % y;
+            case Constants.IAND:
+                return x & y;
+            case Constants.IOR:
+                return x | y;
+            case Constants.IXOR:
+                return x ^ y;
+            case Constants.ISHL:
+                return x << y;
+            case Constants.ISHR:
+                return x >> y;
+            case Constants.IUSHR:
+                return x >>> y;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * <p>Works out an int operation on one constant, or returns null if the instruction isn't one</p>
+     */
+    private static Integer fold(int tag, int x) {
+        switch (tag) {
+            case Constants.INEG:
+                return -x;
+            case Constants.I2B:
+                return (int) (byte) x;
+            case Constants.I2C:
+                return (int) (char) x;
+            case Constants.I2S:
+                return (int) (short) x;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * <p>Returns how many slots an instruction pushes that can be popped again without changing anything, or 0 if it
+     * does anything else</p>
+     */
+    private static int getPureSlots(Instruction i) {
+        switch (i.getTag()) {
+            case Constants.ACONST_NULL:
+            case Constants.ICONST_M1:
+            case Constants.ICONST_0:
+            case Constants.ICONST_1:
+            case Constants.ICONST_2:
+            case Constants.ICONST_3:
+            case Constants.ICONST_4:
+            case Constants.ICONST_5:
+            case Constants.FCONST_0:
+            case Constants.FCONST_1:
+            case Constants.FCONST_2:
+            case Constants.BIPUSH:
+            case Constants.SIPUSH:
+            case Constants.ILOAD:
+            case Constants.FLOAD:
+            case Constants.ALOAD:
+            case Constants.DUP:
+                return 1;
+            case Constants.LCONST_0:
+            case Constants.LCONST_1:
+            case Constants.DCONST_0:
+            case Constants.DCONST_1:
+            case Constants.LLOAD:
+            case Constants.DLOAD:
+            case Constants.DUP2:
+                return 2;
+            case Constants.LDC:
+                // Loading a class, method handle or dynamic constant can fail or run code
+                Constant c = ((LDC) i).c;
+                if (c instanceof ConstantInteger || c instanceof ConstantFloat || c instanceof ConstantString)
+                    return 1;
+                if (c instanceof ConstantLong || c instanceof ConstantDouble)
+                    return 2;
+                return 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * <p>One pass over the code of a method, through a <code>CodeEditor</code></p>
+     * <p>Instructions are never inserted, only replaced or removed, so every one is known by its index when the pass
+     * started. How many branches and exception table entries go to each is kept up to date as they're changed.</p>
+     */
+    private static final class Pass {
+        private final CodeEditor editor;
+        private final int[] sources;
+        // How many instructions read each local
+        private final int[] reads;
+
+        Pass(Method m) {
+            List<Instruction> code = m.getCode();
+            sources = m.getSources();
+            reads = new int[m.getMaxLocals() + 1];
+            for (Instruction i : code) {
+                if (i instanceof LoadInstruction)
+                    reads[((LoadInstruction) i).index]++;
+                else if (i instanceof IINC)
+                    reads[((IINC) i).index]++;
+                else if (i instanceof RET)
+                    reads[((RET) i).index]++;
+            }
+            editor = m.edit();
+        }
+
+        /**
+         * <p>Runs the pass</p>
+         *
+         * @return whether anything was changed
+         */
+        boolean run() {
+            boolean changed = false;
+            CodeEditor.Node n = editor.getFirst();
+            while (n != null) {
+                CodeEditor.Node previous = n.getPrevious();
+                if (n instanceof CodeEditor.InstructionNode && optimize((CodeEditor.InstructionNode) n)) {
+                    changed = true;
+                    // Look again at what's there now, it may go further
+                    if (n != editor.getFirst() && n.getPrevious() == null)
+                        n = previous == null ? editor.getFirst() : previous.getNext();
+                    continue;
+                }
+                n = n.getNext();
+            }
+            return changed;
+        }
+
+        private boolean optimize(CodeEditor.InstructionNode a) {
+            Instruction i = a.getInstruction();
+            Instruction smaller = shrink(i);
+            if (smaller != null) {
+                editor.replace(a, smaller);
+                return true;
+            }
+            if (i instanceof LoadInstruction && ((LoadInstruction) i).wide && ((LoadInstruction) i).index <= 255) {
+                ((LoadInstruction) i).wide = false;
+                return true;
+            }
+            if (i instanceof StoreInstruction && ((StoreInstruction) i).wide && ((StoreInstruction) i).index <= 255) {
+                ((StoreInstruction) i).wide = false;
+                return true;
+            }
+            if (i instanceof IINC && ((IINC) i).wide) {
+                ((IINC) i).wide = false;
+                // Still wide if its operands need it
+                return !((IINC) i).isWide();
+            }
+            if (i instanceof BranchInstruction)
+                return optimizeBranch(a, (BranchInstruction) i);
+            CodeEditor.InstructionNode b = next(a);
+            if (b == null || isTarget(b))
+                return false;
+            Instruction j = b.getInstruction();
+            Integer x = getInt(i);
+            if (x != null) {
+                Integer y = getInt(j);
+                Integer result = null;
+                CodeEditor.InstructionNode c = next(b);
+                if (y != null && c != null && !isTarget(c))
+                    result = fold(c.getInstruction().getTag(), x, y);
+                if (result != null) {
+                    editor.replace(a, push(result));
+                    editor.remove(b);
+                    editor.remove(c);
+                    return true;
+                }
+                result = fold(j.getTag(), x);
+                if (result != null) {
+                    editor.replace(a, push(result));
+                    editor.remove(b);
+                    return true;
+                }
+            }
+            int slots = getPureSlots(i);
+            if (slots != 0 && j.getTag() == (slots == 1 ? Constants.POP : Constants.POP2)) {
+                if (i instanceof LoadInstruction)
+                    reads[((LoadInstruction) i).index]--;
+                remove(a);
+                editor.remove(b);
+                return true;
+            }
+            if (i instanceof StoreInstruction && j instanceof LoadInstruction) {
+                StoreInstruction store = (StoreInstruction) i;
+                LoadInstruction load = (LoadInstruction) j;
+                if (store.index != load.index || store.getTag() - Constants.ISTORE != load.getTag() - Constants.ILOAD)
+                    return false;
+                boolean category2 = store instanceof LSTORE || store instanceof DSTORE;
+                if (reads[store.index] == 1) {
+                    // Nothing else reads the local, so it needn't be stored at all
+                    reads[store.index]--;
+                    remove(a);
+                    editor.remove(b);
+                    return true;
+                }
+                // A load of the first four locals takes as little as a DUP
+                if (store.index > 3) {
+                    reads[store.index]--;
+                    editor.replace(a, category2 ? DUP2.INSTANCE : DUP.INSTANCE);
+                    editor.replace(b, store);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean optimizeBranch(CodeEditor.InstructionNode a, BranchInstruction bi) {
+            if (bi instanceof JSR)
+                return false;
+            boolean changed = false;
+            CodeEditor.Label target = editor.getTarget(a);
+            CodeEditor.Label threaded = thread(a, target);
+            if (threaded != target) {
+                retarget(target, threaded);
+                editor.setTarget(a, threaded);
+                target = threaded;
+                changed = true;
+            }
+            if (bi instanceof Switch) {
+                for (Integer key : ((Switch) bi).match_pairs.keySet()) {
+                    CodeEditor.Label arm = editor.getTarget(a, key);
+                    threaded = thread(a, arm);
+                    if (threaded != arm) {
+                        retarget(arm, threaded);
+                        editor.setTarget(a, key, threaded);
+                        changed = true;
+                    }
+                }
+                return changed;
+            }
+            if (!(bi instanceof GOTO))
+                return changed;
+            CodeEditor.InstructionNode to = at(target);
+            if (to != null && to == next(a)) {
+                sources[to.start_index]--;
+                remove(a);
+                return true;
+            }
+            // Anything else that ends the code could throw from somewhere other exception handlers cover
+            if (to != null && to.getInstruction() instanceof TerminatingInstruction && !(to.getInstruction() instanceof ATHROW) && !(to.getInstruction() instanceof RET)) {
+                sources[to.start_index]--;
+                editor.replace(a, to.getInstruction());
+                return true;
+            }
+            return changed;
+        }
+
+        /**
+         * <p>Follows a label through any <code>GOTO</code>s it leads to</p>
+         *
+         * @return where the jumps end up, or the label itself if they go round in a loop
+         */
+        private CodeEditor.Label thread(CodeEditor.InstructionNode from, CodeEditor.Label target) {
+            List<CodeEditor.InstructionNode> seen = new ArrayList<>();
+            seen.add(from);
+            CodeEditor.Label l = target;
+            for (CodeEditor.InstructionNode to = at(l); to != null && to.getInstruction() instanceof GOTO; to = at(l)) {
+                if (seen.contains(to))
+                    return target;
+                seen.add(to);
+                l = editor.getTarget(to);
+            }
+            return l;
+        }
+
+        private void retarget(CodeEditor.Label from, CodeEditor.Label to) {
+            CodeEditor.InstructionNode n = at(from);
+            if (n != null)
+                sources[n.start_index]--;
+            n = at(to);
+            if (n != null)
+                sources[n.start_index]++;
+        }
+
+        private boolean isTarget(CodeEditor.InstructionNode n) {
+            return n.start_index == -1 || sources[n.start_index] != 0;
+        }
+
+        // Removes an instruction that may be jumped to, its jumps go to the next instruction from then on
+        private void remove(CodeEditor.InstructionNode n) {
+            CodeEditor.InstructionNode after = next(n);
+            if (after != null)
+                sources[after.start_index] += sources[n.start_index];
+            editor.remove(n);
+        }
+
+        private static CodeEditor.InstructionNode next(CodeEditor.Node n) {
+            for (n = n.getNext(); n != null; n = n.getNext())
+                if (n instanceof CodeEditor.InstructionNode)
+                    return (CodeEditor.InstructionNode) n;
+            return null;
+        }
+
+        // The instruction a jump to the label runs
+        private static CodeEditor.InstructionNode at(CodeEditor.Label l) {
+            return next(l);
+        }
+    }
+}
\ No newline at end of file
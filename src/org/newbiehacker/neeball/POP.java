@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class POP extends Instruction {
+    public static final POP INSTANCE = new POP();
+
+    public POP() {
+        this.tag = Constants.POP;
+    }
+
     public String toString() {
         return "pop";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class POP2 extends Instruction {
+    public static final POP2 INSTANCE = new POP2();
+
+    public POP2() {
+        this.tag = Constants.POP2;
+    }
+
     public String toString() {
         return "pop2";
     }
@@ -43,6 +43,7 @@ public final class PUTFIELD extends Instruction {
      */
     public PUTFIELD(ConstantFieldref field) {
         this.field = field;
+        this.tag = Constants.PUTFIELD;
     }
 
     public String toString() {
@@ -57,8 +58,8 @@ public final class PUTFIELD extends Instruction {
         return -2 - (field.descriptor.equals("D") || field.descriptor.equals("J")? 1: 0);
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        field = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
     }
 }
\ No newline at end of file
@@ -43,6 +43,7 @@ public final class PUTSTATIC extends Instruction {
      */
     public PUTSTATIC(ConstantFieldref field) {
         this.field = field;
+        this.tag = Constants.PUTSTATIC;
     }
 
     public String toString() {
@@ -54,11 +55,11 @@ public final class PUTSTATIC extends Instruction {
     }
 
     public int getStackChange() {
-        return -2 - (field.descriptor.equals("D") || field.descriptor.equals("J")? 1: 0);
+        return -1 - (field.descriptor.equals("D") || field.descriptor.equals("J")? 1: 0);
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        field = null;
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(index);
     }
 }
\ No newline at end of file
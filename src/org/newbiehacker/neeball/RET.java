@@ -27,7 +27,7 @@
 
 package org.newbiehacker.neeball;
 
-public final class RET extends Instruction implements TerminatingInstruction {
+public final class RET extends Instruction implements TerminatingInstruction, IWideInstruction {
     public int index;
     boolean wide;
 
@@ -38,6 +38,7 @@ public final class RET extends Instruction implements TerminatingInstruction {
      */
     public RET(int index) {
         this.index = index;
+        this.tag = Constants.RET;
     }
 
     RET(int i, boolean b) {
@@ -50,6 +51,23 @@ public final class RET extends Instruction implements TerminatingInstruction {
     }
 
     public int getLength() {
-        return 2 + (index > 255 || wide ? 2 : 0);
+        return 2 + (isWide() ? 2 : 0);
+    }
+
+    public boolean isWide() {
+        return wide || index > 255;
+    }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (index > 0xffff)
+            throw new EncodingException("Local variable index out of range for " + this);
+        if (isWide()) {
+            w.u1(Constants.WIDE);
+            w.u1(tag);
+            w.u2(index);
+        } else {
+            w.u1(tag);
+            w.u1(index);
+        }
     }
 }
\ No newline at end of file
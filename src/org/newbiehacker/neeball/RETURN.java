@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class RETURN extends Instruction implements TerminatingInstruction {
+    public static final RETURN INSTANCE = new RETURN();
+
+    public RETURN() {
+        this.tag = Constants.RETURN;
+    }
+
     public String toString() {
         return "return";
     }
@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class SALOAD extends Instruction {
+    public static final SALOAD INSTANCE = new SALOAD();
+
+    public SALOAD() {
+        this.tag = Constants.SALOAD;
+    }
+
     public String toString() {
         return "saload";
     }
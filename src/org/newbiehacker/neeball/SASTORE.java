@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class SASTORE extends Instruction {
+    public static final SASTORE INSTANCE = new SASTORE();
+
+    public SASTORE() {
+        this.tag = Constants.SASTORE;
+    }
+
     public String toString() {
         return "sastore";
     }
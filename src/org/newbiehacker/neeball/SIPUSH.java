@@ -40,6 +40,7 @@ public final class SIPUSH extends Instruction {
      */
     public SIPUSH(short s) {
         this.s = s;
+        this.tag = Constants.SIPUSH;
     }
 
     public String toString() {
@@ -53,4 +54,9 @@ public final class SIPUSH extends Instruction {
     public int getStackChange() {
         return 1;
     }
+
+    void encode(ByteWriter w) {
+        w.u1(tag);
+        w.u2(s);
+    }
 }
\ No newline at end of file
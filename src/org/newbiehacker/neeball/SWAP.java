@@ -28,6 +28,12 @@
 package org.newbiehacker.neeball;
 
 public final class SWAP extends Instruction {
+    public static final SWAP INSTANCE = new SWAP();
+
+    public SWAP() {
+        this.tag = Constants.SWAP;
+    }
+
     public String toString() {
         return "swap";
     }
@@ -47,13 +47,9 @@ public final class SimpleUTFConstantPoolModifier implements ConstantPoolModifier
         for (Constant c1 : c.constants) {
             if (c1 instanceof ConstantUtf8) {
                 ConstantUtf8 cu = (ConstantUtf8) c1;
-                if (cu.value.equals(search))
+                if (search.equals(cu.getValue()))
                     cu.value = replace;
             }
         }
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
 }
\ No newline at end of file
@@ -30,7 +30,7 @@ package org.newbiehacker.neeball;
 /**
  * @author newbiehacker
  */
-public abstract class StoreInstruction extends Instruction {
+public abstract class StoreInstruction extends Instruction implements IWideInstruction {
     public int index;
     boolean wide;
 
@@ -44,10 +44,28 @@ public abstract class StoreInstruction extends Instruction {
     }
 
     public int getLength() {
-        return 1 + (index > 3? 1: 0) + (index > 255 || wide ? 1: 0);
+        return isWide()? 4: index > 3? 2: 1;
     }
 
     public int getStackChange() {
         return -1;
     }
+
+    public final boolean isWide() {
+        return wide || index > 255;
+    }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (index > 0xffff)
+            throw new EncodingException("Local variable index out of range for " + this);
+        if (isWide()) {
+            w.u1(Constants.WIDE);
+            w.u1(tag);
+            w.u2(index);
+        } else if (index > 3) {
+            w.u1(tag);
+            w.u1(index);
+        } else
+            w.u1(Constants.ISTORE_0 + (tag - Constants.ISTORE) * 4 + index);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball;
+
+import org.newbiehacker.neeball.pool.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <p>StringConcatTransformer rewrites string concatenation done through a <code>StringBuilder</code> into a single
+ * <code>INVOKEDYNAMIC</code> linked by <code>StringConcatFactory.makeConcatWithConstants</code>, as javac has compiled
+ * it since Java 9</p>
+ * <p>Only whole chains are rewritten: <code>new StringBuilder</code>, its constructor, an <code>append</code> for
+ * each value and <code>toString</code>, with the builder used for nothing else. Values may branch, as conditional
+ * expressions do, but only forwards within themselves, and nothing outside the chain may jump into it. Values are
+ * worked out and turned into strings in the same order as before, an object is turned into one by
+ * <code>String.valueOf</code> where it was appended, so one that changes later in the chain still shows as it was.
+ * String and int constants are folded into the recipe.</p>
+ * <p>Classes older than Java 9 are left alone. The code of a rewritten method has moved, so a class from Java 6 on
+ * needs its frames computing, write it with a <code>ClassHierarchy</code></p>
+ */
+public final class StringConcatTransformer implements ClassTransformer {
+    private static final String BUILDER = "java/lang/StringBuilder";
+    private static final String FACTORY = "java/lang/invoke/StringConcatFactory";
+    private static final String STRING = "Ljava/lang/String;";
+    private static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;";
+    // The most slots of arguments StringConcatFactory takes
+    private static final int MAX_SLOTS = 200;
+
+    public void transform(ClassFile cf) {
+        if (cf.major_version < 53)
+            return;
+        int rewritten = 0;
+        for (Method m : cf.methods)
+            rewritten += transform(cf, m);
+        if (rewritten > 0)
+            Logger.logger.fine("Rewrote " + rewritten + " string concatenations in " + cf);
+    }
+
+    /**
+     * <p>Rewrites the concatenations in one method of a class from Java 9 on</p>
+     *
+     * @param cf the class the method belongs to, which is given the bootstrap methods
+     * @param m  the method
+     * @return the number of concatenations rewritten
+     */
+    public int transform(ClassFile cf, Method m) {
+        List<Instruction> code = m.getCode();
+        if (code == null)
+            return 0;
+        int[] sources = m.getSources();
+        List<Chain> chains = new ArrayList<>();
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in instanceof NEW && ((NEW) in).type.equals(BUILDER)) {
+                Chain c = read(code, i, sources);
+                if (c != null)
+                    chains.add(c);
+            }
+        }
+        if (chains.isEmpty())
+            return 0;
+        // Nested chains are rewritten along with the one they're in, none of them remove anything another one does
+        CodeEditor editor = m.edit();
+        for (Chain c : chains) {
+            for (int i = 0; i < c.removed.size(); i++)
+                editor.remove(editor.get(c.removed.get(i)));
+            for (int i = 0; i < c.converted.size(); i++)
+                editor.replace(editor.get(c.converted.get(i)), new INVOKESTATIC(new ConstantMethodref("java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;")));
+            ConstantMethodHandle bootstrap = new ConstantMethodHandle(ConstantMethodHandle.REF_invokeStatic,
+                    new ConstantMethodref(FACTORY, "makeConcatWithConstants", BOOTSTRAP_DESCRIPTOR));
+            int index = cf.addBootstrapMethod(new BootstrapMethod(bootstrap, new ConstantString(c.recipe.toString())));
+            ConstantInvokeDynamic call_site = new ConstantInvokeDynamic(index, "makeConcatWithConstants", "(" + c.types + ")Ljava/lang/String;");
+            editor.replace(editor.get(c.end), new INVOKEDYNAMIC(call_site));
+        }
+        return chains.size();
+    }
+
+    /**
+     * <p>A concatenation that can be rewritten</p>
+     */
+    private static final class Chain {
+        // The indices of the instructions that go, other than the toString
+        final List<Integer> removed = new ArrayList<>();
+        // The indices of the appends of objects, which String.valueOf replaces
+        final List<Integer> converted = new ArrayList<>();
+        final StringBuilder recipe = new StringBuilder();
+        final StringBuilder types = new StringBuilder();
+        int slots;
+        // The index of the toString, which the INVOKEDYNAMIC replaces
+        int end;
+
+        /**
+         * <p>Adds the value worked out by the instructions from <code>from</code> up to <code>to</code>, folding it
+         * into the recipe if it's a constant, along with the constructor or append at <code>to</code> that took it</p>
+         *
+         * @return false if there are too many values
+         */
+        boolean add(List<Instruction> code, int from, int to, String type) {
+            String constant = to - from == 1 ? getConstant(code.get(from), type) : null;
+            if (constant != null) {
+                recipe.append(constant);
+                removed.add(from);
+                removed.add(to);
+                return true;
+            }
+            // Only a String can't change before the call site reads it
+            if (!type.equals(STRING) && type.charAt(0) == 'L') {
+                converted.add(to);
+                type = STRING;
+            } else
+                removed.add(to);
+            recipe.append('\u0001');
+            types.append(type);
+            slots += type.equals("J") || type.equals("D") ? 2 : 1;
+            return slots <= MAX_SLOTS;
+        }
+    }
+
+    /**
+     * <p>Reads a chain from the <code>NEW</code> of its builder</p>
+     *
+     * @return the chain, or null if it can't be rewritten
+     */
+    private static Chain read(List<Instruction> code, int start, int[] sources) {
+        if (start + 1 >= code.size() || code.get(start + 1).getTag() != Constants.DUP || sources[start + 1] != 0)
+            return null;
+        Chain c = new Chain();
+        c.removed.add(start);
+        c.removed.add(start + 1);
+        boolean constructed = false;
+        // The slots above the builder, and where the value being worked out started
+        int depth = 0;
+        int from = start + 2;
+        // The depth at each instruction a branch of the value being worked out goes to, and how many go there
+        HashMap<Integer, Integer> joins = new HashMap<>();
+        HashMap<Integer, Integer> branches = new HashMap<>();
+        boolean reachable = true;
+        for (int k = start + 2; k < code.size(); k++) {
+            Instruction in = code.get(k);
+            Integer joined = joins.remove(k);
+            if (sources[k] != 0) {
+                if (joined == null || branches.get(k) != sources[k] || (reachable && depth != joined))
+                    return null;
+                depth = joined;
+            } else if (!reachable)
+                return null;
+            reachable = true;
+            if (in instanceof BranchInstruction) {
+                int target = ((BranchInstruction) in).branch_index;
+                if (in instanceof Switch || in instanceof JSR || target <= k)
+                    return null;
+                depth += in.getStackChange();
+                if (depth < 0)
+                    return null;
+                joined = joins.put(target, depth);
+                if (joined != null && joined != depth)
+                    return null;
+                Integer n = branches.get(target);
+                branches.put(target, n == null ? 1 : n + 1);
+                reachable = in.getTag() != Constants.GOTO;
+                continue;
+            }
+            if (in instanceof TerminatingInstruction)
+                return null;
+            ConstantMethodref method = null;
+            if (in instanceof INVOKESPECIAL)
+                method = ((INVOKESPECIAL) in).method;
+            else if (in instanceof INVOKEVIRTUAL)
+                method = ((INVOKEVIRTUAL) in).method;
+            if (method != null && method.class_name.equals(BUILDER) && Util.getDescriptorInfo(method.descriptor).param_slots == depth) {
+                // Called on the builder itself, the value mustn't branch past it
+                if (!joins.isEmpty())
+                    return null;
+                if (!constructed) {
+                    if (!(in instanceof INVOKESPECIAL) || !method.name.equals("<init>"))
+                        return null;
+                    if (method.descriptor.equals("(Ljava/lang/String;)V")) {
+                        // The builder throws on null where concatenation wouldn't, so only take what can't be null
+                        if (sources[k] != 0 || !isNonNull(code, from, k) || !c.add(code, from, k, STRING))
+                            return null;
+                    } else if (method.descriptor.equals("()V"))
+                        c.removed.add(k);
+                    else
+                        return null;
+                    constructed = true;
+                } else if (method.name.equals("append") && method.descriptor.endsWith(")Ljava/lang/StringBuilder;")) {
+                    String type = method.descriptor.substring(1, method.descriptor.indexOf(')'));
+                    if (!isAppendable(type) || !c.add(code, from, k, type))
+                        return null;
+                } else if (method.name.equals("toString") && method.descriptor.equals("()Ljava/lang/String;")) {
+                    c.end = k;
+                    return c;
+                } else
+                    return null;
+                from = k + 1;
+                depth = 0;
+                continue;
+            }
+            if (getSlotsRead(in) > depth)
+                return null;
+            depth += in.getStackChange();
+            // Below that it has used the builder
+            if (depth < 0)
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * <p>Returns how many slots an instruction reads from the stack that it may leave there, anything else that takes
+     * the builder pops it for good and leaves the depth below 0</p>
+     */
+    private static int getSlotsRead(Instruction in) {
+        switch (in.getTag()) {
+            case Constants.DUP:
+            case Constants.CHECKCAST:
+            case Constants.INSTANCEOF:
+            case Constants.ARRAYLENGTH:
+            case Constants.GETFIELD:
+                return 1;
+            case Constants.DUP_X1:
+            case Constants.DUP2:
+            case Constants.SWAP:
+                return 2;
+            case Constants.DUP_X2:
+            case Constants.DUP2_X1:
+                return 3;
+            case Constants.DUP2_X2:
+                return 4;
+            case Constants.INVOKEVIRTUAL:
+                return Util.getDescriptorInfo(((INVOKEVIRTUAL) in).method.descriptor).param_slots + 1;
+            case Constants.INVOKESPECIAL:
+                return Util.getDescriptorInfo(((INVOKESPECIAL) in).method.descriptor).param_slots + 1;
+            case Constants.INVOKEINTERFACE:
+                return Util.getDescriptorInfo(((INVOKEINTERFACE) in).method.descriptor).param_slots + 1;
+            case Constants.INVOKESTATIC:
+                return Util.getDescriptorInfo(((INVOKESTATIC) in).method.descriptor).param_slots;
+            case Constants.INVOKEDYNAMIC:
+                return Util.getDescriptorInfo(((INVOKEDYNAMIC) in).call_site.descriptor).param_slots;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isAppendable(String type) {
+        // char[] and CharSequence are appended as their chars, which needn't be what their toString gives
+        switch (type) {
+            case "Z":
+            case "C":
+            case "I":
+            case "J":
+            case "F":
+            case "D":
+            case "Ljava/lang/String;":
+            case "Ljava/lang/Object;":
+            case "Ljava/lang/StringBuffer;":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Whether the value passed to StringBuilder(String) is a constant or comes from String.valueOf
+    private static boolean isNonNull(List<Instruction> code, int from, int to) {
+        if (to - from == 1 && code.get(from) instanceof LDC && ((LDC) code.get(from)).c instanceof ConstantString)
+            return true;
+        if (to <= from || !(code.get(to - 1) instanceof INVOKESTATIC))
+            return false;
+        ConstantMethodref method = ((INVOKESTATIC) code.get(to - 1)).method;
+        return method.class_name.equals("java/lang/String") && method.name.equals("valueOf");
+    }
+
+    /**
+     * <p>Returns the text of a constant as it would be appended, or null if it isn't one that can be folded</p>
+     */
+    private static String getConstant(Instruction in, String type) {
+        String text = null;
+        if (in instanceof LDC && ((LDC) in).c instanceof ConstantString) {
+            if (type.charAt(0) == 'L')
+                text = ((ConstantString) ((LDC) in).c).value;
+        } else if (type.equals("I") || type.equals("C")) {
+            int tag = in.getTag();
+            Integer value = null;
+            if (tag >= Constants.ICONST_M1 && tag <= Constants.ICONST_5)
+                value = tag - Constants.ICONST_0;
+            else if (in instanceof BIPUSH)
+                value = (int) ((BIPUSH) in).b;
+            else if (in instanceof SIPUSH)
+                value = (int) ((SIPUSH) in).s;
+            else if (in instanceof LDC && ((LDC) in).c instanceof ConstantInteger)
+                value = ((ConstantInteger) ((LDC) in).c).value;
+            if (value != null)
+                text = type.equals("I") ? String.valueOf(value) : String.valueOf((char) value.intValue());
+        }
+        // The recipe marks arguments and constants with these
+        if (text == null || text.indexOf('\u0001') != -1 || text.indexOf('\u0002') != -1)
+            return null;
+        return text;
+    }
+}
\ No newline at end of file
@@ -62,12 +62,4 @@ public abstract class Switch extends BranchInstruction {
     public int getStackChange() {
         return -1;
     }
-
-    protected void finalize() throws Throwable {
-        super.finalize();
-        match_pair_offsets.clear();
-        match_pair_offsets = null;
-        match_pairs.clear();
-        match_pairs = null;
-    }
 }
\ No newline at end of file
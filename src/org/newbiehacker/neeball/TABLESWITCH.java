@@ -40,10 +40,12 @@ import java.util.List;
 public final class TABLESWITCH extends Switch {
     TABLESWITCH(int default_offset, int[] matches, int[] offsets) {
         super(default_offset, matches, offsets);
+        this.tag = Constants.TABLESWITCH;
     }
 
     public TABLESWITCH(int default_index, List<Integer> matches, List<Integer> indices) {
         super(default_index, matches, indices);
+        this.tag = Constants.TABLESWITCH;
     }
 
     public String toString() {
@@ -61,4 +63,20 @@ public final class TABLESWITCH extends Switch {
     public int getLength() {
         return 13 + match_pairs.size() * 4;
     }
+
+    void encode(ByteWriter w) throws EncodingException {
+        if (match_pair_offsets.isEmpty())
+            throw new EncodingException("tableswitch must have at least one case");
+        int low = match_pair_offsets.firstKey();
+        int high = match_pair_offsets.lastKey();
+        if ((long) high - low + 1 != match_pair_offsets.size())
+            throw new EncodingException("tableswitch cases are not contiguous: " + this);
+        w.u1(tag);
+        w.align();
+        w.s4(branchoffset);
+        w.s4(low);
+        w.s4(high);
+        for (Integer offset : match_pair_offsets.values())
+            w.s4(offset);
+    }
 }
\ No newline at end of file
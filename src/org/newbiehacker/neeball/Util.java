@@ -40,41 +40,40 @@ import java.util.HashMap;
 public final class Util {
     private Util() {}
 
-    // Cache counts of interfaces
-    private static HashMap<String, Integer> countMap;
+    // Parsed method descriptors, direct-mapped by hash so the cache stays bounded without locking.
+    // Entries are immutable, so a thread that reads a stale or racing slot just parses the descriptor again
+    private static final DescriptorInfo[] descriptorCache = new DescriptorInfo[4096];
 
+    static DescriptorInfo getDescriptorInfo(String descriptor) {
+        int slot = descriptor.hashCode() & (descriptorCache.length - 1);
+        DescriptorInfo info = descriptorCache[slot];
+        if (info != null && info.descriptor.equals(descriptor))
+            return info;
+        info = new DescriptorInfo(descriptor);
+        descriptorCache[slot] = info;
+        return info;
+    }
+
+    /**
+     * <p>Counts the slots the arguments of a method take, plus one for the object it's invoked on</p>
+     *
+     * @param descriptor the descriptor of the method
+     * @return the count as <code>INVOKEINTERFACE</code> encodes it
+     */
     static int getParamCount(String descriptor) {
-        String n = descriptor.substring(1, descriptor.indexOf(')'));
-        if (countMap.containsKey(descriptor))
-            return countMap.get(descriptor);
-        int count = 1;
-        char[] chars = n.toCharArray();
-        boolean arrayObj;
-        for(int i = chars.length - 1; i >= 0; i--) {
-            arrayObj = false;
-            while(chars[i] == ']') {
-                arrayObj = true;
-                --i;
-            }
-            if(chars[i] == ';') {
-                while(chars[i] != 'L')
-                    --i;
-            }
-            if(!arrayObj && i > 0 && (chars[i] == 'J' || chars[i] == 'D'))
-                count += 2;
-            else
-                ++count;
-        }
-        countMap.put(descriptor, count);
-        return count;
+        return getDescriptorInfo(descriptor).param_slots + 1;
     }
 
-    static int getMethodStackUse(String descriptor) {
-        String retVal = descriptor.substring(descriptor.indexOf(')') + 1);
-        int i = -getParamCount(descriptor) + 2;
-        if(retVal.equals("J") || retVal.equals("D"))
-            ++i;
-        return i;
+    /**
+     * <p>Works out how an invoke changes the height of the stack</p>
+     *
+     * @param descriptor   the descriptor of the invoked method
+     * @param has_receiver whether the object the method is invoked on is popped as well as the arguments
+     * @return the change in slots
+     */
+    static int getMethodStackUse(String descriptor, boolean has_receiver) {
+        DescriptorInfo info = getDescriptorInfo(descriptor);
+        return info.return_slots - info.param_slots - (has_receiver ? 1 : 0);
     }
 
     public static String getFriendlyMethodString(String name, String descriptor) {
@@ -196,8 +195,4 @@ public final class Util {
             ret += "[]";
         return ret;
     }
-
-    static {
-        countMap = new HashMap<String, Integer>();
-    }
 }
\ No newline at end of file
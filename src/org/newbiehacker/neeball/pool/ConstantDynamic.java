@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball.pool;
+
+import org.newbiehacker.neeball.Constants;
+
+/**
+ * <p>A constant computed by a bootstrap method of the class, loaded with <code>LDC</code> or passed to another
+ * bootstrap method</p>
+ * <p>It takes a single pool entry whatever its type, see <code>isCategory2()</code> for whether it's a long or
+ * double</p>
+ */
+public final class ConstantDynamic extends ConstantDynamicAndInvokeDynamic {
+    /**
+     * <p>Constructs a new <code>ConstantDynamic</code> with the specified bootstrap method, name and descriptor</p>
+     *
+     * @param bootstrap_method_attr_index the index of the bootstrap method in <code>ClassFile.bootstrap_methods</code>
+     * @param name                        the name passed to the bootstrap method
+     * @param descriptor                  the field descriptor of the constant
+     */
+    public ConstantDynamic(int bootstrap_method_attr_index, String name, String descriptor) {
+        super(bootstrap_method_attr_index, name, descriptor);
+    }
+
+    ConstantDynamic() {
+    }
+
+    /**
+     * <p>Returns whether the constant is a long or a double, which take two slots on the stack</p>
+     *
+     * @return true if the descriptor is <code>J</code> or <code>D</code>
+     */
+    public boolean isCategory2() {
+        return "J".equals(descriptor) || "D".equals(descriptor);
+    }
+
+    public byte getTag() {
+        return Constants.CONSTANT_Dynamic;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball.pool;
+
+/**
+ * <p>A constant or call site whose value is worked out by a bootstrap method of the class the first time it's used</p>
+ */
+public abstract class ConstantDynamicAndInvokeDynamic extends Constant {
+    /**
+     * <p>The index of the bootstrap method in <code>ClassFile.bootstrap_methods</code></p>
+     */
+    public int bootstrap_method_attr_index;
+    /**
+     * <p>The name passed to the bootstrap method</p>
+     */
+    public String name;
+    /**
+     * <p>The descriptor of the constant, or of the method of the call site</p>
+     */
+    public String descriptor;
+    int name_and_type_index;
+
+    protected ConstantDynamicAndInvokeDynamic(int bootstrap_method_attr_index, String name, String descriptor) {
+        this.bootstrap_method_attr_index = bootstrap_method_attr_index;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    ConstantDynamicAndInvokeDynamic() {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConstantDynamicAndInvokeDynamic that = (ConstantDynamicAndInvokeDynamic) o;
+
+        if (bootstrap_method_attr_index != that.bootstrap_method_attr_index) return false;
+        if (descriptor != null ? !descriptor.equals(that.descriptor) : that.descriptor != null) return false;
+        if (name != null ? !name.equals(that.name) : that.name != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bootstrap_method_attr_index;
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (descriptor != null ? descriptor.hashCode() : 0);
+        return result;
+    }
+
+    public String toString() {
+        return "#" + bootstrap_method_attr_index + " " + name + " " + descriptor;
+    }
+}
\ No newline at end of file
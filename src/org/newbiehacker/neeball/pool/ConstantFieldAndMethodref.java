@@ -89,11 +89,4 @@ public abstract class ConstantFieldAndMethodref extends Constant {
             return Util.getFriendlyDescriptorString(descriptor) + " " + class_name.replace('/', '.') + "." + name;
         return Util.getMethodReturnType(descriptor) + " " + class_name.replace('/', '.') + "." + name + "(" + Util.getMethodParams(descriptor) + ")";
     }
-
-    protected void finalize() throws Throwable {
-        class_name = null;
-        name = null;
-        descriptor = null;
-        super.finalize();
-    }
 }
\ No newline at end of file
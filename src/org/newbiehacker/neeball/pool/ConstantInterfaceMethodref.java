@@ -36,7 +36,7 @@ import org.newbiehacker.neeball.Constants;
  * Modification and redistribution without explicit permission by the creator(s) is prohibited
  * This source may be modified for personal use as long as the original author is accredited
  */
-public final class ConstantInterfaceMethodref extends ConstantFieldAndMethodref {
+public final class ConstantInterfaceMethodref extends ConstantMethodref {
     /**
      * <p>Constructs a new <code>ConstantInterfaceMethodref</code> with the specified class_name, name and descriptor</p>
      *
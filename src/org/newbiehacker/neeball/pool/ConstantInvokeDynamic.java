@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball.pool;
+
+import org.newbiehacker.neeball.Constants;
+
+/**
+ * <p>The call site of an <code>INVOKEDYNAMIC</code>, linked by a bootstrap method of the class</p>
+ */
+public final class ConstantInvokeDynamic extends ConstantDynamicAndInvokeDynamic {
+    /**
+     * <p>Constructs a new <code>ConstantInvokeDynamic</code> with the specified bootstrap method, name and descriptor</p>
+     *
+     * @param bootstrap_method_attr_index the index of the bootstrap method in <code>ClassFile.bootstrap_methods</code>
+     * @param name                        the name passed to the bootstrap method
+     * @param descriptor                  the descriptor of the method of the call site
+     */
+    public ConstantInvokeDynamic(int bootstrap_method_attr_index, String name, String descriptor) {
+        super(bootstrap_method_attr_index, name, descriptor);
+    }
+
+    ConstantInvokeDynamic() {
+    }
+
+    public byte getTag() {
+        return Constants.CONSTANT_InvokeDynamic;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2007, James Lawrence
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.newbiehacker.neeball.pool;
+
+import org.newbiehacker.neeball.Constants;
+
+/**
+ * <p>A method handle, the kind of access it makes and the field or method it makes it to</p>
+ */
+public final class ConstantMethodHandle extends Constant {
+    public static final int REF_getField = 1;
+    public static final int REF_getStatic = 2;
+    public static final int REF_putField = 3;
+    public static final int REF_putStatic = 4;
+    public static final int REF_invokeVirtual = 5;
+    public static final int REF_invokeStatic = 6;
+    public static final int REF_invokeSpecial = 7;
+    public static final int REF_newInvokeSpecial = 8;
+    public static final int REF_invokeInterface = 9;
+
+    private static final String[] KINDS = {null, "getField", "getStatic", "putField", "putStatic", "invokeVirtual",
+            "invokeStatic", "invokeSpecial", "newInvokeSpecial", "invokeInterface"};
+
+    /**
+     * <p>The kind of this handle, one of the <code>REF_</code> constants</p>
+     */
+    public int reference_kind;
+    /**
+     * <p>The field for the first four kinds, otherwise the method</p>
+     */
+    public ConstantFieldAndMethodref reference;
+    int reference_index;
+
+    /**
+     * <p>Constructs a new <code>ConstantMethodHandle</code> of the specified kind to the specified field or method</p>
+     *
+     * @param reference_kind the kind of the handle, one of the <code>REF_</code> constants
+     * @param reference      the field or method the handle refers to
+     */
+    public ConstantMethodHandle(int reference_kind, ConstantFieldAndMethodref reference) {
+        this.reference_kind = reference_kind;
+        this.reference = reference;
+    }
+
+    ConstantMethodHandle() {
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConstantMethodHandle that = (ConstantMethodHandle) o;
+
+        if (reference_kind != that.reference_kind) return false;
+        if (reference != null ? !reference.equals(that.reference) : that.reference != null) return false;
+
+        return true;
+    }
+
+    public int hashCode() {
+        return 31 * reference_kind + (reference != null ? reference.hashCode() : 0);
+    }
+
+    public String toString() {
+        return (reference_kind > 0 && reference_kind < KINDS.length ? KINDS[reference_kind] : "kind " + reference_kind) + " " + reference;
+    }
+
+    public byte getTag() {
+        return Constants.CONSTANT_MethodHandle;
+    }
+}
\ No newline at end of file
@@ -36,7 +36,7 @@ import org.newbiehacker.neeball.Constants;
  * Modification and redistribution without explicit permission by the creator(s) is prohibited
  * This source may be modified for personal use as long as the original author is accredited
  */
-public final class ConstantMethodref extends ConstantFieldAndMethodref {
+public class ConstantMethodref extends ConstantFieldAndMethodref {
     /**
      * <p>Constructs a new <code>ConstantMethodref</code> with the specified class_name, name and descriptor</p>
      *
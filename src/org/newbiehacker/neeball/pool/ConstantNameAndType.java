@@ -85,12 +85,6 @@ public final class ConstantNameAndType extends Constant {
         return name + " " + descriptor;
     }
 
-    protected void finalize() throws Throwable {
-        name = null;
-        descriptor = null;
-        super.finalize();
-    }
-
     public byte getTag() {
         return Constants.CONSTANT_NameAndType;
     }
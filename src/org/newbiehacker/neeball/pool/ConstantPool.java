@@ -32,7 +32,9 @@ import org.newbiehacker.neeball.Logger;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -43,19 +45,133 @@ import java.util.*;
  * This source may be modified for personal use as long as the original author is accredited
  */
 public final class ConstantPool {
+    /**
+     * <p>The entries of this pool</p>
+     * <p>Entries of a pool that was read are flattened, and their Utf8s decoded, when they're first got with
+     * <code>get</code>, until then the values of any read here directly may still be null</p>
+     */
     public List<Constant> constants;
+    // Maps each constant to its pool index so insert doesn't have to scan constants
+    private HashMap<Constant, Integer> lookup;
+    // The size of constants when lookup was last brought up to date
+    private int indexed;
+    // Entries of a read pool that refer to others and haven't been flattened yet, they're flattened when first got
+    private BitSet unresolved;
 
     public ConstantPool() {
         this.constants = new ArrayList<>();
     }
 
-    private ConstantPool(Constant[] cp) {
+    private ConstantPool(Constant[] cp, BitSet unresolved) {
         this.constants = new ArrayList<>(cp.length);
         Collections.addAll(constants, cp);
+        this.unresolved = unresolved.isEmpty() ? null : unresolved;
     }
 
     public Constant get(int index) {
-        return constants.get(index);
+        Constant c = constants.get(index);
+        if (unresolved != null && unresolved.get(index))
+            resolve(index);
+        return c;
+    }
+
+    /**
+     * <p>Flattens an entry of a read pool, getting the entries it refers to first</p>
+     */
+    private void resolve(int index) {
+        unresolved.clear(index);
+        flatten(constants.get(index));
+        if (unresolved != null && unresolved.isEmpty())
+            unresolved = null;
+    }
+
+    /**
+     * <p>Flattens every entry of a read pool that hasn't been yet</p>
+     * <p>Done in three passes over the pool in dependency order: the entries that only refer to Utf8s, then those
+     * that refer to a NameAndType, then method handles, which refer to the member references of the second pass.
+     * However the pool is ordered nothing is got before it's flattened, so nothing is visited twice.</p>
+     */
+    private void resolveAll() {
+        if (unresolved == null)
+            return;
+        for (int pass = 1; pass <= 3; pass++) {
+            for (int i = unresolved.nextSetBit(0); i >= 0; i = unresolved.nextSetBit(i + 1)) {
+                Constant c = constants.get(i);
+                if (PASSES[c.getTag()] == pass) {
+                    unresolved.clear(i);
+                    flatten(c);
+                }
+            }
+        }
+        unresolved = null;
+    }
+
+    // The pass of resolveAll that flattens entries with each tag, 0 for those with nothing to flatten
+    private static final byte[] PASSES = new byte[256];
+
+    static {
+        PASSES[Constants.CONSTANT_Class] = 1;
+        PASSES[Constants.CONSTANT_String] = 1;
+        PASSES[Constants.CONSTANT_NameAndType] = 1;
+        PASSES[Constants.CONSTANT_MethodType] = 1;
+        PASSES[Constants.CONSTANT_Module] = 1;
+        PASSES[Constants.CONSTANT_Package] = 1;
+        PASSES[Constants.CONSTANT_Fieldref] = 2;
+        PASSES[Constants.CONSTANT_Methodref] = 2;
+        PASSES[Constants.CONSTANT_InterfaceMethodref] = 2;
+        PASSES[Constants.CONSTANT_Dynamic] = 2;
+        PASSES[Constants.CONSTANT_InvokeDynamic] = 2;
+        PASSES[Constants.CONSTANT_MethodHandle] = 3;
+    }
+
+    private void flatten(Constant c) {
+        switch (c.getTag()) {
+            case Constants.CONSTANT_String:
+                ConstantString cs = (ConstantString) c;
+                cs.value = ((ConstantUtf8) get(cs.index)).getValue();
+                break;
+            case Constants.CONSTANT_Class:
+                ConstantClass cc = (ConstantClass) c;
+                cc.value = ((ConstantUtf8) get(cc.name_index)).getValue();
+                break;
+            case Constants.CONSTANT_NameAndType:
+                ConstantNameAndType cnat = (ConstantNameAndType) c;
+                cnat.descriptor = ((ConstantUtf8) get(cnat.descriptor_index)).getValue();
+                cnat.name = ((ConstantUtf8) get(cnat.name_index)).getValue();
+                break;
+            case Constants.CONSTANT_Fieldref:
+            case Constants.CONSTANT_Methodref:
+            case Constants.CONSTANT_InterfaceMethodref:
+                ConstantFieldAndMethodref cfam = (ConstantFieldAndMethodref) c;
+                ConstantClass owner = (ConstantClass) get(cfam.class_index);
+                cfam.class_name = owner == null ? null : owner.value;
+                ConstantNameAndType nat = (ConstantNameAndType) get(cfam.name_and_type_index);
+                cfam.name = nat.name;
+                cfam.descriptor = nat.descriptor;
+                break;
+            case Constants.CONSTANT_MethodType:
+                ConstantMethodType cmt = (ConstantMethodType) c;
+                cmt.value = ((ConstantUtf8) get(cmt.descriptor_index)).getValue();
+                break;
+            case Constants.CONSTANT_Module:
+                ConstantModule cm = (ConstantModule) c;
+                cm.value = ((ConstantUtf8) get(cm.name_index)).getValue();
+                break;
+            case Constants.CONSTANT_Package:
+                ConstantPackage cp = (ConstantPackage) c;
+                cp.value = ((ConstantUtf8) get(cp.name_index)).getValue();
+                break;
+            case Constants.CONSTANT_Dynamic:
+            case Constants.CONSTANT_InvokeDynamic:
+                ConstantDynamicAndInvokeDynamic cd = (ConstantDynamicAndInvokeDynamic) c;
+                ConstantNameAndType dnat = (ConstantNameAndType) get(cd.name_and_type_index);
+                cd.name = dnat.name;
+                cd.descriptor = dnat.descriptor;
+                break;
+            case Constants.CONSTANT_MethodHandle:
+                ConstantMethodHandle cmh = (ConstantMethodHandle) c;
+                cmh.reference = (ConstantFieldAndMethodref) get(cmh.reference_index);
+        }
     }
 
     public int insert(Constant c) {
@@ -75,174 +191,433 @@ public final class ConstantPool {
         } else if (c instanceof ConstantString) {
             ConstantString ci = (ConstantString) c;
             ci.index = insert(new ConstantUtf8(ci.value));
+        } else if (c instanceof ConstantMethodType) {
+            ConstantMethodType ci = (ConstantMethodType) c;
+            ci.descriptor_index = insert(new ConstantUtf8(ci.value));
+        } else if (c instanceof ConstantModule) {
+            ConstantModule ci = (ConstantModule) c;
+            ci.name_index = insert(new ConstantUtf8(ci.value));
+        } else if (c instanceof ConstantPackage) {
+            ConstantPackage ci = (ConstantPackage) c;
+            ci.name_index = insert(new ConstantUtf8(ci.value));
+        } else if (c instanceof ConstantDynamicAndInvokeDynamic) {
+            ConstantDynamicAndInvokeDynamic ci = (ConstantDynamicAndInvokeDynamic) c;
+            ci.name_and_type_index = insert(new ConstantNameAndType(ci.name, ci.descriptor));
+        } else if (c instanceof ConstantMethodHandle) {
+            ConstantMethodHandle ci = (ConstantMethodHandle) c;
+            ci.reference_index = insert(ci.reference);
         }
-        int idx = constants.indexOf(c);
+        int idx = indexOf(c);
         if(idx != -1)
-            return idx + 1;
+            return idx;
         idx = size();
         constants.add(c);
         if(c.isLong())
             constants.add(null);
+        lookup.put(c, idx);
+        indexed = constants.size();
         return idx;
     }
 
-    public int size() {
-        return constants.size() + 1;
+    /**
+     * <p>Adds a constant to the end of this pool even if an equal one is already in it</p>
+     * <p>Used to lay out a pool entry for entry like another one, so that indices into the other stay valid</p>
+     *
+     * @param c the constant to add
+     * @return the index of the constant in this pool
+     */
+    public int append(Constant c) {
+        int idx = size();
+        constants.add(c);
+        if (c.isLong())
+            constants.add(null);
+        return idx;
+    }
+
+    private int indexOf(Constant c) {
+        if (lookup == null || indexed != constants.size())
+            reindex();
+        Integer idx = lookup.get(c);
+        if (idx == null)
+            return -1;
+        // The list is public, so a ConstantPoolModifier may have replaced or changed the entry since it was indexed
+        if (c.equals(constants.get(idx - 1)))
+            return idx;
+        reindex();
+        idx = lookup.get(c);
+        return idx == null ? -1 : idx;
+    }
+
+    private void reindex() {
+        resolveAll();
+        final int size = constants.size();
+        lookup = new HashMap<>(Math.max(16, size * 2));
+        Constant c;
+        for (int i = 0; i < size; i++) {
+            c = constants.get(i);
+            if (c != null && !lookup.containsKey(c))
+                lookup.put(c, i + 1);
+        }
+        indexed = size;
     }
 
-    protected void finalize() throws Throwable {
-        super.finalize();
-        constants.clear();
-        constants = null;
+    public int size() {
+        return constants.size() + 1;
     }
 
     public String toString() {
         StringBuilder sb = new StringBuilder(String.format("ConstantPool [size=%d] {", constants.size()));
         for(int i = 0; i < constants.size(); i++)
-            sb.append(i == 0? "": ", ").append(constants.get(i));
+            sb.append(i == 0? "": ", ").append(get(i));
         return sb.append("}").toString();
     }
 
+    /**
+     * <p>Reads a constant pool from a stream, gathering its entries into a single array and reading that as
+     * <code>read(ByteBuffer)</code> does</p>
+     *
+     * @param dis the stream, positioned at constant_pool_count
+     * @return the pool read
+     * @throws IOException if there is an I/O error
+     */
     public static ConstantPool read(DataInputStream dis) throws IOException {
         int constant_pool_count = dis.readUnsignedShort();
+        byte[] b = new byte[Math.max(64, constant_pool_count * 8)];
+        b[0] = (byte) (constant_pool_count >>> 8);
+        b[1] = (byte) constant_pool_count;
+        int pos = 2;
+        int tag, size;
+        for (int i = 1; i < constant_pool_count; i++) {
+            tag = dis.readUnsignedByte();
+            size = getSize(tag);
+            if (size == -1) {
+                size = dis.readUnsignedShort();
+                b = ensure(b, pos, 3 + size);
+                b[pos++] = (byte) tag;
+                b[pos++] = (byte) (size >>> 8);
+                b[pos++] = (byte) size;
+            } else {
+                b = ensure(b, pos, 1 + size);
+                b[pos++] = (byte) tag;
+            }
+            dis.readFully(b, pos, size);
+            pos += size;
+            if (tag == Constants.CONSTANT_Long || tag == Constants.CONSTANT_Double)
+                i++;
+        }
+        return read(ByteBuffer.wrap(b, 0, pos));
+    }
+
+    private static byte[] ensure(byte[] b, int pos, int n) {
+        return pos + n <= b.length ? b : Arrays.copyOf(b, Math.max(b.length << 1, pos + n));
+    }
+
+    /**
+     * <p>Returns the size of an entry after its tag, or -1 for a Utf8 whose size follows</p>
+     */
+    private static int getSize(int tag) {
+        switch (tag) {
+            case Constants.CONSTANT_Class:
+            case Constants.CONSTANT_String:
+            case Constants.CONSTANT_MethodType:
+            case Constants.CONSTANT_Module:
+            case Constants.CONSTANT_Package:
+                return 2;
+            case Constants.CONSTANT_MethodHandle:
+                return 3;
+            case Constants.CONSTANT_Fieldref:
+            case Constants.CONSTANT_Methodref:
+            case Constants.CONSTANT_InterfaceMethodref:
+            case Constants.CONSTANT_NameAndType:
+            case Constants.CONSTANT_Integer:
+            case Constants.CONSTANT_Float:
+            case Constants.CONSTANT_Dynamic:
+            case Constants.CONSTANT_InvokeDynamic:
+                return 4;
+            case Constants.CONSTANT_Long:
+            case Constants.CONSTANT_Double:
+                return 8;
+            case Constants.CONSTANT_Utf8:
+                return -1;
+            default:
+                throw new UnsupportedOperationException("Unknown constant with tag " + tag + "!");
+        }
+    }
+
+    /**
+     * <p>Reads a constant pool from a buffer, leaving its position just past the pool</p>
+     * <p>Entries are read at absolute offsets into the array backing the buffer and Utf8s are kept as slices of it, so
+     * it mustn't be changed while the pool is in use. Buffers without an array, such as direct and mapped ones, have
+     * what remains of them copied out first.</p>
+     *
+     * @param buf the buffer, positioned at constant_pool_count
+     * @return the pool read
+     * @throws IOException if the pool runs past the limit of the buffer
+     */
+    public static ConstantPool read(ByteBuffer buf) throws IOException {
+        if (!buf.hasArray()) {
+            byte[] copy = new byte[buf.remaining()];
+            buf.duplicate().get(copy);
+            ByteBuffer heap = ByteBuffer.wrap(copy);
+            ConstantPool cp = read(heap);
+            buf.position(buf.position() + heap.position());
+            return cp;
+        }
+        final byte[] b = buf.array();
+        final int base = buf.arrayOffset();
+        final int limit = base + buf.limit();
+        int pos = base + buf.position();
+        if (limit - pos < 2)
+            throw new EOFException("Constant pool runs past the end of the class file");
+        int constant_pool_count = u2(b, pos);
+        pos += 2;
         Constant constant;
         Constant[] cp = new Constant[constant_pool_count];
-        Queue<Constant> unresolved = new LinkedList<>();
+        BitSet unresolved = new BitSet(constant_pool_count);
+        int tag, size;
         Logger.logger.fine("Reading constant pool...");
         for (int i = 1; i < constant_pool_count; i++) {
-            int tag = dis.readUnsignedByte();
+            if (pos >= limit)
+                throw new EOFException("Constant pool runs past the end of the class file");
+            tag = b[pos++] & 0xff;
+            size = getSize(tag);
+            if (size == -1) {
+                if (limit - pos < 2)
+                    throw new EOFException("Constant pool runs past the end of the class file");
+                size = u2(b, pos);
+                pos += 2;
+            }
+            if (limit - pos < size)
+                throw new EOFException("Constant pool runs past the end of the class file");
             switch (tag) {
                 case Constants.CONSTANT_Class:
                     ConstantClass cc = new ConstantClass();
-                    cc.name_index = dis.readUnsignedShort();
+                    cc.name_index = u2(b, pos);
                     constant = cc;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
                 case Constants.CONSTANT_Double:
-                    constant = new ConstantDouble(dis.readDouble());
+                    constant = new ConstantDouble(Double.longBitsToDouble(s8(b, pos)));
                     break;
                 case Constants.CONSTANT_Fieldref:
                     ConstantFieldref cfr = new ConstantFieldref();
-                    cfr.class_index = dis.readUnsignedShort();
-                    cfr.name_and_type_index = dis.readUnsignedShort();
+                    cfr.class_index = u2(b, pos);
+                    cfr.name_and_type_index = u2(b, pos + 2);
                     constant = cfr;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
                 case Constants.CONSTANT_Float:
-                    constant = new ConstantFloat(dis.readFloat());
+                    constant = new ConstantFloat(Float.intBitsToFloat(s4(b, pos)));
                     break;
                 case Constants.CONSTANT_Integer:
-                    constant = new ConstantInteger(dis.readInt());
+                    constant = new ConstantInteger(s4(b, pos));
                     break;
                 case Constants.CONSTANT_InterfaceMethodref:
                     ConstantInterfaceMethodref cimr = new ConstantInterfaceMethodref();
-                    cimr.class_index = dis.readUnsignedShort();
-                    cimr.name_and_type_index = dis.readUnsignedShort();
+                    cimr.class_index = u2(b, pos);
+                    cimr.name_and_type_index = u2(b, pos + 2);
                     constant = cimr;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
                 case Constants.CONSTANT_Long:
-                    constant = new ConstantLong(dis.readLong());
+                    constant = new ConstantLong(s8(b, pos));
                     break;
                 case Constants.CONSTANT_Methodref:
                     ConstantMethodref cmr = new ConstantMethodref();
-                    cmr.class_index = dis.readUnsignedShort();
-                    cmr.name_and_type_index = dis.readUnsignedShort();
+                    cmr.class_index = u2(b, pos);
+                    cmr.name_and_type_index = u2(b, pos + 2);
                     constant = cmr;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
                 case Constants.CONSTANT_NameAndType:
                     ConstantNameAndType cnat = new ConstantNameAndType();
-                    cnat.name_index = dis.readUnsignedShort();
-                    cnat.descriptor_index = dis.readUnsignedShort();
+                    cnat.name_index = u2(b, pos);
+                    cnat.descriptor_index = u2(b, pos + 2);
                     constant = cnat;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
                 case Constants.CONSTANT_String:
                     ConstantString cs = new ConstantString();
-                    cs.index = dis.readUnsignedShort();
+                    cs.index = u2(b, pos);
                     constant = cs;
-                    unresolved.add(constant); // Needs flattening
+                    unresolved.set(i); // Needs flattening
                     break;
-                case Constants.CONSTANT_Utf8:
-                    constant = new ConstantUtf8(dis.readUTF());
+                case Constants.CONSTANT_MethodHandle:
+                    ConstantMethodHandle cmh = new ConstantMethodHandle();
+                    cmh.reference_kind = b[pos] & 0xff;
+                    cmh.reference_index = u2(b, pos + 1);
+                    constant = cmh;
+                    unresolved.set(i); // Needs flattening
                     break;
-                default:
-                    throw new UnsupportedOperationException("Unknown constant with tag " + tag + "!");
+                case Constants.CONSTANT_MethodType:
+                    ConstantMethodType cmt = new ConstantMethodType();
+                    cmt.descriptor_index = u2(b, pos);
+                    constant = cmt;
+                    unresolved.set(i); // Needs flattening
+                    break;
+                case Constants.CONSTANT_Dynamic:
+                    ConstantDynamic cd = new ConstantDynamic();
+                    cd.bootstrap_method_attr_index = u2(b, pos);
+                    cd.name_and_type_index = u2(b, pos + 2);
+                    constant = cd;
+                    unresolved.set(i); // Needs flattening
+                    break;
+                case Constants.CONSTANT_InvokeDynamic:
+                    ConstantInvokeDynamic cid = new ConstantInvokeDynamic();
+                    cid.bootstrap_method_attr_index = u2(b, pos);
+                    cid.name_and_type_index = u2(b, pos + 2);
+                    constant = cid;
+                    unresolved.set(i); // Needs flattening
+                    break;
+                case Constants.CONSTANT_Module:
+                    ConstantModule cm = new ConstantModule();
+                    cm.name_index = u2(b, pos);
+                    constant = cm;
+                    unresolved.set(i); // Needs flattening
+                    break;
+                case Constants.CONSTANT_Package:
+                    ConstantPackage cpk = new ConstantPackage();
+                    cpk.name_index = u2(b, pos);
+                    constant = cpk;
+                    unresolved.set(i); // Needs flattening
+                    break;
+                default: // CONSTANT_Utf8
+                    constant = new ConstantUtf8(b, pos, size);
             }
+            pos += size;
             cp[i] = constant;
             if (tag == Constants.CONSTANT_Long || tag == Constants.CONSTANT_Double)
                 i++;
         }
+        buf.position(pos - base);
+        return new ConstantPool(cp, unresolved);
+    }
 
-        while(!unresolved.isEmpty()) {
-            Constant c = unresolved.poll();
-            if (c instanceof ConstantString) {
-                ConstantString cs = (ConstantString) c;
-                cs.value = ((ConstantUtf8) cp[cs.index]).value;
-            } else if (c instanceof ConstantClass) {
-                ConstantClass cc = (ConstantClass) c;
-                cc.value = ((ConstantUtf8) cp[cc.name_index]).value;
-            } else if (c instanceof ConstantNameAndType) {
-                ConstantNameAndType cnat = (ConstantNameAndType) c;
-                cnat.descriptor = ((ConstantUtf8) cp[cnat.descriptor_index]).value;
-                cnat.name = ((ConstantUtf8) cp[cnat.name_index]).value;
-            } else if (c instanceof ConstantFieldAndMethodref) {
-                ConstantFieldAndMethodref cfam = (ConstantFieldAndMethodref) c;
-                ConstantClass cc = (ConstantClass) cp[cfam.class_index];
-                cfam.class_name = cc == null? null: cc.value;
-                ConstantNameAndType cnat = (ConstantNameAndType) cp[cfam.name_and_type_index];
-                cfam.name = cnat.name;
-                cfam.descriptor = cnat.descriptor;
-                if(cfam.class_name == null || cnat.name == null || cnat.descriptor == null)
-                    unresolved.add(c); // Try again
+    private static int u2(byte[] b, int pos) {
+        return ((b[pos] & 0xff) << 8) | (b[pos + 1] & 0xff);
+    }
+
+    private static int s4(byte[] b, int pos) {
+        return (b[pos] << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+    }
+
+    private static long s8(byte[] b, int pos) {
+        return ((long) s4(b, pos) << 32) | (s4(b, pos + 4) & 0xffffffffL);
+    }
+
+    /**
+     * <p>Works out how many bytes <code>write</code> will write, constant_pool_count included</p>
+     *
+     * @return the length of this pool in a class file
+     * @throws IOException if a Utf8 is too long to be written
+     */
+    public int getLength() throws IOException {
+        int length = 2;
+        for (Constant c : constants) {
+            if (c == null)
+                continue;
+            switch (c.getTag()) {
+                case Constants.CONSTANT_Class:
+                case Constants.CONSTANT_String:
+                case Constants.CONSTANT_MethodType:
+                case Constants.CONSTANT_Module:
+                case Constants.CONSTANT_Package:
+                    length += 3;
+                    break;
+                case Constants.CONSTANT_MethodHandle:
+                    length += 4;
+                    break;
+                case Constants.CONSTANT_Long:
+                case Constants.CONSTANT_Double:
+                    length += 9;
+                    break;
+                case Constants.CONSTANT_Utf8:
+                    length += 3 + ((ConstantUtf8) c).getLength();
+                    break;
+                default:
+                    length += 5;
             }
         }
-
-        return new ConstantPool(cp);
+        return length;
     }
 
     public void write(DataOutputStream dos) throws IOException {
-        dos.writeShort(size());
+        byte[] b = new byte[getLength()];
+        write(ByteBuffer.wrap(b));
+        dos.write(b);
+    }
+
+    /**
+     * <p>Writes this pool into a buffer, which needs <code>getLength()</code> bytes remaining</p>
+     *
+     * @param buf the buffer to write to
+     * @throws IOException if a Utf8 is too long to be written
+     */
+    public void write(ByteBuffer buf) throws IOException {
+        if (size() > 0xffff)
+            throw new IOException("Too many constants: " + size());
+        buf.putShort((short) size());
         for (Constant c : constants) {
             if(c == null)
                 continue;
-            if (c instanceof ConstantNameAndType) {
-                ConstantNameAndType cnat = (ConstantNameAndType) c;
-                dos.writeByte(Constants.CONSTANT_NameAndType);
-                dos.writeShort(cnat.name_index);
-                dos.writeShort(cnat.descriptor_index);
-            } else if (c instanceof ConstantClass) {
-                dos.writeByte(Constants.CONSTANT_Class);
-                dos.writeShort(((ConstantClass) c).name_index);
-            } else if (c instanceof ConstantFieldAndMethodref) {
-                ConstantFieldAndMethodref cfam = (ConstantFieldAndMethodref) c;
-                if (c instanceof ConstantFieldref)
-                    dos.writeByte(Constants.CONSTANT_Fieldref);
-                else if (c instanceof ConstantMethodref)
-                    dos.writeByte(Constants.CONSTANT_Methodref);
-                else if (c instanceof ConstantInterfaceMethodref)
-                    dos.writeByte(Constants.CONSTANT_InterfaceMethodref);
-                dos.writeShort(cfam.class_index);
-                dos.writeShort(cfam.name_and_type_index);
-            } else if (c instanceof ConstantString) {
-                dos.writeByte(Constants.CONSTANT_String);
-                dos.writeShort(((ConstantString) c).index);
-            } else if (c instanceof ConstantInteger) {
-                dos.writeByte(Constants.CONSTANT_Integer);
-                dos.writeInt(((ConstantInteger) c).value);
-            } else if (c instanceof ConstantFloat) {
-                dos.writeByte(Constants.CONSTANT_Float);
-                dos.writeFloat(((ConstantFloat) c).value);
-            } else if (c instanceof ConstantLong) {
-                dos.writeByte(Constants.CONSTANT_Long);
-                dos.writeLong(((ConstantLong) c).value);
-            } else if (c instanceof ConstantDouble) {
-                dos.writeByte(Constants.CONSTANT_Double);
-                dos.writeDouble(((ConstantDouble) c).value);
-            }  else if (c instanceof ConstantUtf8) {
-                dos.writeByte(Constants.CONSTANT_Utf8);
-                dos.writeUTF(((ConstantUtf8) c).value);
+            byte tag = c.getTag();
+            buf.put(tag);
+            switch (tag) {
+                case Constants.CONSTANT_NameAndType:
+                    ConstantNameAndType cnat = (ConstantNameAndType) c;
+                    buf.putShort((short) cnat.name_index);
+                    buf.putShort((short) cnat.descriptor_index);
+                    break;
+                case Constants.CONSTANT_Class:
+                    buf.putShort((short) ((ConstantClass) c).name_index);
+                    break;
+                case Constants.CONSTANT_Fieldref:
+                case Constants.CONSTANT_Methodref:
+                case Constants.CONSTANT_InterfaceMethodref:
+                    ConstantFieldAndMethodref cfam = (ConstantFieldAndMethodref) c;
+                    buf.putShort((short) cfam.class_index);
+                    buf.putShort((short) cfam.name_and_type_index);
+                    break;
+                case Constants.CONSTANT_String:
+                    buf.putShort((short) ((ConstantString) c).index);
+                    break;
+                case Constants.CONSTANT_MethodHandle:
+                    ConstantMethodHandle cmh = (ConstantMethodHandle) c;
+                    buf.put((byte) cmh.reference_kind);
+                    buf.putShort((short) cmh.reference_index);
+                    break;
+                case Constants.CONSTANT_MethodType:
+                    buf.putShort((short) ((ConstantMethodType) c).descriptor_index);
+                    break;
+                case Constants.CONSTANT_Module:
+                    buf.putShort((short) ((ConstantModule) c).name_index);
+                    break;
+                case Constants.CONSTANT_Package:
+                    buf.putShort((short) ((ConstantPackage) c).name_index);
+                    break;
+                case Constants.CONSTANT_Dynamic:
+                case Constants.CONSTANT_InvokeDynamic:
+                    ConstantDynamicAndInvokeDynamic cd = (ConstantDynamicAndInvokeDynamic) c;
+                    buf.putShort((short) cd.bootstrap_method_attr_index);
+                    buf.putShort((short) cd.name_and_type_index);
+                    break;
+                case Constants.CONSTANT_Integer:
+                    buf.putInt(((ConstantInteger) c).value);
+                    break;
+                case Constants.CONSTANT_Float:
+                    buf.putFloat(((ConstantFloat) c).value);
+                    break;
+                case Constants.CONSTANT_Long:
+                    buf.putLong(((ConstantLong) c).value);
+                    break;
+                case Constants.CONSTANT_Double:
+                    buf.putDouble(((ConstantDouble) c).value);
+                    break;
+                case Constants.CONSTANT_Utf8:
+                    ((ConstantUtf8) c).write(buf);
+                    break;
+                default:
+                    throw new IOException("Unknown constant with tag " + tag);
             }
         }
     }
@@ -2,11 +2,185 @@ package org.newbiehacker.neeball.pool;
 
 import org.newbiehacker.neeball.Constants;
 
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>A Utf8 constant read from a class file keeps its bytes and isn't decoded until <code>getValue()</code> is first
+ * called, until then <code>value</code> is null. ASCII constants are compared and hashed on their bytes, so they can be
+ * looked up and written back without ever being decoded.</p>
+ */
 public final class ConstantUtf8 extends TypedConstant<String> {
+    // The modified UTF-8 this constant was read from, it holds for as long as value is still what it decoded to
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private boolean ascii;
+    private String decoded;
+
     public ConstantUtf8(String value) {
         super(value);
     }
 
+    ConstantUtf8(byte[] bytes, int offset, int length) {
+        super(null);
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        ascii = true;
+        for (int i = offset; i < offset + length; i++)
+            if (bytes[i] <= 0) {
+                ascii = false;
+                break;
+            }
+    }
+
+    /**
+     * <p>Returns the value of this constant, decoding it first if it hasn't been yet</p>
+     *
+     * @return the value of this constant
+     * @throws IllegalStateException if the bytes this constant was read from aren't valid modified UTF-8
+     */
+    public String getValue() {
+        if (value == null && bytes != null) {
+            try {
+                decoded = ascii ? new String(bytes, offset, length, StandardCharsets.ISO_8859_1) : decode(bytes, offset, length);
+            } catch (UTFDataFormatException e) {
+                throw new IllegalStateException(e);
+            }
+            value = decoded;
+        }
+        return value;
+    }
+
+    private boolean hasBytes() {
+        return bytes != null && (value == null || value == decoded);
+    }
+
+    private static String decode(byte[] b, int off, int len) throws UTFDataFormatException {
+        char[] chars = new char[len];
+        int count = 0;
+        int end = off + len;
+        int c, c2, c3;
+        while (off < end) {
+            c = b[off++] & 0xff;
+            switch (c >> 4) {
+                case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                    chars[count++] = (char) c;
+                    break;
+                case 12: case 13:
+                    if (off >= end || ((c2 = b[off++]) & 0xc0) != 0x80)
+                        throw new UTFDataFormatException("Malformed input around byte " + off);
+                    chars[count++] = (char) (((c & 0x1f) << 6) | (c2 & 0x3f));
+                    break;
+                case 14:
+                    if (off + 1 >= end || ((c2 = b[off++]) & 0xc0) != 0x80 || ((c3 = b[off++]) & 0xc0) != 0x80)
+                        throw new UTFDataFormatException("Malformed input around byte " + off);
+                    chars[count++] = (char) (((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) | (c3 & 0x3f));
+                    break;
+                default:
+                    throw new UTFDataFormatException("Malformed input around byte " + off);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * <p>Works out the length of this constant in modified UTF-8</p>
+     *
+     * @return the number of bytes <code>write</code> writes after the length
+     * @throws UTFDataFormatException if the value is too long to be written
+     */
+    int getLength() throws UTFDataFormatException {
+        if (hasBytes())
+            return length;
+        final int chars = value.length();
+        int utf_length = chars;
+        char c;
+        for (int i = 0; i < chars; i++) {
+            c = value.charAt(i);
+            if (c == 0 || c >= 0x80)
+                utf_length += c >= 0x800 ? 2 : 1;
+        }
+        if (utf_length > 0xffff)
+            throw new UTFDataFormatException("Utf8 constant too long: " + utf_length + " bytes");
+        return utf_length;
+    }
+
+    /**
+     * <p>Writes this constant's length and bytes, reusing the bytes it was read from if its value hasn't changed</p>
+     */
+    void write(ByteBuffer buf) throws UTFDataFormatException {
+        buf.putShort((short) getLength());
+        if (hasBytes()) {
+            buf.put(bytes, offset, length);
+            return;
+        }
+        final int chars = value.length();
+        char c;
+        for (int i = 0; i < chars; i++) {
+            c = value.charAt(i);
+            if (c != 0 && c < 0x80)
+                buf.put((byte) c);
+            else if (c < 0x800) {
+                buf.put((byte) (0xc0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+            } else {
+                buf.put((byte) (0xe0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buf.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConstantUtf8 that = (ConstantUtf8) o;
+        if (hasBytes() && ascii) {
+            if (that.hasBytes() && that.ascii) {
+                if (length != that.length)
+                    return false;
+                for (int i = 0; i < length; i++)
+                    if (bytes[offset + i] != that.bytes[that.offset + i])
+                        return false;
+                return true;
+            }
+            return equalsAscii(that.getValue());
+        }
+        if (that.hasBytes() && that.ascii)
+            return that.equalsAscii(getValue());
+        String v = getValue();
+        return v != null ? v.equals(that.getValue()) : that.getValue() == null;
+    }
+
+    private boolean equalsAscii(String s) {
+        if (s == null || s.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (s.charAt(i) != bytes[offset + i])
+                return false;
+        return true;
+    }
+
+    public int hashCode() {
+        if (hasBytes() && ascii) {
+            // The same as String.hashCode(), ASCII bytes are the chars
+            int h = 0;
+            for (int i = offset; i < offset + length; i++)
+                h = 31 * h + bytes[i];
+            return h;
+        }
+        String v = getValue();
+        return v != null ? v.hashCode() : 0;
+    }
+
+    public String toString() {
+        return String.valueOf(getValue());
+    }
+
     public byte getTag() {
         return Constants.CONSTANT_Utf8;
     }